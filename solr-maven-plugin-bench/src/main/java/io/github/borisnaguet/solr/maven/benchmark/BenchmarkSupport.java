@@ -0,0 +1,79 @@
+package io.github.borisnaguet.solr.maven.benchmark;
+
+import static org.apache.solr.cloud.MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+
+import io.github.borisnaguet.solr.maven.SolrCloudManager;
+import io.github.borisnaguet.solr.maven.util.FileUtil;
+
+/**
+ * What the benchmarks share: a cluster in a temp dir, with the default config of the plugin or a custom one.
+ * 
+ * @author BorisNaguet
+ *
+ */
+final class BenchmarkSupport {
+	static final String DEFAULT_CONF = "default";
+	static final String CUSTOM_CONF = "custom";
+
+	static final String CONFIG_NAME = "bench";
+
+	/**
+	 * only warnings, so that the output of JMH stays readable
+	 */
+	static final Log LOG = new DefaultLog(new ConsoleLogger(Logger.LEVEL_WARN, "solr-bench"));
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * @return a new temp dir for a cluster
+	 */
+	static Path createDir() throws IOException {
+		return Files.createTempDirectory("solr-bench-");
+	}
+
+	/**
+	 * @param conf {@value #DEFAULT_CONF} (extracted in dir), or {@value #CUSTOM_CONF} (the config of
+	 * solr-maven-plugin-test, or system property solr.bench.conf)
+	 * @return the conf dir to upload
+	 */
+	static Path confDir(String conf, Path dir) throws MojoExecutionException {
+		if (CUSTOM_CONF.equals(conf)) {
+			return Paths.get(System.getProperty("solr.bench.conf", "../solr-maven-plugin-test/solr-it-conf")).toAbsolutePath();
+		}
+		Path confDir = dir.resolve("conf");
+		FileUtil.extractDefaultConf(confDir);
+		return confDir;
+	}
+
+	/**
+	 * @return a manager for a cluster in dir (not started)
+	 */
+	static SolrCloudManager manager(Path dir, Path confDir, int numServers) throws IOException {
+		return new SolrCloudManager(dir.resolve("data"), confDir, numServers, freePort(), DEFAULT_CLOUD_SOLR_XML, CONFIG_NAME, null);
+	}
+
+	static void delete(Path dir) {
+		if (dir != null) {
+			FileUtil.delete(LOG, dir);
+		}
+	}
+
+	static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
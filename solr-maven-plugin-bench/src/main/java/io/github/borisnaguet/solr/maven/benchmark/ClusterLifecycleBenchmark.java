@@ -0,0 +1,92 @@
+package io.github.borisnaguet.solr.maven.benchmark;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.borisnaguet.solr.maven.SolrCloudManager;
+
+/**
+ * {@link SolrCloudManager#startCluster} and {@link SolrCloudManager#stopCluster}, by number of nodes.
+ * 
+ * <p>
+ * Each measure is a single call (on a new cluster, in a new dir): that's what a build pays.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClusterLifecycleBenchmark {
+
+	@State(Scope.Thread)
+	public static class NotStarted {
+		@Param({ "1", "2", "4" })
+		int numServers;
+
+		Path dir;
+		SolrCloudManager manager;
+
+		@Setup(Level.Invocation)
+		public void create() throws Exception {
+			dir = BenchmarkSupport.createDir();
+			manager = BenchmarkSupport.manager(dir, dir.resolve("conf"), numServers);
+		}
+
+		@TearDown(Level.Invocation)
+		public void destroy() throws Exception {
+			manager.stopCluster(BenchmarkSupport.LOG);
+			BenchmarkSupport.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Started {
+		@Param({ "1", "2", "4" })
+		int numServers;
+
+		Path dir;
+		SolrCloudManager manager;
+
+		@Setup(Level.Invocation)
+		public void start() throws Exception {
+			dir = BenchmarkSupport.createDir();
+			manager = BenchmarkSupport.manager(dir, dir.resolve("conf"), numServers);
+			manager.startCluster(BenchmarkSupport.LOG);
+		}
+
+		@TearDown(Level.Invocation)
+		public void destroy() {
+			BenchmarkSupport.delete(dir);
+		}
+	}
+
+	@Benchmark
+	public SolrCloudManager startCluster(NotStarted state) throws Exception {
+		state.manager.startCluster(BenchmarkSupport.LOG);
+		return state.manager;
+	}
+
+	@Benchmark
+	public SolrCloudManager stopCluster(Started state) throws Exception {
+		state.manager.stopCluster(BenchmarkSupport.LOG);
+		return state.manager;
+	}
+}
@@ -0,0 +1,87 @@
+package io.github.borisnaguet.solr.maven.benchmark;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.borisnaguet.solr.maven.SolrCloudManager;
+
+/**
+ * {@link SolrCloudManager#createCollections} (until all the replicas are active), by number of nodes, number of
+ * shards and config: the cluster is started once, and the collection is deleted after each creation.
+ * 
+ * @author BorisNaguet
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CreateCollectionBenchmark {
+	@Param({ "1", "2", "4" })
+	int numServers;
+
+	@Param({ "1", "4", "16" })
+	int numShards;
+
+	@Param({ BenchmarkSupport.DEFAULT_CONF, BenchmarkSupport.CUSTOM_CONF })
+	String conf;
+
+	private Path dir;
+	private SolrCloudManager manager;
+	private CloudSolrClient client;
+	private int created;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		dir = BenchmarkSupport.createDir();
+		manager = BenchmarkSupport.manager(dir, BenchmarkSupport.confDir(conf, dir), numServers);
+		manager.startCluster(BenchmarkSupport.LOG);
+		manager.uploadConfig(BenchmarkSupport.LOG);
+		client = new CloudSolrClient.Builder().withZkHost(manager.getZkAddress()).build();
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteCollection() throws Exception {
+		CollectionAdminRequest.deleteCollection(collection()).process(client);
+		created++;
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() throws Exception {
+		client.close();
+		manager.stopCluster(BenchmarkSupport.LOG);
+		BenchmarkSupport.delete(dir);
+	}
+
+	@Benchmark
+	public SolrCloudManager createCollection() throws Exception {
+		manager.createCollections(BenchmarkSupport.LOG, Collections.singletonList(collection()), numShards, 1);
+		return manager;
+	}
+
+	/**
+	 * @return a new name for each creation, so that nothing is left from the previous one
+	 */
+	private String collection() {
+		return "bench" + created;
+	}
+}
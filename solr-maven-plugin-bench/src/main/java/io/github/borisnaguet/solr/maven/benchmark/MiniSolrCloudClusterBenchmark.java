@@ -0,0 +1,97 @@
+package io.github.borisnaguet.solr.maven.benchmark;
+
+import static org.apache.solr.cloud.MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.embedded.JettyConfig;
+import org.apache.solr.cloud.MiniSolrCloudCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Start and shutdown of the {@link MiniSolrCloudCluster} alone (with its own ZK), by number of nodes: the baseline of
+ * {@link ClusterLifecycleBenchmark}, without what the plugin does around it.
+ * 
+ * @author BorisNaguet
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MiniSolrCloudClusterBenchmark {
+
+	@State(Scope.Thread)
+	public static class NotStarted {
+		@Param({ "1", "2", "4" })
+		int numServers;
+
+		Path dir;
+		MiniSolrCloudCluster cluster;
+
+		@Setup(Level.Invocation)
+		public void create() throws Exception {
+			dir = BenchmarkSupport.createDir();
+		}
+
+		@TearDown(Level.Invocation)
+		public void destroy() throws Exception {
+			if (cluster != null) {
+				cluster.shutdown();
+				cluster = null;
+			}
+			BenchmarkSupport.delete(dir);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Started {
+		@Param({ "1", "2", "4" })
+		int numServers;
+
+		Path dir;
+		MiniSolrCloudCluster cluster;
+
+		@Setup(Level.Invocation)
+		public void start() throws Exception {
+			dir = BenchmarkSupport.createDir();
+			cluster = newCluster(numServers, dir);
+		}
+
+		@TearDown(Level.Invocation)
+		public void destroy() {
+			BenchmarkSupport.delete(dir);
+		}
+	}
+
+	@Benchmark
+	public MiniSolrCloudCluster start(NotStarted state) throws Exception {
+		state.cluster = newCluster(state.numServers, state.dir);
+		return state.cluster;
+	}
+
+	@Benchmark
+	public MiniSolrCloudCluster shutdown(Started state) throws Exception {
+		state.cluster.shutdown();
+		return state.cluster;
+	}
+
+	private static MiniSolrCloudCluster newCluster(int numServers, Path dir) throws Exception {
+		return new MiniSolrCloudCluster(numServers, dir, DEFAULT_CLOUD_SOLR_XML, JettyConfig.builder().stopAtShutdown(false).build(),
+				null, "");
+	}
+}
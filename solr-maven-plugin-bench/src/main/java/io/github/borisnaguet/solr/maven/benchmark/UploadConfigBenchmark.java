@@ -0,0 +1,70 @@
+package io.github.borisnaguet.solr.maven.benchmark;
+
+import static org.apache.solr.cloud.AbstractZkTestCase.TIMEOUT;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.common.cloud.SolrZkClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.borisnaguet.solr.maven.SolrCloudManager;
+
+/**
+ * {@link SolrCloudManager#uploadConfig}, by config: the cluster is started once, and the config is deleted from ZK
+ * after each upload.
+ * 
+ * @author BorisNaguet
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class UploadConfigBenchmark {
+	@Param({ BenchmarkSupport.DEFAULT_CONF, BenchmarkSupport.CUSTOM_CONF })
+	String conf;
+
+	private Path dir;
+	private SolrCloudManager manager;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		dir = BenchmarkSupport.createDir();
+		manager = BenchmarkSupport.manager(dir, BenchmarkSupport.confDir(conf, dir), 1);
+		manager.startCluster(BenchmarkSupport.LOG);
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteConfig() throws Exception {
+		try (SolrZkClient zkClient = new SolrZkClient(manager.getZkAddress(), TIMEOUT)) {
+			zkClient.clean("/configs/" + BenchmarkSupport.CONFIG_NAME);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() throws Exception {
+		manager.stopCluster(BenchmarkSupport.LOG);
+		BenchmarkSupport.delete(dir);
+	}
+
+	@Benchmark
+	public SolrCloudManager uploadConfig() throws Exception {
+		manager.uploadConfig(BenchmarkSupport.LOG);
+		return manager;
+	}
+}
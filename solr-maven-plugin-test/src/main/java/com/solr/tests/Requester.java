@@ -1,5 +1,6 @@
 package com.solr.tests;
 
+import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.request.SolrPing;
 import org.apache.solr.client.solrj.response.SolrPingResponse;
@@ -23,6 +24,10 @@ public class Requester {
 		return pingResponse.getStatus();
 	}
 	
+	public long count() throws Exception {
+		return cloudSolrClient.query(new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+	}
+	
 	public void addDoc_withAttrName() throws Exception {
 		SolrInputDocument doc = new SolrInputDocument();
 		doc.addField("id", "1234");
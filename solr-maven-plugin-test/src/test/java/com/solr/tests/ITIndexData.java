@@ -0,0 +1,25 @@
+package com.solr.tests;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.RandomizedTest;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope.Scope;
+
+@ThreadLeakScope(Scope.NONE)
+public class ITIndexData extends RandomizedTest {
+
+	private static Requester requester;
+
+	@BeforeClass
+	public static void initTest() {
+		requester = new Requester("col1", 9984, "/solr");
+	}
+	
+	@Test
+	public void testCount() throws Exception {
+		//index-IT indexes the 3 docs of solr-it-docs/docs.jsonl in 'col1', and commits
+		assertEquals(3, requester.count());
+	}
+}
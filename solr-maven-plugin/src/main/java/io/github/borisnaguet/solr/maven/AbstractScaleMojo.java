@@ -0,0 +1,74 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+
+/**
+ * Base of the goals that change the nodes of the SolrCloud started by start-solrcloud (or of the Solr daemon). After
+ * each step, they wait until every collection is fully active again, and log how long it took: the steps are also
+ * timed in target/solrcloud-timings.json, like the phases of start-solrcloud.
+ *
+ * @author BorisNaguet
+ *
+ */
+public abstract class AbstractScaleMojo extends AbstractSolrMojo {
+
+	/**
+	 * Once the nodes are changed, move replicas from the nodes that have the most to the ones that have the fewest
+	 */
+	@Parameter(property = "solr.nodes.rebalance", defaultValue = "false")
+	private boolean rebalance;
+
+	/**
+	 * A change of the cluster
+	 */
+	@FunctionalInterface
+	protected interface Step {
+		void run() throws MojoExecutionException;
+	}
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if(skip) {
+			getLog().info("solr.skip=true - not running " + mojo.getGoal());
+			return;
+		}
+		SolrCloudManager solrCloudManager = getStartedCloudManager();
+		PhaseTimer timer = new PhaseTimer();
+		solrCloudManager.setTimer(timer);
+
+		ClusterScaler scaler = solrCloudManager.getScaler();
+		scale(solrCloudManager, scaler, timer);
+		if(rebalance) {
+			step(timer, "rebalance", solrCloudManager, () -> scaler.rebalance(getLog()));
+		}
+
+		publish(solrCloudManager, "Solr nodes changed");
+		reportTimings(timer);
+	}
+
+	/**
+	 * Changes the nodes of the cluster, in {@link #step(PhaseTimer, String, SolrCloudManager, Step) steps}
+	 */
+	protected abstract void scale(SolrCloudManager solrCloudManager, ClusterScaler scaler, PhaseTimer timer) throws MojoExecutionException;
+
+	/**
+	 * Runs a step, then waits until every collection is fully active again (all replicas active, with leaders)
+	 *
+	 * @param name name of the step, for the log and the timings
+	 */
+	protected void step(PhaseTimer timer, String name, SolrCloudManager solrCloudManager, Step step) throws MojoExecutionException {
+		long start = System.nanoTime();
+		timer.run(name, step::run);
+		long changed = System.nanoTime();
+		timer.run("ready collections", () -> solrCloudManager.waitForCollections(getLog()));
+		long ready = System.nanoTime();
+		getLog().info(name + " took " + TimeUnit.NANOSECONDS.toMillis(changed - start) + " ms, then the cluster was fully active in "
+				+ TimeUnit.NANOSECONDS.toMillis(ready - changed) + " ms (" + TimeUnit.NANOSECONDS.toMillis(ready - start) + " ms in total)");
+	}
+}
@@ -1,18 +1,42 @@
 package io.github.borisnaguet.solr.maven;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
 
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+
 public abstract class AbstractSolrMojo extends AbstractMojo {
 	
 	protected static final String CLOUD_MANAGER_CXT = "cloudManager";
+	
+	protected static final String SHARED_KEY_CXT = "sharedClusterKey";
+
+	protected static final String METRICS_CXT = "metricsCollector";
+
+	protected static final String PUBLISHED_FILE = "solrcloud.properties";
+	protected static final String PUBLISHED_ZK_ADDRESS = "solrcloud.zkAddress";
+	protected static final String PUBLISHED_ZK_HOST = "solrcloud.zkHost";
+	protected static final String PUBLISHED_CHROOT = "solrcloud.chroot";
+	protected static final String PUBLISHED_JETTY_URLS = "solrcloud.jettyUrls";
 
 	@Parameter(property = "solr.skip", required = false)
 	protected boolean skip;
@@ -38,4 +62,129 @@ public abstract class AbstractSolrMojo extends AbstractMojo {
     @Parameter( defaultValue = "${project.build.directory}", readonly = true )
     protected File target;
 
+    /**
+     * Where the state of the Solr daemon (see solr.daemon) is written, so that later builds can attach to it or stop it.
+     * It's out of the build directory, that a mvn clean deletes while the daemon runs: its logs, and its data by default, 
+     * are next to it.
+     */
+    @Parameter( property = "solr.daemon.state", defaultValue = "${user.home}/.solr-maven-plugin/daemons/${project.groupId}/${project.artifactId}/solrcloud-daemon.properties" )
+    protected File daemonStateFile;
+
+    /**
+     * Max number of seconds to wait for the clusters stopped in the background (see solr.stop.async) 
+     * before starting or stopping another one
+     */
+    @Parameter( property = "solr.stop.timeout", defaultValue = "120" )
+    protected int stopTimeout;
+
+    /**
+     * Waits for the clusters stopped in the background by previous executions
+     * 
+     * @throws MojoExecutionException if one of them failed to stop, or is still stopping after solr.stop.timeout
+     */
+    protected void awaitAsyncStops() throws MojoExecutionException {
+    	AsyncStops.await(getLog(), stopTimeout);
+    }
+
+    /**
+     * @return the cluster started by start-solrcloud in this build, or else the Solr daemon
+     * @throws MojoExecutionException if Solr is not started
+     */
+    protected SolrCloudManager getStartedCloudManager() throws MojoExecutionException {
+    	SolrCloudManager solrCloudManager = (SolrCloudManager) session.getPluginContext(plugin, project).get(CLOUD_MANAGER_CXT);
+    	if(solrCloudManager == null) {
+    		solrCloudManager = ForkedSolrCloudManager.attach(getLog(), daemonStateFile.toPath(), null);
+    	}
+    	if(solrCloudManager == null) {
+    		throw new MojoExecutionException("Solr is not started: run start-solrcloud before " + mojo.getGoal());
+    	}
+    	return solrCloudManager;
+    }
+
+    /**
+     * Logs the timings of the phases of this goal, and writes them in target/solrcloud-timings.json (under the id of the execution)
+     */
+    protected void reportTimings(PhaseTimer timer) {
+    	timer.log(getLog(), mojo.getGoal());
+    	File timingsFile = new File(target, "solrcloud-timings.json");
+    	try {
+    		timer.write(timingsFile.toPath(), mojo.getExecutionId(), mojo.getGoal());
+    	}
+    	catch (IOException e) {
+    		getLog().warn("Can't write timings in " + timingsFile, e);
+    	}
+    }
+
+    /**
+     * @param pools values of the placeholders of queries, by name: comma separated, or <code>@file</code> to read them 
+     * from a file (one per line, relative to the project)
+     * @return values of each pool
+     * @throws MojoExecutionException if a pool can't be read, or is empty
+     */
+    protected Map<String, String[]> readPools(Map<String, String> pools) throws MojoExecutionException {
+    	Map<String, String[]> values = new HashMap<>();
+    	if(pools == null) {
+    		return values;
+    	}
+    	for (Entry<String, String> pool : pools.entrySet()) {
+    		String value = pool.getValue() == null ? "" : pool.getValue().trim();
+    		List<String> poolValues = new ArrayList<>();
+    		if(value.startsWith("@")) {
+    			File file = new File(value.substring(1));
+    			file = file.isAbsolute() ? file : new File(basedir, file.getPath());
+    			try {
+    				for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+    					if(!line.trim().isEmpty()) {
+    						poolValues.add(line.trim());
+    					}
+    				}
+    			}
+    			catch (IOException e) {
+    				throw new MojoExecutionException("Can't read pool " + pool.getKey() + " from " + file, e);
+    			}
+    		}
+    		else {
+    			for (String poolValue : value.split(",")) {
+    				poolValues.add(poolValue.trim());
+    			}
+    		}
+    		if(poolValues.isEmpty()) {
+    			throw new MojoExecutionException("Pool " + pool.getKey() + " is empty");
+    		}
+    		values.put(pool.getKey(), poolValues.toArray(new String[0]));
+    	}
+    	return values;
+    }
+
+    /**
+     * Publishes where the cluster runs (ports may have been picked when it started), for the tests: 
+     * as project properties, and in a properties file (again when nodes are added or removed)
+     * 
+     * @param event what happened to the cluster, for the log
+     */
+    protected void publish(SolrCloudManager cloudManager, String event) throws MojoExecutionException {
+    	String zkAddress = cloudManager.getZkAddress();
+    	Properties cluster = new Properties();
+    	// no ZK in embedded mode
+    	if(zkAddress != null) {
+    		int chrootStart = zkAddress.indexOf('/');
+    		cluster.setProperty(PUBLISHED_ZK_ADDRESS, zkAddress);
+    		cluster.setProperty(PUBLISHED_ZK_HOST, chrootStart < 0 ? zkAddress : zkAddress.substring(0, chrootStart));
+    		cluster.setProperty(PUBLISHED_CHROOT, chrootStart < 0 ? "" : zkAddress.substring(chrootStart));
+    	}
+    	cluster.setProperty(PUBLISHED_JETTY_URLS, String.join(",", cloudManager.getJettyUrls()));
+    	
+    	project.getProperties().putAll(cluster);
+    	Path clusterFile = target.toPath().resolve(PUBLISHED_FILE);
+    	try {
+    		Files.createDirectories(clusterFile.getParent());
+    		try (OutputStream out = Files.newOutputStream(clusterFile)) {
+    			cluster.store(out, "SolrCloud published by " + mojo.getExecutionId());
+    		}
+    	}
+    	catch (IOException e) {
+    		throw new MojoExecutionException("Can't write " + clusterFile, e);
+    	}
+    	getLog().info(event + ", " + (zkAddress == null ? "embedded" : "ZK on " + zkAddress) + ", nodes " + cluster.getProperty(PUBLISHED_JETTY_URLS) + " (see " + clusterFile + ")");
+    }
 }
@@ -0,0 +1,43 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.apache.maven.plugins.annotations.LifecyclePhase.INTEGRATION_TEST;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+
+/**
+ * Adds nodes to the SolrCloud started by start-solrcloud (or to the Solr daemon), and optionally replicas on them:
+ * to measure how the throughput scales out (see bench).
+ *
+ * @author BorisNaguet
+ *
+ */
+@Mojo(name = "add-nodes", defaultPhase = INTEGRATION_TEST, threadSafe = true)
+public class AddNodesMojo extends AbstractScaleMojo {
+
+	/**
+	 * Number of nodes to start
+	 */
+	@Parameter(property = "solr.nodes.add", defaultValue = "1")
+	private int nodes;
+
+	/**
+	 * Number of replicas to add to each shard once the nodes are started, on the nodes that have the fewest
+	 */
+	@Parameter(property = "solr.nodes.add.replicas", defaultValue = "0")
+	private int replicas;
+
+	@Override
+	protected void scale(SolrCloudManager solrCloudManager, ClusterScaler scaler, PhaseTimer timer) throws MojoExecutionException {
+		if(nodes < 1) {
+			throw new MojoExecutionException("solr.nodes.add must be at least 1");
+		}
+		step(timer, "add nodes", solrCloudManager, () -> scaler.addNodes(getLog(), nodes));
+		if(replicas > 0) {
+			step(timer, "add replicas", solrCloudManager, () -> scaler.addReplicas(getLog(), replicas));
+		}
+	}
+}
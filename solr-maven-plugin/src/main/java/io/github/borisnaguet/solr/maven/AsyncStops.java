@@ -0,0 +1,145 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Stops of clusters running in the background (see async of stop-solrcloud), while the build goes on.
+ *
+ * <p>
+ * The next start-solrcloud or stop-solrcloud of the build waits for them with {@link #await(Log, int)} (a new
+ * cluster probably needs the ports of the one being stopped), and fails if one of them failed. stop-solrcloud only
+ * stops in the background when a later module uses the plugin: otherwise nothing would report a failure before the
+ * end of the build. Before the JVM exits, we still wait for the ones left (a later execution skipped with solr.skip),
+ * and log their errors.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public final class AsyncStops {
+	/**
+	 * max number of seconds to wait for the stops still running when the JVM exits
+	 */
+	private static final int EXIT_TIMEOUT = 120;
+
+	private static final ExecutorService STOPPERS = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "solr-async-stop");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static final List<PendingStop> PENDING = new ArrayList<>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> awaitOnExit(new SystemStreamLog()), "solr-async-stops-wait"));
+	}
+
+	private AsyncStops() {
+	}
+
+	/**
+	 * Stops a cluster (and cleans its dirs)
+	 */
+	@FunctionalInterface
+	public interface StopTask {
+		void run() throws MojoExecutionException;
+	}
+
+	/**
+	 * Runs a stop in the background
+	 *
+	 * @param description what is stopped, for the logs
+	 * @param task the stop
+	 */
+	public static synchronized void submit(String description, StopTask task) {
+		PENDING.add(new PendingStop(description, STOPPERS.submit(() -> {
+			task.run();
+			return null;
+		})));
+	}
+
+	/**
+	 * Waits for the stops running in the background
+	 *
+	 * @param log maven log
+	 * @param timeout max number of seconds to wait for all of them
+	 * @throws MojoExecutionException if one of them failed, or is still running after the timeout
+	 */
+	public static void await(Log log, int timeout) throws MojoExecutionException {
+		List<PendingStop> pending;
+		synchronized (AsyncStops.class) {
+			pending = new ArrayList<>(PENDING);
+			PENDING.clear();
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		log.info("Waiting for " + pending.size() + " Solr stop(s) running in the background");
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+		MojoExecutionException error = null;
+		for (PendingStop stop : pending) {
+			try {
+				stop.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+			catch (ExecutionException e) {
+				error = stopError(error, new MojoExecutionException("Background stop of " + stop.description + " failed", e.getCause()));
+			}
+			catch (TimeoutException e) {
+				// still waited for on exit
+				synchronized (AsyncStops.class) {
+					PENDING.add(stop);
+				}
+				error = stopError(error, new MojoExecutionException(stop.description + " still stopping after " + timeout + " s"));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while waiting for " + stop.description + " to stop", e);
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private static MojoExecutionException stopError(MojoExecutionException first, MojoExecutionException error) {
+		if (first == null) {
+			return error;
+		}
+		first.addSuppressed(error);
+		return first;
+	}
+
+	private static void awaitOnExit(Log log) {
+		try {
+			await(log, EXIT_TIMEOUT);
+		}
+		catch (MojoExecutionException e) {
+			log.error(e.getMessage(), e.getCause());
+			for (Throwable suppressed : e.getSuppressed()) {
+				log.error(suppressed.getMessage(), suppressed.getCause());
+			}
+		}
+	}
+
+	private static class PendingStop {
+		private final String description;
+		private final Future<Void> future;
+
+		public PendingStop(String description, Future<Void> future) {
+			this.description = description;
+			this.future = future;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.apache.maven.plugins.annotations.LifecyclePhase.INTEGRATION_TEST;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.solr.client.solrj.SolrClient;
+
+import io.github.borisnaguet.solr.maven.bench.BenchQuery;
+import io.github.borisnaguet.solr.maven.bench.BenchReport;
+import io.github.borisnaguet.solr.maven.bench.BenchRunner;
+import io.github.borisnaguet.solr.maven.bench.BenchStats;
+import io.github.borisnaguet.solr.maven.bench.ParameterTemplate;
+
+/**
+ * Runs a mixed workload (queries, and optionally indexing) against the SolrCloud started by start-solrcloud (or the
+ * Solr daemon), and reports latency percentiles and throughput of each query, in JSON and HTML.
+ * 
+ * @author BorisNaguet
+ *
+ */
+@Mojo(name = "bench", defaultPhase = INTEGRATION_TEST, threadSafe = true)
+public class BenchMojo extends AbstractSolrMojo {
+	
+	/**
+	 * Queries of the workload
+	 */
+	@Parameter
+	private List<QueryTemplate> queries;
+	
+	/**
+	 * Values of the placeholders of the queries, by name: comma separated, or <code>@file</code> to read them from
+	 * a file (one per line)
+	 */
+	@Parameter
+	private Map<String, String> pools;
+	
+	/**
+	 * Number of client threads sending queries
+	 */
+	@Parameter(property = "solr.bench.threads", defaultValue = "4")
+	private int threads;
+	
+	/**
+	 * Duration of the run, in s (when requests is 0)
+	 */
+	@Parameter(property = "solr.bench.duration", defaultValue = "30")
+	private int duration;
+	
+	/**
+	 * Number of queries of the run (instead of a duration)
+	 */
+	@Parameter(property = "solr.bench.requests", defaultValue = "0")
+	private long requests;
+	
+	/**
+	 * Duration of the warmup (not measured), in s
+	 */
+	@Parameter(property = "solr.bench.warmup", defaultValue = "5")
+	private int warmup;
+	
+	/**
+	 * Number of documents indexed per second while querying (0 for none)
+	 */
+	@Parameter(property = "solr.bench.index.rate", defaultValue = "0")
+	private int indexRate;
+	
+	/**
+	 * Collection to index in
+	 */
+	@Parameter(property = "solr.bench.index.collection")
+	private String indexCollection;
+	
+	/**
+	 * Fields of the indexed documents, with placeholders like the queries (id defaults to <code>bench-{seq}</code>)
+	 */
+	@Parameter
+	private Map<String, String> indexFields;
+	
+	/**
+	 * commitWithin of the update requests, in ms
+	 */
+	@Parameter(property = "solr.bench.index.commit.within", defaultValue = "1000")
+	private int commitWithin;
+	
+	/**
+	 * Fail the build if a request failed
+	 */
+	@Parameter(property = "solr.bench.fail.on.error", defaultValue = "true")
+	private boolean failOnError;
+	
+	/**
+	 * Where the reports are written (named after the execution id)
+	 */
+	@Parameter(property = "solr.bench.output", defaultValue = "${project.build.directory}/solr-bench")
+	private File outputDir;
+	
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if(skip) {
+			getLog().info("solr.skip=true - not running bench");
+			return;
+		}
+		if((queries == null || queries.isEmpty()) && indexRate <= 0) {
+			getLog().info("No query to bench");
+			return;
+		}
+		if(requests > 0 && (queries == null || queries.isEmpty())) {
+			throw new MojoExecutionException("solr.bench.requests needs queries");
+		}
+		if(indexRate > 0 && indexCollection == null) {
+			throw new MojoExecutionException("solr.bench.index.rate needs an indexCollection");
+		}
+		
+		Map<String, String[]> values = readPools(pools);
+		AtomicLong sequence = new AtomicLong();
+		List<BenchQuery> benchQueries = new ArrayList<>();
+		Set<String> names = new HashSet<>();
+		Map<String, ParameterTemplate> fields = new LinkedHashMap<>();
+		try {
+			if(queries != null) {
+				for (QueryTemplate query : queries) {
+					if(query.getCollection() == null || query.getQuery() == null) {
+						throw new MojoExecutionException("Each query must have a collection and a query");
+					}
+					String name = query.getName() == null ? query.getQuery() : query.getName();
+					// the report is by name
+					if(!names.add(name)) {
+						throw new MojoExecutionException("Several queries are named " + name + ": give each one a distinct name");
+					}
+					benchQueries.add(new BenchQuery(name, query.getCollection(), Math.max(1, query.getWeight()), query.getQuery(), values, sequence));
+				}
+			}
+			if(indexFields == null || !indexFields.containsKey("id")) {
+				fields.put("id", new ParameterTemplate("bench-{" + ParameterTemplate.SEQ + "}", values, sequence));
+			}
+			if(indexFields != null) {
+				for (Entry<String, String> field : indexFields.entrySet()) {
+					fields.put(field.getKey(), new ParameterTemplate(field.getValue(), values, sequence));
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		}
+		
+		SolrCloudManager solrCloudManager = getStartedCloudManager();
+		BenchReport report;
+		try (SolrClient client = solrCloudManager.newClient()) {
+			BenchRunner runner = new BenchRunner(client, benchQueries, threads);
+			if(indexRate > 0) {
+				runner.setIndexing(indexCollection, fields, indexRate, commitWithin);
+			}
+			getLog().info("Will run bench with " + threads + " threads, " + warmup + " s of warmup then " 
+					+ (requests > 0 ? requests + " queries" : duration + " s"));
+			report = runner.run(warmup, duration, requests);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't close Solr client", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while running bench", e);
+		}
+		
+		report.log(getLog());
+		try {
+			Files.createDirectories(outputDir.toPath());
+			report.writeJson(outputDir.toPath().resolve(mojo.getExecutionId() + ".json"));
+			report.writeHtml(outputDir.toPath().resolve(mojo.getExecutionId() + ".html"));
+			getLog().info("Bench reports written in " + outputDir);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't write bench reports in " + outputDir, e);
+		}
+		
+		checkThresholds(report);
+	}
+
+	private void checkThresholds(BenchReport report) throws MojoFailureException {
+		List<String> failures = new ArrayList<>();
+		if(failOnError && report.getErrors() > 0) {
+			for (Entry<String, BenchStats> stats : report.getQueryStats().entrySet()) {
+				if(stats.getValue().getErrors() > 0) {
+					failures.add(stats.getKey() + ": " + stats.getValue().getErrors() + " failed requests (" + stats.getValue().getFirstError() + ")");
+				}
+			}
+			if(report.getIndexStats() != null && report.getIndexStats().getErrors() > 0) {
+				failures.add("indexing: " + report.getIndexStats().getErrors() + " failed requests (" + report.getIndexStats().getFirstError() + ")");
+			}
+		}
+		if(queries != null) {
+			for (QueryTemplate query : queries) {
+				String name = query.getName() == null ? query.getQuery() : query.getName();
+				if(query.getMaxP99() != null) {
+					double p99 = report.getQueryStats().get(name).getLatencies().getValueAtPercentile(99) / 1000.0;
+					if(p99 > query.getMaxP99()) {
+						failures.add(name + ": p99 of " + p99 + " ms is above " + query.getMaxP99() + " ms");
+					}
+				}
+			}
+		}
+		if(!failures.isEmpty()) {
+			throw new MojoFailureException("Bench failed: " + String.join(", ", failures));
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.apache.maven.plugins.annotations.LifecyclePhase.INTEGRATION_TEST;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.solr.client.solrj.SolrClient;
+
+import io.github.borisnaguet.solr.maven.bench.BenchQuery;
+import io.github.borisnaguet.solr.maven.bench.ParameterTemplate;
+import io.github.borisnaguet.solr.maven.chaos.ChaosLoad;
+import io.github.borisnaguet.solr.maven.chaos.ChaosReport;
+import io.github.borisnaguet.solr.maven.chaos.ChaosReport.FaultResult;
+import io.github.borisnaguet.solr.maven.chaos.Fault;
+
+/**
+ * Injects faults in the SolrCloud started by start-solrcloud (or the Solr daemon) while a load (queries, and
+ * optionally indexing) runs against it: nodes restarted, or stopped for a while, ZK sessions expired, ZK restarted.
+ * Reports how long the cluster took to recover from each fault (all replicas active again), and the error rate and
+ * latencies of the load meanwhile, in JSON and HTML.
+ *
+ * @author BorisNaguet
+ *
+ */
+@Mojo(name = "chaos", defaultPhase = INTEGRATION_TEST, threadSafe = true)
+public class ChaosMojo extends AbstractSolrMojo {
+
+	/**
+	 * max time for a fault to show in the state of the collections, in ms: one that doesn't by then had no effect
+	 */
+	private static final long VISIBLE_TIMEOUT = 10_000;
+
+	/**
+	 * Faults to inject, in order, comma separated: restart-node, stop-node, expire-session, restart-zk
+	 */
+	@Parameter(property = "solr.chaos.faults", defaultValue = "restart-node,stop-node,expire-session,restart-zk")
+	private String faults;
+
+	/**
+	 * Number of times the faults are injected
+	 */
+	@Parameter(property = "solr.chaos.rounds", defaultValue = "1")
+	private int rounds;
+
+	/**
+	 * Time under load before the first fault (baseline), and between the recovery of a fault and the next one, in s
+	 */
+	@Parameter(property = "solr.chaos.interval", defaultValue = "10")
+	private int interval;
+
+	/**
+	 * How long a stopped node, or ZK, stays down, in s
+	 */
+	@Parameter(property = "solr.chaos.downtime", defaultValue = "5")
+	private int downtime;
+
+	/**
+	 * Seed of the choice of the nodes faults are injected in (0 for a random one)
+	 */
+	@Parameter(property = "solr.chaos.seed", defaultValue = "0")
+	private long seed;
+
+	/**
+	 * Fail the build if the cluster took longer than this to recover from a fault, in s (0 for no limit)
+	 */
+	@Parameter(property = "solr.chaos.max.recovery", defaultValue = "0")
+	private int maxRecovery;
+
+	/**
+	 * Queries of the load, like the ones of bench
+	 */
+	@Parameter
+	private List<QueryTemplate> queries;
+
+	/**
+	 * Values of the placeholders of the queries, by name: comma separated, or <code>@file</code> to read them from
+	 * a file (one per line)
+	 */
+	@Parameter
+	private Map<String, String> pools;
+
+	/**
+	 * Number of client threads sending queries
+	 */
+	@Parameter(property = "solr.chaos.threads", defaultValue = "4")
+	private int threads;
+
+	/**
+	 * Number of documents indexed per second during the run (0 for none)
+	 */
+	@Parameter(property = "solr.chaos.index.rate", defaultValue = "0")
+	private int indexRate;
+
+	/**
+	 * Collection to index in
+	 */
+	@Parameter(property = "solr.chaos.index.collection")
+	private String indexCollection;
+
+	/**
+	 * Fields of the indexed documents, with placeholders like the queries (id defaults to <code>chaos-{seq}</code>)
+	 */
+	@Parameter
+	private Map<String, String> indexFields;
+
+	/**
+	 * commitWithin of the update requests, in ms
+	 */
+	@Parameter(property = "solr.chaos.index.commit.within", defaultValue = "1000")
+	private int commitWithin;
+
+	/**
+	 * Where the reports are written (named after the execution id)
+	 */
+	@Parameter(property = "solr.chaos.output", defaultValue = "${project.build.directory}/solr-chaos")
+	private File outputDir;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if(skip) {
+			getLog().info("solr.skip=true - not running chaos");
+			return;
+		}
+		if((queries == null || queries.isEmpty()) && indexRate <= 0) {
+			throw new MojoExecutionException("chaos needs a load: queries, or solr.chaos.index.rate");
+		}
+		if(indexRate > 0 && indexCollection == null) {
+			throw new MojoExecutionException("solr.chaos.index.rate needs an indexCollection");
+		}
+		List<Fault> faultList = new ArrayList<>();
+		for (String fault : faults.split(",")) {
+			if(!fault.trim().isEmpty()) {
+				try {
+					faultList.add(Fault.of(fault));
+				}
+				catch (IllegalArgumentException e) {
+					throw new MojoExecutionException("Unknown fault " + fault + ": use restart-node, stop-node, expire-session or restart-zk", e);
+				}
+			}
+		}
+
+		Map<String, String[]> values = readPools(pools);
+		AtomicLong sequence = new AtomicLong();
+		List<BenchQuery> loadQueries = new ArrayList<>();
+		Map<String, ParameterTemplate> fields = new LinkedHashMap<>();
+		try {
+			if(queries != null) {
+				for (QueryTemplate query : queries) {
+					if(query.getCollection() == null || query.getQuery() == null) {
+						throw new MojoExecutionException("Each query must have a collection and a query");
+					}
+					String name = query.getName() == null ? query.getQuery() : query.getName();
+					loadQueries.add(new BenchQuery(name, query.getCollection(), Math.max(1, query.getWeight()), query.getQuery(), values, sequence));
+				}
+			}
+			if(indexFields == null || !indexFields.containsKey("id")) {
+				fields.put("id", new ParameterTemplate("chaos-{" + ParameterTemplate.SEQ + "}", values, sequence));
+			}
+			if(indexFields != null) {
+				for (Entry<String, String> field : indexFields.entrySet()) {
+					fields.put(field.getKey(), new ParameterTemplate(field.getValue(), values, sequence));
+				}
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		}
+
+		SolrCloudManager solrCloudManager = getStartedCloudManager();
+		Random random = seed == 0 ? new Random() : new Random(seed);
+		ChaosReport report;
+		try (SolrClient client = solrCloudManager.newClient()) {
+			ChaosLoad load = new ChaosLoad(client, loadQueries, threads);
+			if(indexRate > 0) {
+				load.setIndexing(indexCollection, fields, indexRate, commitWithin);
+			}
+			getLog().info("Will inject " + faultList.size() * rounds + " faults (" + faults + ", " + rounds + " round(s)), under a load of "
+					+ threads + " threads" + (indexRate > 0 ? " and " + indexRate + " docs/s" : ""));
+			long start = System.nanoTime();
+			load.start();
+			try {
+				TimeUnit.SECONDS.sleep(interval);
+				report = new ChaosReport(load.mark());
+				for (int round = 0; round < rounds; round++) {
+					for (Fault fault : faultList) {
+						long injected = System.nanoTime();
+						String target = inject(solrCloudManager, fault, random);
+						long down = System.nanoTime();
+						boolean visible = solrCloudManager.waitForRecovery(getLog(), VISIBLE_TIMEOUT);
+						long recovery = visible ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - down) : 0;
+						report.add(new FaultResult(fault, target, TimeUnit.NANOSECONDS.toMillis(injected - start),
+								TimeUnit.NANOSECONDS.toMillis(down - injected), visible, recovery, load.mark()));
+						getLog().info(fault.getName() + " of " + target + ": " + (visible ? "recovered in " + recovery + " ms" : "no visible effect"));
+						TimeUnit.SECONDS.sleep(interval);
+						load.mark();
+					}
+				}
+			}
+			finally {
+				load.stop();
+			}
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't close Solr client", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while running chaos", e);
+		}
+
+		report.log(getLog());
+		try {
+			Files.createDirectories(outputDir.toPath());
+			report.writeJson(outputDir.toPath().resolve(mojo.getExecutionId() + ".json"));
+			report.writeHtml(outputDir.toPath().resolve(mojo.getExecutionId() + ".html"));
+			getLog().info("Chaos reports written in " + outputDir);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't write chaos reports in " + outputDir, e);
+		}
+
+		checkRecovery(report);
+	}
+
+	/**
+	 * @return node URL, or ZK address, the fault was injected in
+	 */
+	private String inject(SolrCloudManager solrCloudManager, Fault fault, Random random) throws MojoExecutionException {
+		int node = random.nextInt(solrCloudManager.getJettyUrls().size());
+		switch (fault) {
+		case RESTART_NODE:
+			return solrCloudManager.restartNode(getLog(), node, 0);
+		case STOP_NODE:
+			return solrCloudManager.restartNode(getLog(), node, TimeUnit.SECONDS.toMillis(downtime));
+		case EXPIRE_SESSION:
+			return solrCloudManager.expireZkSession(getLog(), node);
+		case RESTART_ZK:
+			solrCloudManager.restartZk(getLog(), TimeUnit.SECONDS.toMillis(downtime));
+			return solrCloudManager.getZkAddress();
+		default:
+			throw new IllegalStateException("Unknown fault " + fault);
+		}
+	}
+
+	private void checkRecovery(ChaosReport report) throws MojoFailureException {
+		if(maxRecovery <= 0) {
+			return;
+		}
+		List<String> failures = new ArrayList<>();
+		for (FaultResult result : report.getFaults()) {
+			if(result.getRecoveryMillis() > TimeUnit.SECONDS.toMillis(maxRecovery)) {
+				failures.add(result.getFault().getName() + " of " + result.getTarget() + ": recovered in " + result.getRecoveryMillis() + " ms");
+			}
+		}
+		if(!failures.isEmpty()) {
+			throw new MojoFailureException("Chaos failed, recovery above " + maxRecovery + " s: " + String.join(", ", failures));
+		}
+	}
+}
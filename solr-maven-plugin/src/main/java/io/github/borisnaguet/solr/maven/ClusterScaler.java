@@ -0,0 +1,60 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Adds and removes nodes and replicas of a started cluster (see {@link SolrCloudManager#getScaler()}): used by
+ * add-nodes and remove-nodes.
+ *
+ * @author BorisNaguet
+ *
+ */
+public interface ClusterScaler {
+
+	/**
+	 * Starts new nodes, and waits until they're live. They have no replica: see {@link #addReplicas(Log, int)} and
+	 * {@link #rebalance(Log)}.
+	 * 
+	 * @param log maven log
+	 * @param count number of nodes to add
+	 * @return base URLs of the new nodes
+	 * @throws MojoExecutionException if a node can't be started, or is not live after the nodes timeout
+	 */
+	List<String> addNodes(Log log, int count) throws MojoExecutionException;
+
+	/**
+	 * Stops the last nodes started for good, once their replicas are moved to the other nodes (a replica of the same
+	 * type is added to the shard on another node, and the moved one is deleted once it's active). A replica whose shard
+	 * already has one on every other node is only deleted.
+	 * 
+	 * @param log maven log
+	 * @param count number of nodes to remove
+	 * @return base URLs of the removed nodes
+	 * @throws MojoExecutionException if a replica can't be moved, or a node can't be stopped
+	 */
+	List<String> removeNodes(Log log, int count) throws MojoExecutionException;
+
+	/**
+	 * Adds replicas to every shard of every collection, on the nodes that have the fewest replicas (and none of the
+	 * shard): a shard that already has one on every node gets fewer
+	 * 
+	 * @param log maven log
+	 * @param perShard number of replicas to add to each shard
+	 * @return number of replicas added
+	 * @throws MojoExecutionException if a replica can't be added, or is not active after the collections timeout
+	 */
+	int addReplicas(Log log, int perShard) throws MojoExecutionException;
+
+	/**
+	 * Moves replicas from the node that has the most to the one that has the fewest, until they differ by one at most
+	 * (or until the replicas left to move all have one of their shard on the receiving node)
+	 * 
+	 * @param log maven log
+	 * @return number of replicas moved
+	 * @throws MojoExecutionException if a replica can't be moved
+	 */
+	int rebalance(Log log) throws MojoExecutionException;
+}
@@ -0,0 +1,243 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.lucene.util.Version;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.github.borisnaguet.solr.maven.util.FileUtil;
+
+/**
+ * Cache of "golden" clusters: snapshots of the data dir (ZK data + Solr nodes) taken just after the config was
+ * uploaded and the collections were created.
+ *
+ * <p>
+ * Templates are stored under a key computed from everything that ends up in that data dir (see
+ * {@link #key(Path, String, String, String, List, int, int, int)}), so that a later start with the same settings
+ * only has to clone it, and restart ZK and the nodes on it.
+ * </p>
+ * <p>
+ * Nodes must be restarted on the ports they had when the template was saved, because the cluster state in ZK
+ * references them.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class ClusterTemplates {
+	/**
+	 * name of the file (in each template) that stores the port of each node
+	 */
+	private static final String NODES_FILE = "template-nodes.properties";
+
+	private final Path cacheDir;
+
+	public ClusterTemplates(Path cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Computes the key of the template matching a configuration
+	 *
+	 * @param confDir conf dir, or null to ignore its content
+	 * @return a hash of all the parameters, and of the content of the conf dir
+	 * @throws MojoExecutionException if the conf dir can't be read
+	 */
+	public static String key(Path confDir, String solrXml, String configName, String chroot, List<String> collections,
+			int numServers, int numShards, int replicationFactor, IndexStorage indexStorage) throws MojoExecutionException {
+		Hasher hasher = Hashing.sha256().newHasher()
+				.putString(Version.LATEST.toString(), StandardCharsets.UTF_8)
+				.putString(String.valueOf(solrXml), StandardCharsets.UTF_8)
+				.putString(configName, StandardCharsets.UTF_8)
+				.putString(String.valueOf(chroot), StandardCharsets.UTF_8)
+				.putString(String.join(",", collections), StandardCharsets.UTF_8)
+				.putInt(numServers)
+				.putInt(numShards)
+				.putInt(replicationFactor)
+				.putString(indexStorage.name(), StandardCharsets.UTF_8);
+		if (confDir == null) {
+			return hasher.hash().toString();
+		}
+
+		try (Stream<Path> files = Files.walk(confDir)) {
+			for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+				hasher.putString(confDir.relativize(file).toString(), StandardCharsets.UTF_8);
+				hasher.putBytes(Files.readAllBytes(file));
+			}
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't read conf dir " + confDir, e);
+		}
+		return hasher.hash().toString();
+	}
+
+	/**
+	 * Clones a template in the data dir
+	 *
+	 * @param log maven log
+	 * @param key key of the template
+	 * @param dataDir (empty) data dir to clone the template in
+	 * @return the port of each node (by node dir name), or null if there's no template for that key, or if it can't
+	 *         be used
+	 * @throws MojoExecutionException if the template can't be cloned
+	 */
+	public Map<String, Integer> restore(Log log, String key, Path dataDir) throws MojoExecutionException {
+		Path template = cacheDir.resolve(key);
+		Path nodesFile = template.resolve(NODES_FILE);
+		if (Files.notExists(nodesFile)) {
+			log.info("No cluster template " + key + " in " + cacheDir);
+			return null;
+		}
+
+		Map<String, Integer> nodePorts = new TreeMap<>();
+		Properties nodes = new Properties();
+		try (InputStream in = Files.newInputStream(nodesFile)) {
+			nodes.load(in);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't read " + nodesFile, e);
+		}
+		for (String node : nodes.stringPropertyNames()) {
+			int port = Integer.parseInt(nodes.getProperty(node));
+			if (!isFree(port)) {
+				log.warn("Port " + port + " used by cluster template " + key + " isn't free: template not used");
+				return null;
+			}
+			nodePorts.put(node, port);
+		}
+
+		log.info("Will clone cluster template " + template + " to " + dataDir);
+		try {
+			Files.walkFileTree(template, new Cloner(template, dataDir));
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't clone cluster template " + template + " to " + dataDir, e);
+		}
+		return nodePorts;
+	}
+
+	/**
+	 * @return true if there's a template for that key
+	 */
+	public boolean exists(String key) {
+		return Files.exists(cacheDir.resolve(key));
+	}
+
+	public Path getCacheDir() {
+		return cacheDir;
+	}
+
+	/**
+	 * Saves the content of the data dir as a template (if there's none yet for that key).
+	 *
+	 * <p>
+	 * The cluster must be stopped (see {@link SolrCloudManager#saveTemplate(Log, ClusterTemplates, String)}): Lucene
+	 * files, update logs and ZK logs of a running cluster are open, and being written.
+	 * </p>
+	 *
+	 * @param log maven log
+	 * @param key key of the template
+	 * @param dataDir data dir of a cluster just initialized, and stopped
+	 * @param nodePorts port of each node (by node dir name)
+	 */
+	public void save(Log log, String key, Path dataDir, Map<String, Integer> nodePorts) {
+		Path template = cacheDir.resolve(key);
+		if (Files.exists(template)) {
+			return;
+		}
+
+		Path tmp = cacheDir.resolve(key + ".tmp-" + System.nanoTime());
+		try {
+			Files.createDirectories(cacheDir);
+			FileUtil.copyDir(dataDir, tmp);
+
+			Properties nodes = new Properties();
+			for (Entry<String, Integer> node : nodePorts.entrySet()) {
+				nodes.setProperty(node.getKey(), String.valueOf(node.getValue()));
+			}
+			try (OutputStream out = Files.newOutputStream(tmp.resolve(NODES_FILE))) {
+				nodes.store(out, "ports of the nodes of this cluster template");
+			}
+
+			Files.move(tmp, template, StandardCopyOption.ATOMIC_MOVE);
+			log.info("Cluster template saved to " + template);
+		}
+		catch (IOException e) {
+			// another build may have saved the same template in the meantime
+			log.warn("Can't save cluster template " + template + " - " + e.getMessage());
+			log.debug(e);
+			FileUtil.delete(log, tmp);
+		}
+	}
+
+	private static boolean isFree(int port) {
+		try (ServerSocket socket = new ServerSocket(port)) {
+			socket.setReuseAddress(true);
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Copies a template, except Lucene index files that are hard-linked when possible (they're never modified once
+	 * written)
+	 */
+	private static class Cloner extends SimpleFileVisitor<Path> {
+		private final Path source;
+		private final Path target;
+
+		public Cloner(Path source, Path target) {
+			this.source = source;
+			this.target = target;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+			Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+			return FileVisitResult.CONTINUE;
+		}
+
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+			if (file.getFileName().toString().equals(NODES_FILE)) {
+				return FileVisitResult.CONTINUE;
+			}
+
+			Path dest = target.resolve(source.relativize(file).toString());
+			if (file.getParent().getFileName().toString().equals("index")) {
+				try {
+					Files.createLink(dest, file);
+					return FileVisitResult.CONTINUE;
+				}
+				catch (UnsupportedOperationException | IOException e) {
+					// different file stores, or no hard links on that one: copy it
+				}
+			}
+			Files.copy(file, dest);
+			return FileVisitResult.CONTINUE;
+		}
+	}
+}
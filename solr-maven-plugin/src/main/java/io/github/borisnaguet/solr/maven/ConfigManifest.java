@@ -0,0 +1,95 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * Files of a config written in ZK by the plugin, with the hash of their content.
+ *
+ * <p>
+ * It's stored in its own znode (not under <code>/configs</code>, so Solr never sees it), and tells an incremental
+ * upload which files it may delete: only the ones it wrote, and that nobody changed since. Files that Solr writes at
+ * runtime (<code>configoverlay.json</code>, <code>params.json</code>, a managed schema...) are kept.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+final class ConfigManifest {
+	/**
+	 * parent znode of the manifests, one per config
+	 */
+	static final String ZK_ROOT = "/solr-maven-plugin/configs";
+
+	/**
+	 * hex hash of each file, by name
+	 */
+	private final Map<String, String> files = new TreeMap<>();
+
+	ConfigManifest(Map<String, HashCode> files) {
+		for (Entry<String, HashCode> file : files.entrySet()) {
+			this.files.put(file.getKey(), file.getValue().toString());
+		}
+	}
+
+	private ConfigManifest() {
+	}
+
+	/**
+	 * @param configName name of the config
+	 * @return znode of its manifest
+	 */
+	static String zkPath(String configName) {
+		return ZK_ROOT + "/" + configName;
+	}
+
+	/**
+	 * Reads a manifest: a line per file, with its hash and its name
+	 *
+	 * @param data content of the znode, null if there's none (the config wasn't written by the plugin)
+	 * @return the manifest, empty if there's none
+	 */
+	static ConfigManifest parse(byte[] data) {
+		ConfigManifest manifest = new ConfigManifest();
+		if(data == null) {
+			return manifest;
+		}
+		for (String line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+			int space = line.indexOf(' ');
+			if(space > 0) {
+				manifest.files.put(line.substring(space + 1), line.substring(0, space));
+			}
+		}
+		return manifest;
+	}
+
+	byte[] toBytes() {
+		StringBuilder sb = new StringBuilder();
+		for (Entry<String, String> file : files.entrySet()) {
+			sb.append(file.getValue()).append(' ').append(file.getKey()).append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Files of the config that can be deleted, because they're not in the conf dir anymore
+	 *
+	 * @param zkFiles hash of the files in ZK that aren't in the conf dir
+	 * @return the ones this manifest lists with the same hash: others were written or changed at runtime
+	 */
+	List<String> removable(Map<String, HashCode> zkFiles) {
+		List<String> removable = new ArrayList<>();
+		for (Entry<String, HashCode> file : zkFiles.entrySet()) {
+			if(file.getValue().toString().equals(files.get(file.getKey()))) {
+				removable.add(file.getKey());
+			}
+		}
+		return removable;
+	}
+}
@@ -0,0 +1,50 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.File;
+
+/**
+ * A file of documents to index (see {@link IndexDataMojo})
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class DataFile {
+	/**
+	 * file to index (can be gzipped)
+	 */
+	private File file;
+	
+	/**
+	 * collection to index it in
+	 */
+	private String collection;
+	
+	/**
+	 * JSONL, CSV or XML: guessed from the extension of the file if not set
+	 */
+	private String format;
+
+	public File getFile() {
+		return file;
+	}
+
+	public void setFile(File file) {
+		this.file = file;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public String getFormat() {
+		return format;
+	}
+
+	public void setFormat(String format) {
+		this.format = format;
+	}
+}
@@ -0,0 +1,260 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.core.SolrXmlConfig;
+
+import io.github.borisnaguet.solr.maven.embedded.EmbeddedHttpServer;
+import io.github.borisnaguet.solr.maven.util.FileUtil;
+
+/**
+ * Runs Solr in this JVM, without ZooKeeper nor Jetty: a {@link CoreContainer} with one core per collection (whatever
+ * the number of shards and replicas), served over HTTP by an {@link EmbeddedHttpServer}.
+ *
+ * <p>
+ * Much faster to start, and lighter, than a cluster: for tests that only need to query and index. There's no
+ * ZooKeeper, so no Collections API, and {@link #getZkAddress()} is null: clients must use the HTTP URL
+ * ({@link #getJettyUrls()}).
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class EmbeddedSolrManager extends SolrCloudManager {
+	/**
+	 * name of the Solr home, in the data dir
+	 */
+	private static final String HOME_DIR = "embedded";
+
+	/**
+	 * node name in {@link #getNodePorts()}, and default core of {@link #newClient()}
+	 */
+	private static final String NODE_NAME = "embedded";
+
+	private final int port;
+
+	private CoreContainer container;
+
+	private EmbeddedHttpServer httpServer;
+
+	/**
+	 * @param dataDir where the cores are created
+	 * @param confDir config of the cores
+	 * @param configName name of the config (only for the logs: it's not uploaded anywhere)
+	 * @param port HTTP port, 0 to pick a free one
+	 */
+	public EmbeddedSolrManager(Path dataDir, Path confDir, String configName, int port) {
+		super(dataDir, confDir, 1, 0, (String) null, configName, null);
+		this.port = port;
+	}
+
+	/**
+	 * Starts the container and its HTTP server: the task is run once they're started
+	 */
+	@Override
+	public synchronized void startCluster(Log log, ZkTask whileNodesStart) throws MojoExecutionException {
+		if (container != null) {
+			throw new MojoExecutionException("Solr already started");
+		}
+
+		Path home = getDataDir().resolve(HOME_DIR);
+		try {
+			getTimer().run("core container", () -> {
+				Files.createDirectories(home);
+				container = new CoreContainer(SolrXmlConfig.fromString(new SolrResourceLoader(home), "<solr/>"));
+				container.load();
+			});
+		}
+		catch (IOException | RuntimeException e) {
+			container = null;
+			throw new MojoExecutionException("Can't start embedded Solr in " + home, e);
+		}
+
+		try {
+			getTimer().run("http server", () -> {
+				httpServer = new EmbeddedHttpServer(container, port);
+				httpServer.start();
+			});
+		}
+		catch (IOException e) {
+			container.shutdown();
+			container = null;
+			throw new MojoExecutionException("Can't start HTTP server of embedded Solr on port " + port, e);
+		}
+		log.info("Embedded Solr started on " + httpServer.getBaseUrl());
+
+		if (whileNodesStart != null) {
+			whileNodesStart.run();
+		}
+	}
+
+	@Override
+	public synchronized void startClusterFromTemplate(Log log, Map<String, Integer> nodePorts) throws MojoExecutionException {
+		throw new MojoExecutionException("Cluster templates can't be used with embedded Solr");
+	}
+
+	/**
+	 * There's no ZooKeeper
+	 *
+	 * @return null
+	 */
+	@Override
+	public synchronized String getZkAddress() {
+		return null;
+	}
+
+	@Override
+	public synchronized List<String> getJettyUrls() {
+		return Collections.singletonList(httpServer.getBaseUrl());
+	}
+
+	@Override
+	public synchronized Map<String, Integer> getNodePorts() {
+		return Collections.singletonMap(NODE_NAME, httpServer.getPort());
+	}
+
+	/**
+	 * @return a client that calls the container directly, without HTTP (closing it doesn't stop Solr). Requests must
+	 *         name their collection.
+	 */
+	@Override
+	public SolrClient newClient() {
+		return new EmbeddedSolrServer(container, NODE_NAME) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void close() {
+				// the container is shut down by stopCluster
+			}
+		};
+	}
+
+	/**
+	 * Nothing to upload: the config is read from the conf dir when each core is created
+	 */
+	@Override
+	public synchronized void uploadConfig(Log log) throws MojoExecutionException {
+		log.debug("Embedded Solr: config " + getConfDir() + " will be copied to each core");
+	}
+
+	@Override
+	public synchronized void createCollection(Log log, String colName, int numShards, int replicationFactor) throws MojoExecutionException {
+		createCollections(log, Collections.singletonList(colName), numShards, replicationFactor);
+	}
+
+	/**
+	 * Creates the cores in parallel (one per collection, whatever the number of shards and replicas)
+	 */
+	@Override
+	public synchronized void createCollections(Log log, List<String> colNames, int numShards, int replicationFactor) throws MojoExecutionException {
+		if (numShards != 1 || replicationFactor != 1) {
+			log.debug("Embedded Solr: collections are single cores (no shards nor replicas)");
+		}
+
+		ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool(new SolrjNamedThreadFactory("core-creator"));
+		try {
+			Map<String, Future<Long>> creations = new LinkedHashMap<>();
+			for (String colName : colNames) {
+				creations.put(colName, executor.submit(() -> createCore(colName)));
+			}
+
+			MojoExecutionException error = null;
+			for (Entry<String, Future<Long>> creation : creations.entrySet()) {
+				try {
+					log.info("Core " + creation.getKey() + " created in " + creation.getValue().get() + " ms");
+				}
+				catch (ExecutionException e) {
+					if (error == null) {
+						error = new MojoExecutionException("Can't create core(s)");
+					}
+					log.error("Can't create core " + creation.getKey() + ": " + e.getCause().getMessage());
+					error.addSuppressed(e.getCause());
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while creating cores " + colNames, e);
+		}
+		finally {
+			ExecutorUtil.shutdownAndAwaitTermination(executor);
+		}
+	}
+
+	/**
+	 * Copies the config in the instance dir of the core, and creates it
+	 *
+	 * @return the time it took, in ms
+	 */
+	private long createCore(String colName) throws IOException {
+		long start = System.nanoTime();
+		Path instanceDir = getDataDir().resolve(HOME_DIR).resolve(colName);
+		FileUtil.copyDir(getConfDir(), instanceDir.resolve("conf"));
+		container.create(colName, instanceDir, getIndexStorage().coreProperties(), false);
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	@Override
+	public synchronized void saveTemplate(Log log, ClusterTemplates templates, String key) throws MojoExecutionException {
+		throw new MojoExecutionException("Cluster templates can't be used with embedded Solr");
+	}
+
+	@Override
+	public synchronized String restartNode(Log log, int index, long downMillis) throws MojoExecutionException {
+		throw new MojoExecutionException("Embedded Solr has no node to restart");
+	}
+
+	@Override
+	public synchronized String expireZkSession(Log log, int index) throws MojoExecutionException {
+		throw new MojoExecutionException("Embedded Solr has no ZooKeeper session");
+	}
+
+	@Override
+	public synchronized void restartZk(Log log, long downMillis) throws MojoExecutionException {
+		throw new MojoExecutionException("Embedded Solr has no ZooKeeper");
+	}
+
+	@Override
+	public synchronized ClusterScaler getScaler() throws MojoExecutionException {
+		throw new MojoExecutionException("Embedded Solr is a single node: can't add or remove nodes, nor replicas");
+	}
+
+	@Override
+	public synchronized void stopCluster(Log log) throws MojoExecutionException {
+		if (container == null) {
+			return;
+		}
+		try {
+			getTimer().run("solr shutdown", () -> {
+				httpServer.stop();
+				container.shutdown();
+			});
+		}
+		finally {
+			httpServer = null;
+			container = null;
+		}
+	}
+}
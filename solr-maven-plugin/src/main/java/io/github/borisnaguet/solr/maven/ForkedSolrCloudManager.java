@@ -0,0 +1,536 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+
+/**
+ * Runs the cluster in a separate JVM (see {@link SolrCloudProcess}), with its own heap and GC: either as a daemon, that
+ * keeps running after the build, or only forked for this build (stopped with it).
+ *
+ * <p>
+ * The state of the JVM (its configuration, PID, control port, ZK address and Jetty URLs) is written in a state
+ * file, so that a later build can {@link #attach(Log, Path, String) attach} to a daemon instead of starting a new
+ * cluster.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class ForkedSolrCloudManager extends SolrCloudManager {
+	/**
+	 * max number of ms to connect to the control port of the daemon (it's local, so it's either there or not)
+	 */
+	private static final int CONNECT_TIMEOUT = 500;
+
+	/**
+	 * max number of ms to wait for the answer to a query (ping, URLs...): answered even while other commands run
+	 */
+	private static final int QUERY_TIMEOUT = 10_000;
+
+	private static final String PROP_KEY = "key";
+
+	/**
+	 * max number of seconds to wait for a forked JVM to exit, once its cluster is stopped
+	 */
+	private static final int EXIT_TIMEOUT = 30;
+
+	private final List<String> classpath;
+
+	/**
+	 * options of the JVM (heap, GC...)
+	 */
+	private final List<String> jvmArgs;
+
+	private final Path stateFile;
+
+	/**
+	 * effective configuration of the cluster, to know if a later build can attach to it; null if the JVM is only
+	 * forked for this build
+	 */
+	private final String key;
+
+	/**
+	 * the forked JVM, when started by this build
+	 */
+	private Process process;
+
+	/**
+	 * kills the JVM forked for this build if Maven exits without stopping it
+	 */
+	private Thread killOnExit;
+
+	/**
+	 * what the daemon reported once started (PID, control port...), null if it's not running
+	 */
+	private volatile Properties runtime;
+
+	/**
+	 * @param config configuration of the cluster (see {@link SolrCloudManager#toProperties()})
+	 * @param classpath classpath of the plugin, to start the JVM
+	 * @param jvmArgs options of the JVM
+	 * @param stateFile where to write the state of the JVM
+	 * @param key effective configuration of the cluster to run it as a daemon, null to stop it with the build
+	 */
+	public ForkedSolrCloudManager(Properties config, List<String> classpath, List<String> jvmArgs, Path stateFile, String key) {
+		super(config);
+		this.classpath = classpath;
+		this.jvmArgs = jvmArgs;
+		this.stateFile = stateFile;
+		this.key = key;
+	}
+
+	/**
+	 * Attaches to the daemon described by a state file
+	 *
+	 * @param log maven log
+	 * @param stateFile state file written when the daemon was started
+	 * @param key expected configuration: a daemon started with another one is stopped. null to attach to any daemon
+	 * @return the running daemon, or null if there's none to attach to
+	 * @throws MojoExecutionException if the state file can't be read
+	 */
+	public static ForkedSolrCloudManager attach(Log log, Path stateFile, String key) throws MojoExecutionException {
+		if (Files.notExists(stateFile)) {
+			log.debug("No Solr daemon state in " + stateFile);
+			return null;
+		}
+
+		Properties state = new Properties();
+		try (InputStream in = Files.newInputStream(stateFile)) {
+			state.load(in);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't read Solr daemon state " + stateFile, e);
+		}
+
+		ForkedSolrCloudManager daemon = new ForkedSolrCloudManager(state, Collections.emptyList(), Collections.emptyList(), stateFile,
+				state.getProperty(PROP_KEY));
+		daemon.runtime = state;
+		if (!daemon.ping()) {
+			log.info("Solr daemon " + daemon.getPid() + " is not running anymore");
+			daemon.deleteStateFile(log);
+			return null;
+		}
+		if (key != null && !key.equals(daemon.key)) {
+			log.info("Solr daemon " + daemon.getPid() + " was started with another configuration: will stop it");
+			daemon.stopCluster(log);
+			return null;
+		}
+		return daemon;
+	}
+
+	@Override
+	public boolean isDaemon() {
+		return key != null;
+	}
+
+	/**
+	 * @return PID of the JVM
+	 */
+	public String getPid() {
+		return runtime.getProperty(SolrCloudProcess.STATE_PID);
+	}
+
+	/**
+	 * @return the file where the JVM logs
+	 */
+	public Path getLogFile() {
+		return stateFile.resolveSibling(stateFile.getFileName().toString().replaceFirst("\\.properties$", "") + ".log");
+	}
+
+	/**
+	 * The cluster starts in its own JVM: the task is run once it's started
+	 */
+	@Override
+	public synchronized void startCluster(Log log, ZkTask whileNodesStart) throws MojoExecutionException {
+		launch(log, null);
+		if (whileNodesStart != null) {
+			whileNodesStart.run();
+		}
+	}
+
+	@Override
+	public synchronized void startClusterFromTemplate(Log log, Map<String, Integer> nodePorts) throws MojoExecutionException {
+		launch(log, nodePorts);
+	}
+
+	@Override
+	public String getZkAddress() {
+		return runtime.getProperty(SolrCloudProcess.STATE_ZK_ADDRESS);
+	}
+
+	/**
+	 * @return URLs of the running nodes: the ones it started with, until nodes are added or removed
+	 */
+	@Override
+	public List<String> getJettyUrls() {
+		try {
+			return Arrays.asList(send(SolrCloudProcess.URLS, QUERY_TIMEOUT).split(","));
+		}
+		catch (MojoExecutionException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getNodePorts() {
+		try {
+			return SolrCloudProcess.parseNodes(send(SolrCloudProcess.NODES, QUERY_TIMEOUT));
+		}
+		catch (MojoExecutionException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public synchronized void uploadConfig(Log log) throws MojoExecutionException {
+		send(SolrCloudProcess.UPLOAD);
+	}
+
+	@Override
+	public synchronized void createCollection(Log log, String colName, int numShards, int replicationFactor) throws MojoExecutionException {
+		createCollections(log, Collections.singletonList(colName), numShards, replicationFactor);
+	}
+
+	@Override
+	public synchronized void createCollections(Log log, List<String> colNames, int numShards, int replicationFactor) throws MojoExecutionException {
+		send(SolrCloudProcess.CREATE + " " + numShards + " " + replicationFactor + " " + String.join(",", colNames));
+		log.info("Collections " + colNames + " created, see " + getLogFile() + " for details");
+	}
+
+	@Override
+	public synchronized void saveTemplate(Log log, ClusterTemplates templates, String key) throws MojoExecutionException {
+		send(SolrCloudProcess.SAVE_TEMPLATE + " " + key + " " + templates.getCacheDir().toAbsolutePath());
+		log.info("Cluster template " + key + " saved, see " + getLogFile() + " for details");
+	}
+
+	@Override
+	public synchronized String restartNode(Log log, int index, long downMillis) throws MojoExecutionException {
+		String url = send(SolrCloudProcess.RESTART_NODE + " " + index + " " + downMillis);
+		log.info("Node " + url + " restarted");
+		return url;
+	}
+
+	@Override
+	public synchronized String expireZkSession(Log log, int index) throws MojoExecutionException {
+		String url = send(SolrCloudProcess.EXPIRE_SESSION + " " + index);
+		log.info("ZooKeeper session of node " + url + " expired");
+		return url;
+	}
+
+	@Override
+	public synchronized void restartZk(Log log, long downMillis) throws MojoExecutionException {
+		send(SolrCloudProcess.RESTART_ZK + " " + downMillis);
+		log.info("ZooKeeper restarted");
+	}
+
+	/**
+	 * @return a scaler that changes the cluster in its JVM
+	 */
+	@Override
+	public ClusterScaler getScaler() {
+		return new RemoteScaler();
+	}
+
+	@Override
+	public synchronized void waitForCollections(Log log) throws MojoExecutionException {
+		try (SolrClient client = newClient()) {
+			waitForCollections(log, (CloudSolrClient) client);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't close Solr client", e);
+		}
+	}
+
+	@Override
+	public synchronized void stopCluster(Log log) throws MojoExecutionException {
+		if (runtime == null) {
+			return;
+		}
+		log.info("Will stop " + describe() + " " + getPid());
+		try {
+			getTimer().run(isDaemon() ? "daemon stop" : "fork stop", () -> {
+				send(SolrCloudProcess.STOP);
+				awaitExit(log);
+			});
+		}
+		finally {
+			runtime = null;
+			deleteStateFile(log);
+		}
+	}
+
+	private String describe() {
+		return isDaemon() ? "Solr daemon" : "Solr JVM";
+	}
+
+	/**
+	 * Waits for the JVM forked by this build to exit (its ports are free then), and forgets about killing it on exit
+	 */
+	private void awaitExit(Log log) {
+		if (process == null) {
+			return;
+		}
+		try {
+			if (!process.waitFor(EXIT_TIMEOUT, TimeUnit.SECONDS)) {
+				log.warn(describe() + " " + getPid() + " still running " + EXIT_TIMEOUT + " s after its cluster was stopped: killing it");
+				process.destroyForcibly();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (killOnExit != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(killOnExit);
+			}
+			catch (IllegalStateException e) {
+				// Maven is exiting: the hook runs anyway, on a process that's gone
+			}
+			killOnExit = null;
+		}
+		process = null;
+	}
+
+	private void launch(Log log, Map<String, Integer> templateNodes) throws MojoExecutionException {
+		getTimer().run(isDaemon() ? "daemon start" : "fork start", () -> startProcess(log, templateNodes));
+	}
+
+	private void startProcess(Log log, Map<String, Integer> templateNodes) throws MojoExecutionException {
+		if (runtime != null) {
+			throw new MojoExecutionException("Solr already started");
+		}
+
+		// only who can read the state file can drive the JVM
+		byte[] secret = new byte[16];
+		new SecureRandom().nextBytes(secret);
+		StringBuilder token = new StringBuilder();
+		for (byte b : secret) {
+			token.append(String.format("%02x", b));
+		}
+
+		Properties config = toProperties();
+		config.setProperty(SolrCloudProcess.CONTROL_TOKEN, token.toString());
+		if (templateNodes != null) {
+			config.setProperty(SolrCloudProcess.TEMPLATE_NODES, SolrCloudProcess.formatNodes(templateNodes));
+		}
+
+		Path logFile = getLogFile();
+		try (ServerSocket callback = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			// readable by the owner only, and deleted by the JVM once read
+			Path configFile = Files.createTempFile("solrcloud-", ".properties");
+			try (OutputStream out = Files.newOutputStream(configFile)) {
+				config.store(out, "configuration of the " + describe());
+			}
+
+			List<String> command = new ArrayList<>();
+			command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+			command.addAll(jvmArgs);
+			command.add("-cp");
+			command.add(String.join(File.pathSeparator, classpath));
+			command.add(SolrCloudProcess.class.getName());
+			command.add(configFile.toString());
+			command.add(String.valueOf(callback.getLocalPort()));
+
+			Files.createDirectories(logFile.getParent());
+			log.debug("Will start " + describe() + ": " + command);
+			Process process = new ProcessBuilder(command)
+					.redirectErrorStream(true)
+					.redirectOutput(Redirect.appendTo(logFile.toFile()))
+					.start();
+			log.info("Starting " + describe() + (jvmArgs.isEmpty() ? "" : " with " + String.join(" ", jvmArgs)) + ", logs in " + logFile);
+			if (!isDaemon()) {
+				this.process = process;
+				killOnExit = new Thread(process::destroyForcibly, "solr-fork-killer");
+				Runtime.getRuntime().addShutdownHook(killOnExit);
+			}
+
+			// the JVM gives up by itself if the nodes don't start in time: only check it's still there
+			callback.setSoTimeout(1000);
+			String ready = null;
+			while (ready == null) {
+				try (Socket socket = callback.accept()) {
+					ready = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+				}
+				catch (SocketTimeoutException e) {
+					if (!process.isAlive()) {
+						throw new MojoExecutionException(describe() + " exited with code " + process.exitValue() + ", see " + logFile);
+					}
+				}
+			}
+			if (!ready.startsWith(SolrCloudProcess.OK)) {
+				throw new MojoExecutionException("Can't start " + describe() + ": " + ready.substring(SolrCloudProcess.ERROR.length()).trim()
+						+ ", see " + logFile);
+			}
+
+			Properties state = toProperties();
+			state.setProperty(SolrCloudProcess.CONTROL_TOKEN, token.toString());
+			if (key != null) {
+				state.setProperty(PROP_KEY, key);
+			}
+			for (String entry : ready.substring(SolrCloudProcess.OK.length()).trim().split(" ")) {
+				int eq = entry.indexOf('=');
+				state.setProperty(entry.substring(0, eq), entry.substring(eq + 1));
+			}
+			runtime = state;
+			writeStateFile(state);
+			log.info(describe() + " " + getPid() + " started, ZK on " + getZkAddress());
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't start " + describe() + ", see " + logFile, e);
+		}
+	}
+
+	private boolean ping() {
+		try {
+			send(SolrCloudProcess.PING, QUERY_TIMEOUT);
+			return true;
+		}
+		catch (MojoExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Sends a command to the JVM, and waits for its answer
+	 *
+	 * @return what the JVM answered (after OK)
+	 * @throws MojoExecutionException if the JVM can't be reached, or failed to execute the command
+	 */
+	private String send(String command) throws MojoExecutionException {
+		// commands (faults, nodes added...) take as long as the cluster needs
+		return send(command, 0);
+	}
+
+	/**
+	 * @param readTimeout max number of ms to wait for the answer, 0 to wait until the command is executed
+	 */
+	private String send(String command, int readTimeout) throws MojoExecutionException {
+		Properties runtime = this.runtime;
+		if (runtime == null) {
+			throw new MojoExecutionException(describe() + " is not running");
+		}
+		int controlPort = Integer.parseInt(runtime.getProperty(SolrCloudProcess.STATE_CONTROL_PORT));
+		String answer;
+		try (Socket socket = new Socket()) {
+			socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), controlPort), CONNECT_TIMEOUT);
+			socket.setSoTimeout(readTimeout);
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			out.write(runtime.getProperty(SolrCloudProcess.CONTROL_TOKEN));
+			out.write(' ');
+			out.write(command);
+			out.write('\n');
+			out.flush();
+			answer = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't reach " + describe() + " on port " + controlPort, e);
+		}
+
+		if (answer == null) {
+			throw new MojoExecutionException("No answer from " + describe() + " to " + command);
+		}
+		if (!answer.startsWith(SolrCloudProcess.OK)) {
+			throw new MojoExecutionException(describe() + " failed to execute " + command + ": "
+					+ answer.substring(SolrCloudProcess.ERROR.length()).trim());
+		}
+		return answer.substring(SolrCloudProcess.OK.length()).trim();
+	}
+
+	/**
+	 * Writes the state file, readable by the owner only (it holds the token of the JVM)
+	 */
+	private void writeStateFile(Properties state) throws IOException {
+		Files.deleteIfExists(stateFile);
+		try {
+			Files.createFile(stateFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		catch (UnsupportedOperationException e) {
+			// not a POSIX file system (Windows): the file is private to the user profile anyway
+			Files.createFile(stateFile);
+		}
+		try (OutputStream out = Files.newOutputStream(stateFile)) {
+			state.store(out, "state of the " + describe());
+		}
+	}
+
+	private void deleteStateFile(Log log) {
+		try {
+			Files.deleteIfExists(stateFile);
+		}
+		catch (IOException e) {
+			log.warn("Can't delete " + describe() + " state " + stateFile, e);
+		}
+	}
+
+	/**
+	 * Sends the changes to the JVM, where they're made by the scaler of its cluster
+	 */
+	private class RemoteScaler implements ClusterScaler {
+
+		@Override
+		public List<String> addNodes(Log log, int count) throws MojoExecutionException {
+			synchronized (ForkedSolrCloudManager.this) {
+				List<String> urls = Arrays.asList(send(SolrCloudProcess.ADD_NODES + " " + count).split(","));
+				log.info("Nodes " + urls + " added");
+				return urls;
+			}
+		}
+
+		@Override
+		public List<String> removeNodes(Log log, int count) throws MojoExecutionException {
+			synchronized (ForkedSolrCloudManager.this) {
+				List<String> urls = Arrays.asList(send(SolrCloudProcess.REMOVE_NODES + " " + count).split(","));
+				log.info("Nodes " + urls + " removed, see " + getLogFile() + " for details");
+				return urls;
+			}
+		}
+
+		@Override
+		public int addReplicas(Log log, int perShard) throws MojoExecutionException {
+			synchronized (ForkedSolrCloudManager.this) {
+				int added = Integer.parseInt(send(SolrCloudProcess.ADD_REPLICAS + " " + perShard));
+				log.info(added + " replicas added");
+				return added;
+			}
+		}
+
+		@Override
+		public int rebalance(Log log) throws MojoExecutionException {
+			synchronized (ForkedSolrCloudManager.this) {
+				int moved = Integer.parseInt(send(SolrCloudProcess.REBALANCE));
+				log.info("Cluster rebalanced, " + moved + " replicas moved");
+				return moved;
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.apache.maven.plugins.annotations.LifecyclePhase.PRE_INTEGRATION_TEST;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+
+import io.github.borisnaguet.solr.maven.index.BatchIndexer;
+import io.github.borisnaguet.solr.maven.index.DataFormat;
+import io.github.borisnaguet.solr.maven.index.DocumentReader;
+
+/**
+ * Indexes documents from files (JSON Lines, CSV or Solr XML) in the collections of the SolrCloud started by
+ * start-solrcloud (or of the Solr daemon).
+ * 
+ * <p>
+ * Documents are sent by batches, from several threads, and committed once at the end.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+@Mojo(name = "index-data", defaultPhase = PRE_INTEGRATION_TEST, threadSafe = true)
+public class IndexDataMojo extends AbstractSolrMojo {
+	
+	/**
+	 * Files to index, each with its collection (and optionally its format)
+	 */
+	@Parameter
+	private List<DataFile> dataFiles;
+	
+	/**
+	 * Number of documents sent by update request
+	 */
+	@Parameter(property = "solr.index.batch.size", defaultValue = "1000")
+	private int batchSize;
+	
+	/**
+	 * Number of concurrent update requests
+	 */
+	@Parameter(property = "solr.index.threads", defaultValue = "4")
+	private int threads;
+	
+	/**
+	 * Max number of batches read and waiting to be sent: reading waits when it's reached
+	 */
+	@Parameter(property = "solr.index.queue.size", defaultValue = "8")
+	private int queueSize;
+	
+	/**
+	 * Commit the collections once all the documents are sent
+	 */
+	@Parameter(property = "solr.index.commit", defaultValue = "true")
+	private boolean commit;
+	
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if(skip) {
+			getLog().info("solr.skip=true - not indexing data");
+			return;
+		}
+		if(dataFiles == null || dataFiles.isEmpty()) {
+			getLog().info("No data file to index");
+			return;
+		}
+		
+		SolrCloudManager solrCloudManager = getStartedCloudManager();
+		try (SolrClient client = solrCloudManager.newClient()) {
+			long start = System.nanoTime();
+			Set<String> collections = new LinkedHashSet<>();
+			
+			BatchIndexer indexer = new BatchIndexer(client, batchSize, threads, queueSize);
+			try {
+				for (DataFile dataFile : dataFiles) {
+					collections.add(dataFile.getCollection());
+					index(indexer, dataFile);
+				}
+			}
+			catch (MojoExecutionException e) {
+				indexer.abort();
+				throw e;
+			}
+			catch (IOException | RuntimeException e) {
+				indexer.abort();
+				throw new MojoExecutionException("Can't index data files", e);
+			}
+			catch (InterruptedException e) {
+				indexer.abort();
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while indexing data files", e);
+			}
+			long sent = indexer.finish();
+			
+			long commitStart = System.nanoTime();
+			if(commit) {
+				for (String collection : collections) {
+					client.commit(collection);
+				}
+			}
+			long end = System.nanoTime();
+			
+			getLog().info("Indexed " + sent + " docs in " + (end - start) / 1_000_000 + " ms (" + BatchIndexer.docsPerSec(sent, end - start) 
+					+ " docs/s)" + (commit ? ", including commit in " + (end - commitStart) / 1_000_000 + " ms" : ""));
+		}
+		catch (SolrServerException | IOException e) {
+			throw new MojoExecutionException("Can't commit indexed data", e);
+		}
+	}
+
+	private void index(BatchIndexer indexer, DataFile dataFile) throws IOException, InterruptedException, MojoExecutionException {
+		if(dataFile.getFile() == null || dataFile.getCollection() == null) {
+			throw new MojoExecutionException("Each data file must have a file and a collection");
+		}
+		File file = dataFile.getFile().isAbsolute() ? dataFile.getFile() : new File(basedir, dataFile.getFile().getPath());
+		Path path = file.toPath();
+		DataFormat format = dataFile.getFormat() == null ? DataFormat.of(path) : DataFormat.valueOf(dataFile.getFormat().toUpperCase(Locale.ROOT));
+		
+		getLog().info("Will index " + path + " (" + format + ") in " + dataFile.getCollection());
+		long start = System.nanoTime();
+		try (DocumentReader reader = format.open(path)) {
+			long read = indexer.index(getLog(), dataFile.getCollection(), reader);
+			long nanos = System.nanoTime() - start;
+			getLog().info(read + " docs read from " + file.getName() + " in " + nanos / 1_000_000 + " ms (" 
+					+ BatchIndexer.docsPerSec(read, nanos) + " docs/s)");
+		}
+	}
+}
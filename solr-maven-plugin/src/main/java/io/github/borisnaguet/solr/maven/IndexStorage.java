@@ -0,0 +1,71 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Which Lucene directory the cores of the collections use, whatever the config declares.
+ * 
+ * <p>
+ * It's given to each core as properties ({@value #DIRECTORY_FACTORY} and {@value #LOCK_TYPE}) when a collection is
+ * created: the config must use them, like the default one (<code>${solr.directoryFactory:...}</code>).
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+public enum IndexStorage {
+	/**
+	 * the directory factory declared by the config
+	 */
+	CONFIG(null, null),
+	/**
+	 * indexes in the heap, lost when the node stops: for tests
+	 */
+	RAM("solr.RAMDirectoryFactory", "single"),
+	/**
+	 * memory-mapped files: like in production
+	 */
+	MMAP("solr.MMapDirectoryFactory", null),
+	/**
+	 * memory-mapped files, with small segments cached in the heap (Solr default)
+	 */
+	NRTCACHING("solr.NRTCachingDirectoryFactory", null);
+
+	private static final String DIRECTORY_FACTORY = "solr.directoryFactory";
+	private static final String LOCK_TYPE = "solr.lock.type";
+
+	private final String directoryFactory;
+	/**
+	 * a RAM directory can't use the (default) native file lock
+	 */
+	private final String lockType;
+
+	private IndexStorage(String directoryFactory, String lockType) {
+		this.directoryFactory = directoryFactory;
+		this.lockType = lockType;
+	}
+
+	/**
+	 * @param name config, ram, mmap or nrtcaching (case insensitive)
+	 * @throws IllegalArgumentException if it's none of them
+	 */
+	public static IndexStorage of(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return the properties to give to the cores of a new collection (empty for {@link #CONFIG})
+	 */
+	public Map<String, String> coreProperties() {
+		Map<String, String> properties = new LinkedHashMap<>();
+		if (directoryFactory != null) {
+			properties.put(DIRECTORY_FACTORY, directoryFactory);
+		}
+		if (lockType != null) {
+			properties.put(LOCK_TYPE, lockType);
+		}
+		return properties;
+	}
+}
@@ -0,0 +1,326 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.SolrClient;
+
+import io.github.borisnaguet.solr.maven.embedded.EmbeddedHttpServer;
+import io.github.borisnaguet.solr.maven.util.TcpProxy;
+
+/**
+ * Solr started on first use: only the published port (ZooKeeper, or HTTP in embedded mode) is bound right away, by a
+ * {@link TcpProxy}.
+ *
+ * <p>
+ * The first connection to that port starts the real cluster (on free ports) in the background: once it's ready (config
+ * uploaded and collections created), all connections are forwarded to it. Meanwhile, connections are held (up to the
+ * start timeout): a ZK client still gives up after its own connect timeout (zkConnectTimeout of CloudSolrClient) if
+ * the start takes longer. Goals of the plugin that need Solr (index-data, bench...) start it the same way, and wait
+ * for it. If nothing uses it, it's never started.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class LazySolrCloudManager extends SolrCloudManager {
+	private final SharedClusters.ClusterStarter starter;
+	private final boolean embedded;
+	private final String chroot;
+	private final Log log;
+	/**
+	 * how long a connection is held while the cluster starts, in s
+	 */
+	private final int startTimeout;
+
+	private TcpProxy proxy;
+
+	/**
+	 * start of the real cluster, once triggered: it fails with a {@link MojoExecutionException}, and is not retried
+	 */
+	private CompletableFuture<SolrCloudManager> start;
+
+	/**
+	 * @param confDir conf to delete on stop, if the cluster was never started (see {@link #canDeleteConfDir()})
+	 * @param chroot ZK chroot of the cluster
+	 * @param embedded true if the port is the HTTP port of an {@link EmbeddedSolrManager}, false if it's the ZK port
+	 * @param starter starts the real cluster, on free ports
+	 * @param startTimeout how long a connection is held while the cluster starts, in s
+	 * @param log Maven logger to use when the cluster starts
+	 */
+	public LazySolrCloudManager(Path confDir, String chroot, boolean embedded, SharedClusters.ClusterStarter starter, int startTimeout, Log log) {
+		super(null, confDir, 1, 0, (String) null, null, chroot);
+		this.chroot = chroot == null ? "" : chroot;
+		this.embedded = embedded;
+		this.starter = starter;
+		this.startTimeout = startTimeout;
+		this.log = log;
+	}
+
+	/**
+	 * Binds the port: Solr starts on the first connection
+	 *
+	 * @param port port to publish, 0 to pick a free one
+	 * @throws MojoExecutionException if the port can't be bound
+	 */
+	public synchronized void bind(int port) throws MojoExecutionException {
+		try {
+			proxy = new TcpProxy(port, this::resolve);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't bind port " + port + " to start Solr lazily", e);
+		}
+		proxy.start();
+		log.info("Solr will start on the first connection to port " + proxy.getPort());
+	}
+
+	/**
+	 * Starts the real cluster, if it's not started yet, and waits for it
+	 *
+	 * @return the real cluster
+	 * @throws MojoExecutionException if it can't be started (now or on a previous try)
+	 */
+	public SolrCloudManager ensureStarted() throws MojoExecutionException {
+		try {
+			return startAsync().join();
+		}
+		catch (CompletionException e) {
+			throw new MojoExecutionException("Lazy start of Solr failed", e.getCause());
+		}
+	}
+
+	/**
+	 * @return true once the real cluster is started
+	 */
+	public synchronized boolean isStarted() {
+		return getStarted() != null;
+	}
+
+	/**
+	 * @return the real cluster if it's started, null if it's not (yet)
+	 */
+	private synchronized SolrCloudManager getStarted() {
+		return start == null || start.isCompletedExceptionally() ? null : start.getNow(null);
+	}
+
+	/**
+	 * Starts the real cluster in the background, if it's not started or starting yet
+	 */
+	private synchronized CompletableFuture<SolrCloudManager> startAsync() {
+		if (start == null) {
+			start = new CompletableFuture<>();
+			Thread thread = new Thread(this::start, "solr-lazy-start");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return start;
+	}
+
+	private void start() {
+		long startTime = System.nanoTime();
+		try {
+			SolrCloudManager cluster = starter.start();
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+			log.info("Solr started lazily in " + millis + " ms");
+			start.complete(cluster);
+		}
+		catch (MojoExecutionException | RuntimeException e) {
+			MojoExecutionException error = e instanceof MojoExecutionException ? (MojoExecutionException) e
+					: new MojoExecutionException(e.getMessage(), e);
+			// may be started by a connection, with no goal to report it
+			log.error("Lazy start of Solr failed", error);
+			start.completeExceptionally(error);
+		}
+		catch (Error e) {
+			// connections and goals waiting for the start must not wait forever
+			start.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * @return where the proxy forwards connections: ZK or HTTP address of the real cluster
+	 */
+	private InetSocketAddress resolve() throws IOException {
+		SolrCloudManager cluster;
+		try {
+			// the connection is held meanwhile
+			cluster = startAsync().get(startTimeout, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while Solr starts", e);
+		}
+		catch (ExecutionException e) {
+			throw new IOException("Solr not started", e.getCause());
+		}
+		catch (TimeoutException e) {
+			throw new IOException("Solr still starting after " + startTimeout + " s", e);
+		}
+		if (embedded) {
+			URI url = URI.create(cluster.getJettyUrls().get(0));
+			return new InetSocketAddress(url.getHost(), url.getPort());
+		}
+		String zkHost = cluster.getZkAddress();
+		int chrootStart = zkHost.indexOf('/');
+		URI zk = URI.create("tcp://" + (chrootStart < 0 ? zkHost : zkHost.substring(0, chrootStart)));
+		return new InetSocketAddress(zk.getHost(), zk.getPort());
+	}
+
+	@Override
+	public synchronized void startCluster(Log log, ZkTask whileNodesStart) throws MojoExecutionException {
+		ensureStarted();
+	}
+
+	@Override
+	public synchronized void startClusterFromTemplate(Log log, Map<String, Integer> nodePorts) throws MojoExecutionException {
+		throw new MojoExecutionException("A lazy cluster starts from a template by itself");
+	}
+
+	@Override
+	public synchronized void saveTemplate(Log log, ClusterTemplates templates, String key) throws MojoExecutionException {
+		throw new MojoExecutionException("A lazy cluster saves its template by itself");
+	}
+
+	/**
+	 * @return address of the proxy (with chroot), like ZkTestServer gives it; null in embedded mode
+	 */
+	@Override
+	public synchronized String getZkAddress() {
+		if (embedded) {
+			return null;
+		}
+		return InetAddress.getLoopbackAddress().getHostAddress() + ":" + proxy.getPort() + (chroot.startsWith("/") ? chroot : "/" + chroot);
+	}
+
+	/**
+	 * @return URL of the proxy in embedded mode, else the URLs of the nodes once started (none before)
+	 */
+	@Override
+	public synchronized List<String> getJettyUrls() {
+		if (embedded) {
+			return Collections.singletonList(EmbeddedHttpServer.baseUrl(InetAddress.getLoopbackAddress().getHostAddress(), proxy.getPort()));
+		}
+		SolrCloudManager started = getStarted();
+		return started == null ? Collections.emptyList() : started.getJettyUrls();
+	}
+
+	@Override
+	public SolrClient newClient() {
+		try {
+			return ensureStarted().newClient();
+		}
+		catch (MojoExecutionException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public synchronized Map<String, Integer> getNodePorts() {
+		SolrCloudManager started = getStarted();
+		return started == null ? Collections.emptyMap() : started.getNodePorts();
+	}
+
+	@Override
+	public synchronized void uploadConfig(Log log) throws MojoExecutionException {
+		ensureStarted().uploadConfig(log);
+	}
+
+	@Override
+	public synchronized void createCollection(Log log, String colName, int numShards, int replicationFactor) throws MojoExecutionException {
+		ensureStarted().createCollection(log, colName, numShards, replicationFactor);
+	}
+
+	@Override
+	public synchronized void createCollections(Log log, List<String> colNames, int numShards, int replicationFactor) throws MojoExecutionException {
+		ensureStarted().createCollections(log, colNames, numShards, replicationFactor);
+	}
+
+	@Override
+	public synchronized String restartNode(Log log, int index, long downMillis) throws MojoExecutionException {
+		return ensureStarted().restartNode(log, index, downMillis);
+	}
+
+	@Override
+	public synchronized String expireZkSession(Log log, int index) throws MojoExecutionException {
+		return ensureStarted().expireZkSession(log, index);
+	}
+
+	/**
+	 * The proxy stays there: connections made while ZK is stopped are refused by the proxy, like they would by ZK
+	 */
+	@Override
+	public synchronized void restartZk(Log log, long downMillis) throws MojoExecutionException {
+		ensureStarted().restartZk(log, downMillis);
+	}
+
+	@Override
+	public synchronized ClusterScaler getScaler() throws MojoExecutionException {
+		SolrCloudManager cluster = ensureStarted();
+		cluster.setTimer(getTimer());
+		return cluster.getScaler();
+	}
+
+	@Override
+	public synchronized void waitForCollections(Log log) throws MojoExecutionException {
+		ensureStarted().waitForCollections(log);
+	}
+
+	/**
+	 * Closes the proxy, and stops the real cluster if it was started
+	 */
+	@Override
+	public synchronized void stopCluster(Log log) throws MojoExecutionException {
+		if (proxy != null) {
+			proxy.close();
+		}
+		if (start == null) {
+			log.info("Solr was never used: it wasn't started");
+			return;
+		}
+		SolrCloudManager started;
+		try {
+			// it may still be starting
+			started = start.join();
+		}
+		catch (CompletionException e) {
+			log.info("Solr failed to start lazily: nothing to stop");
+			return;
+		}
+		started.setTimer(getTimer());
+		started.stopCluster(log);
+	}
+
+	@Override
+	public synchronized void cleanDataDir(Log log) {
+		// no data dir until it's started
+		SolrCloudManager started = getStarted();
+		if (started != null) {
+			started.cleanDataDir(log);
+		}
+	}
+
+	@Override
+	public synchronized void cleanConfDir(Log log) {
+		SolrCloudManager started = getStarted();
+		if (started != null) {
+			started.cleanConfDir(log);
+		}
+		else {
+			super.cleanConfDir(log);
+		}
+	}
+}
@@ -0,0 +1,334 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.request.CollectionAdminRequest;
+import org.apache.solr.cloud.MiniSolrCloudCluster;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
+
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+
+/**
+ * Scales a cluster running in this JVM: nodes are started and stopped on its {@link MiniSolrCloudCluster}, replicas
+ * are added, moved and deleted with the Collections API.
+ *
+ * <p>
+ * Changes hold the lock of the manager of the cluster, like its other operations (faults, stop...).
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+class MiniClusterScaler implements ClusterScaler {
+	private final Object lock;
+	private final MiniSolrCloudCluster solrCloud;
+	private final String chroot;
+	private final int nodesTimeout;
+	private final int collectionsTimeout;
+	private final IndexStorage indexStorage;
+	private final PhaseTimer timer;
+
+	/**
+	 * @param lock held while the cluster changes
+	 * @param chroot ZK chroot of the cluster, "" if there's none
+	 * @param nodesTimeout max number of seconds to wait for the nodes to be live
+	 * @param collectionsTimeout max number of seconds to wait for a replica to be active, or deleted
+	 * @param indexStorage Lucene directory of the replicas added
+	 * @param timer times the phases of the changes
+	 */
+	MiniClusterScaler(Object lock, MiniSolrCloudCluster solrCloud, String chroot, int nodesTimeout, int collectionsTimeout, 
+			IndexStorage indexStorage, PhaseTimer timer) {
+		this.lock = lock;
+		this.solrCloud = solrCloud;
+		this.chroot = chroot;
+		this.nodesTimeout = nodesTimeout;
+		this.collectionsTimeout = collectionsTimeout;
+		this.indexStorage = indexStorage;
+		this.timer = timer;
+	}
+
+	@Override
+	public List<String> addNodes(Log log, int count) throws MojoExecutionException {
+		synchronized (lock) {
+			List<String> urls = new ArrayList<>();
+			try {
+				timer.run("jetty start", () -> {
+					for (int i = 0; i < count; i++) {
+						urls.add(SolrCloudManager.baseUrl(solrCloud.startJettySolrRunner()));
+					}
+				});
+				timer.run("live nodes", () -> solrCloud.waitForAllNodes(nodesTimeout, chroot));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while adding nodes", e);
+			}
+			catch (Exception e) {
+				throw new MojoExecutionException("Can't add nodes", e);
+			}
+			log.info("Nodes " + urls + " added");
+			return urls;
+		}
+	}
+
+	@Override
+	public List<String> removeNodes(Log log, int count) throws MojoExecutionException {
+		synchronized (lock) {
+			List<JettySolrRunner> jettys = solrCloud.getJettySolrRunners();
+			if (count >= jettys.size()) {
+				throw new MojoExecutionException("Can't remove " + count + " of the " + jettys.size() + " nodes: one must stay");
+			}
+			List<JettySolrRunner> departing = new ArrayList<>(jettys.subList(jettys.size() - count, jettys.size()));
+			Set<String> departingNodes = departing.stream().map(MiniClusterScaler::nodeName).collect(Collectors.toSet());
+
+			CloudSolrClient client = solrCloud.getSolrClient();
+			client.connect();
+			timer.run("move replicas", () -> {
+				int moved = 0;
+				int deleted = 0;
+				ClusterState state = client.getZkStateReader().getClusterState();
+				Map<String, Integer> replicasByNode = replicasByNode(state);
+				replicasByNode.keySet().removeAll(departingNodes);
+				for (DocCollection collection : state.getCollectionsMap().values()) {
+					for (Slice slice : collection.getSlices()) {
+						Set<String> hosts = hosts(slice);
+						for (Replica replica : slice.getReplicas()) {
+							if (departingNodes.contains(replica.getNodeName())) {
+								String target = leastLoadedNode(replicasByNode, hosts);
+								moveReplica(client, collection.getName(), slice.getName(), replica, target);
+								if (target == null) {
+									deleted++;
+								}
+								else {
+									hosts.add(target);
+									replicasByNode.merge(target, 1, Integer::sum);
+									moved++;
+								}
+							}
+						}
+					}
+				}
+				log.info(moved + " replicas moved from nodes " + departingNodes + " (and " + deleted + " deleted: their shard had one on every other node)");
+			});
+
+			List<String> urls = new ArrayList<>();
+			try {
+				timer.run("stop nodes", () -> {
+					for (JettySolrRunner jetty : departing) {
+						urls.add(SolrCloudManager.baseUrl(jetty));
+						solrCloud.removeJettySolrRunner(solrCloud.getJettySolrRunners().indexOf(jetty));
+					}
+					solrCloud.waitForAllNodes(nodesTimeout, chroot);
+				});
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while removing nodes", e);
+			}
+			catch (Exception e) {
+				throw new MojoExecutionException("Can't stop nodes " + departingNodes, e);
+			}
+			log.info("Nodes " + urls + " removed");
+			return urls;
+		}
+	}
+
+	@Override
+	public int addReplicas(Log log, int perShard) throws MojoExecutionException {
+		synchronized (lock) {
+			CloudSolrClient client = solrCloud.getSolrClient();
+			client.connect();
+			int added = timer.call("add replicas", () -> {
+				int count = 0;
+				ClusterState state = client.getZkStateReader().getClusterState();
+				Map<String, Integer> replicasByNode = replicasByNode(state);
+				for (DocCollection collection : state.getCollectionsMap().values()) {
+					for (Slice slice : collection.getSlices()) {
+						Set<String> hosts = hosts(slice);
+						for (int i = 0; i < perShard; i++) {
+							String target = leastLoadedNode(replicasByNode, hosts);
+							if (target == null) {
+								log.warn("Shard " + slice.getName() + " of " + collection.getName() + " has a replica on every node: "
+										+ (perShard - i) + " replicas not added");
+								break;
+							}
+							addReplica(client, collection.getName(), slice.getName(), Replica.Type.NRT, target);
+							hosts.add(target);
+							replicasByNode.merge(target, 1, Integer::sum);
+							count++;
+						}
+					}
+				}
+				return count;
+			});
+			log.info(added + " replicas added");
+			return added;
+		}
+	}
+
+	@Override
+	public int rebalance(Log log) throws MojoExecutionException {
+		synchronized (lock) {
+			CloudSolrClient client = solrCloud.getSolrClient();
+			client.connect();
+			int moved = timer.call("rebalance", () -> {
+				int count = 0;
+				while (true) {
+					ClusterState state = client.getZkStateReader().getClusterState();
+					Map<String, Integer> replicasByNode = replicasByNode(state);
+					String most = Collections.max(replicasByNode.entrySet(), Entry.comparingByValue()).getKey();
+					String fewest = Collections.min(replicasByNode.entrySet(), Entry.comparingByValue()).getKey();
+					if (replicasByNode.get(most) - replicasByNode.get(fewest) <= 1 || !moveOneReplica(client, state, most, fewest)) {
+						break;
+					}
+					count++;
+				}
+				return count;
+			});
+			log.info("Cluster rebalanced, " + moved + " replicas moved");
+			return moved;
+		}
+	}
+
+	/**
+	 * @return false if every replica of the source node has one of its shard on the target node
+	 */
+	private boolean moveOneReplica(CloudSolrClient client, ClusterState state, String sourceNode, String targetNode) throws MojoExecutionException {
+		for (DocCollection collection : state.getCollectionsMap().values()) {
+			for (Slice slice : collection.getSlices()) {
+				if (hosts(slice).contains(targetNode)) {
+					continue;
+				}
+				for (Replica replica : slice.getReplicas()) {
+					if (replica.getNodeName().equals(sourceNode)) {
+						moveReplica(client, collection.getName(), slice.getName(), replica, targetNode);
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Moves a replica: adds one of the same type to its shard on the target node, waits until it's active (it has
+	 * copied the index of the leader), then deletes the moved one
+	 * 
+	 * @param targetNode null to only delete the replica
+	 */
+	private void moveReplica(CloudSolrClient client, String collection, String shard, Replica replica, String targetNode) throws MojoExecutionException {
+		if (targetNode != null) {
+			addReplica(client, collection, shard, replica.getType(), targetNode);
+		}
+		try {
+			CollectionAdminRequest.deleteReplica(collection, shard, replica.getName()).process(client);
+			// so that the next moves see it's gone
+			client.waitForState(collection, collectionsTimeout, TimeUnit.SECONDS,
+					(liveNodes, state) -> state != null && state.getReplica(replica.getName()) == null);
+		}
+		catch (TimeoutException e) {
+			throw new MojoExecutionException("Replica " + replica.getName() + " of " + collection + " still there after " + collectionsTimeout + " s", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while deleting replica " + replica.getName() + " of " + collection, e);
+		}
+		catch (SolrServerException | IOException e) {
+			throw new MojoExecutionException("Can't delete replica " + replica.getName() + " of " + collection, e);
+		}
+	}
+
+	/**
+	 * Adds a replica to a shard on a node, and waits until it's active
+	 */
+	private void addReplica(CloudSolrClient client, String collection, String shard, Replica.Type type, String node) throws MojoExecutionException {
+		Properties coreProperties = new Properties();
+		coreProperties.putAll(indexStorage.coreProperties());
+		int expected = activeReplicasOn(client.getZkStateReader().getClusterState().getLiveNodes(),
+				client.getZkStateReader().getClusterState().getCollection(collection).getSlice(shard), node) + 1;
+		try {
+			CollectionAdminRequest.addReplicaToShard(collection, shard, type).setNode(node).setProperties(coreProperties).process(client);
+			client.waitForState(collection, collectionsTimeout, TimeUnit.SECONDS,
+					(liveNodes, state) -> state != null && activeReplicasOn(liveNodes, state.getSlice(shard), node) >= expected);
+		}
+		catch (TimeoutException e) {
+			throw new MojoExecutionException("Replica of " + collection + "/" + shard + " on " + node + " not active after " + collectionsTimeout + " s", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while adding a replica to " + collection + "/" + shard, e);
+		}
+		catch (SolrServerException | IOException e) {
+			throw new MojoExecutionException("Can't add a replica to " + collection + "/" + shard + " on " + node, e);
+		}
+	}
+
+	private static int activeReplicasOn(Set<String> liveNodes, Slice slice, String node) {
+		int active = 0;
+		for (Replica replica : slice.getReplicas()) {
+			if (replica.getNodeName().equals(node) && replica.isActive(liveNodes)) {
+				active++;
+			}
+		}
+		return active;
+	}
+
+	/**
+	 * @return number of replicas of each running node (0 for the ones that have none), by node name
+	 */
+	private Map<String, Integer> replicasByNode(ClusterState state) {
+		Map<String, Integer> replicasByNode = new TreeMap<>();
+		for (JettySolrRunner jetty : solrCloud.getJettySolrRunners()) {
+			replicasByNode.put(nodeName(jetty), 0);
+		}
+		for (DocCollection collection : state.getCollectionsMap().values()) {
+			for (Replica replica : collection.getReplicas()) {
+				replicasByNode.computeIfPresent(replica.getNodeName(), (node, replicas) -> replicas + 1);
+			}
+		}
+		return replicasByNode;
+	}
+
+	/**
+	 * @return the node that has the fewest replicas, out of the ones not in hosts; null if there's none
+	 */
+	private static String leastLoadedNode(Map<String, Integer> replicasByNode, Set<String> hosts) {
+		String leastLoaded = null;
+		for (Entry<String, Integer> node : replicasByNode.entrySet()) {
+			if (!hosts.contains(node.getKey()) && (leastLoaded == null || node.getValue() < replicasByNode.get(leastLoaded))) {
+				leastLoaded = node.getKey();
+			}
+		}
+		return leastLoaded;
+	}
+
+	/**
+	 * @return names of the nodes that have a replica of the shard
+	 */
+	private static Set<String> hosts(Slice slice) {
+		return slice.getReplicas().stream().map(Replica::getNodeName).collect(Collectors.toSet());
+	}
+
+	private static String nodeName(JettySolrRunner jetty) {
+		return jetty.getCoreContainer().getZkController().getNodeName();
+	}
+}
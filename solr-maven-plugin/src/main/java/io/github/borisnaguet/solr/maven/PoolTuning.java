@@ -0,0 +1,221 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.embedded.JettyServers;
+import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.ZkClientClusterStateProvider;
+import org.apache.solr.cloud.MiniSolrCloudCluster;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Sizes of the thread and connection pools of a cluster: Jetty of each node, shard handler of the nodes (requests
+ * between nodes, for distributed queries), and clients created by the plugin (index-data, bench).
+ *
+ * <p>
+ * Defaults are the ones of Solr (and Jetty): they're fine for a few concurrent requests, but with hundreds of them,
+ * requests queue in Jetty or wait for a connection before reaching Solr.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class PoolTuning {
+	/**
+	 * node properties used by the shardHandlerFactory of the default solr.xml (a custom one can use them too)
+	 */
+	private static final String SHARD_MAX_CONNECTIONS_PER_HOST = "shardHandler.maxConnectionsPerHost";
+	private static final String SHARD_MAX_CONNECTIONS = "shardHandler.maxConnections";
+	private static final String SHARD_MAX_POOL_SIZE = "shardHandler.maximumPoolSize";
+
+	private static final String PROP_PREFIX = "pool.";
+
+	/**
+	 * min and max number of threads of Jetty (defaults of QueuedThreadPool, and of JettySolrRunner)
+	 */
+	private int jettyMinThreads = 8;
+	private int jettyMaxThreads = 10000;
+	/**
+	 * threads accepting connections, and selecting the ones ready to be read: -1 for Jetty default (from the number of
+	 * CPUs)
+	 */
+	private int jettyAcceptors = -1;
+	private int jettySelectors = -1;
+	/**
+	 * backlog of connections not accepted yet: 0 for the OS default
+	 */
+	private int jettyAcceptQueueSize = 0;
+
+	/**
+	 * connections of the shard handler of each node, to each other node and in total, and max number of its threads
+	 */
+	private int shardMaxConnectionsPerHost = 20;
+	private int shardMaxConnections = 10000;
+	private int shardMaxPoolSize = Integer.MAX_VALUE;
+
+	/**
+	 * connections of the clients created by the plugin, to each node and in total
+	 */
+	private int clientMaxConnectionsPerHost = 10000;
+	private int clientMaxConnections = 10000;
+
+	public void setJettyThreads(int min, int max) {
+		this.jettyMinThreads = min;
+		this.jettyMaxThreads = max;
+	}
+
+	public void setJettyAcceptors(int acceptors, int selectors, int acceptQueueSize) {
+		this.jettyAcceptors = acceptors;
+		this.jettySelectors = selectors;
+		this.jettyAcceptQueueSize = acceptQueueSize;
+	}
+
+	public void setShardHandler(int maxConnectionsPerHost, int maxConnections, int maxPoolSize) {
+		this.shardMaxConnectionsPerHost = maxConnectionsPerHost;
+		this.shardMaxConnections = maxConnections;
+		this.shardMaxPoolSize = maxPoolSize;
+	}
+
+	public void setClient(int maxConnectionsPerHost, int maxConnections) {
+		this.clientMaxConnectionsPerHost = maxConnectionsPerHost;
+		this.clientMaxConnections = maxConnections;
+	}
+
+	/**
+	 * Tunes the nodes of the cluster started from now on
+	 */
+	public void applyTo(MiniSolrCloudCluster cluster) {
+		Properties nodeProperties = new Properties();
+		nodeProperties.setProperty(SHARD_MAX_CONNECTIONS_PER_HOST, String.valueOf(shardMaxConnectionsPerHost));
+		nodeProperties.setProperty(SHARD_MAX_CONNECTIONS, String.valueOf(shardMaxConnections));
+		nodeProperties.setProperty(SHARD_MAX_POOL_SIZE, String.valueOf(shardMaxPoolSize));
+		cluster.setNodeProperties(nodeProperties);
+		cluster.setJettyCustomizer(this::tune);
+	}
+
+	/**
+	 * Tunes the Jetty server of a node, before it starts
+	 */
+	private void tune(JettySolrRunner jetty) {
+		Server server = JettyServers.getServer(jetty);
+		QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+		// max first: min can't be above it
+		threadPool.setMaxThreads(jettyMaxThreads);
+		threadPool.setMinThreads(jettyMinThreads);
+
+		ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+		if (jettyAcceptors != -1 || jettySelectors != -1) {
+			// they're set when the connector is created: replace it by the same one, with them
+			ServerConnector tuned = new ServerConnector(server, jettyAcceptors, jettySelectors,
+					connector.getConnectionFactories().toArray(new ConnectionFactory[0]));
+			tuned.setHost(connector.getHost());
+			tuned.setPort(connector.getPort());
+			tuned.setReuseAddress(connector.getReuseAddress());
+			tuned.setSoLingerTime(connector.getSoLingerTime());
+			tuned.setIdleTimeout(connector.getIdleTimeout());
+			server.setConnectors(new Connector[] { tuned });
+			connector = tuned;
+		}
+		connector.setAcceptQueueSize(jettyAcceptQueueSize);
+	}
+
+	/**
+	 * @return a client of the cluster, with the connection pool of this tuning
+	 */
+	public CloudSolrClient newClient(String zkAddress) {
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set(HttpClientUtil.PROP_MAX_CONNECTIONS_PER_HOST, clientMaxConnectionsPerHost);
+		params.set(HttpClientUtil.PROP_MAX_CONNECTIONS, clientMaxConnections);
+		CloseableHttpClient httpClient = HttpClientUtil.createClient(params);
+
+		// the client doesn't close the HTTP client it was given
+		// (and its protected constructor only accepts a builder with a state provider, not with a ZK host)
+		CloudSolrClient.Builder builder = new CloudSolrClient.Builder().withHttpClient(httpClient)
+				.withClusterStateProvider(new ZkClientClusterStateProvider(zkAddress));
+		return new CloudSolrClient(builder) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				}
+				finally {
+					HttpClientUtil.close(httpClient);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Logs the values used by a started node
+	 */
+	public void logEffective(Log log, JettySolrRunner jetty) {
+		Server server = JettyServers.getServer(jetty);
+		QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+		ServerConnector connector = (ServerConnector) server.getConnectors()[0];
+		NamedList<?> shardHandler = jetty.getCoreContainer().getConfig().getShardHandlerFactoryPluginInfo().initArgs;
+		log.info("Pools of each node - Jetty: " + threadPool.getMinThreads() + " to " + threadPool.getMaxThreads() + " threads, "
+				+ connector.getAcceptors() + " acceptor(s), " + connector.getSelectorManager().getSelectorCount() + " selector(s), accept queue "
+				+ connector.getAcceptQueueSize() + " - shard handler: " + shardHandler.get("maxConnectionsPerHost") + " connections per host, "
+				+ shardHandler.get("maxConnections") + " in total, " + shardHandler.get("maximumPoolSize") + " threads max - "
+				+ "clients: " + clientMaxConnectionsPerHost + " connections per host, " + clientMaxConnections + " in total");
+	}
+
+	@Override
+	public String toString() {
+		return "jetty " + jettyMinThreads + "-" + jettyMaxThreads + "/" + jettyAcceptors + "/" + jettySelectors + "/" + jettyAcceptQueueSize
+				+ ", shard " + shardMaxConnectionsPerHost + "/" + shardMaxConnections + "/" + shardMaxPoolSize
+				+ ", client " + clientMaxConnectionsPerHost + "/" + clientMaxConnections;
+	}
+
+	/**
+	 * Adds this tuning to the configuration of a cluster (see {@link #fromProperties(Properties)})
+	 */
+	public void toProperties(Properties config) {
+		config.setProperty(PROP_PREFIX + "jettyMinThreads", String.valueOf(jettyMinThreads));
+		config.setProperty(PROP_PREFIX + "jettyMaxThreads", String.valueOf(jettyMaxThreads));
+		config.setProperty(PROP_PREFIX + "jettyAcceptors", String.valueOf(jettyAcceptors));
+		config.setProperty(PROP_PREFIX + "jettySelectors", String.valueOf(jettySelectors));
+		config.setProperty(PROP_PREFIX + "jettyAcceptQueueSize", String.valueOf(jettyAcceptQueueSize));
+		config.setProperty(PROP_PREFIX + "shardMaxConnectionsPerHost", String.valueOf(shardMaxConnectionsPerHost));
+		config.setProperty(PROP_PREFIX + "shardMaxConnections", String.valueOf(shardMaxConnections));
+		config.setProperty(PROP_PREFIX + "shardMaxPoolSize", String.valueOf(shardMaxPoolSize));
+		config.setProperty(PROP_PREFIX + "clientMaxConnectionsPerHost", String.valueOf(clientMaxConnectionsPerHost));
+		config.setProperty(PROP_PREFIX + "clientMaxConnections", String.valueOf(clientMaxConnections));
+	}
+
+	/**
+	 * @return the tuning of a cluster configuration (defaults for the values it doesn't have)
+	 */
+	public static PoolTuning fromProperties(Properties config) {
+		PoolTuning tuning = new PoolTuning();
+		tuning.jettyMinThreads = get(config, "jettyMinThreads", tuning.jettyMinThreads);
+		tuning.jettyMaxThreads = get(config, "jettyMaxThreads", tuning.jettyMaxThreads);
+		tuning.jettyAcceptors = get(config, "jettyAcceptors", tuning.jettyAcceptors);
+		tuning.jettySelectors = get(config, "jettySelectors", tuning.jettySelectors);
+		tuning.jettyAcceptQueueSize = get(config, "jettyAcceptQueueSize", tuning.jettyAcceptQueueSize);
+		tuning.shardMaxConnectionsPerHost = get(config, "shardMaxConnectionsPerHost", tuning.shardMaxConnectionsPerHost);
+		tuning.shardMaxConnections = get(config, "shardMaxConnections", tuning.shardMaxConnections);
+		tuning.shardMaxPoolSize = get(config, "shardMaxPoolSize", tuning.shardMaxPoolSize);
+		tuning.clientMaxConnectionsPerHost = get(config, "clientMaxConnectionsPerHost", tuning.clientMaxConnectionsPerHost);
+		tuning.clientMaxConnections = get(config, "clientMaxConnections", tuning.clientMaxConnections);
+		return tuning;
+	}
+
+	private static int get(Properties config, String name, int defaultValue) {
+		String value = config.getProperty(PROP_PREFIX + name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
@@ -0,0 +1,75 @@
+package io.github.borisnaguet.solr.maven;
+
+/**
+ * A query of the workload of {@link BenchMojo}
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class QueryTemplate {
+	/**
+	 * name of the query in the report (defaults to the query itself): unique among the queries
+	 */
+	private String name;
+	
+	/**
+	 * collection to query
+	 */
+	private String collection;
+	
+	/**
+	 * request parameters, URL-encoded, like <code>q=name:{term}&amp;rows=10</code>: each <code>{pool}</code> is
+	 * replaced by a random value of that pool for every request
+	 */
+	private String query;
+	
+	/**
+	 * how often this query is sent, relatively to the other ones
+	 */
+	private int weight = 1;
+	
+	/**
+	 * fail the build if the p99 latency of this query is above it, in ms
+	 */
+	private Double maxP99;
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public void setCollection(String collection) {
+		this.collection = collection;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+
+	public Double getMaxP99() {
+		return maxP99;
+	}
+
+	public void setMaxP99(Double maxP99) {
+		this.maxP99 = maxP99;
+	}
+}
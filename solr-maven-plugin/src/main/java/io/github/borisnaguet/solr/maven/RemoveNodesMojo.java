@@ -0,0 +1,34 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.apache.maven.plugins.annotations.LifecyclePhase.INTEGRATION_TEST;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+
+/**
+ * Removes the last nodes added to the SolrCloud started by start-solrcloud (or to the Solr daemon): their replicas are
+ * moved to the other nodes first (ADDREPLICA, then DELETEREPLICA once the new one is active).
+ *
+ * @author BorisNaguet
+ *
+ */
+@Mojo(name = "remove-nodes", defaultPhase = INTEGRATION_TEST, threadSafe = true)
+public class RemoveNodesMojo extends AbstractScaleMojo {
+
+	/**
+	 * Number of nodes to stop
+	 */
+	@Parameter(property = "solr.nodes.remove", defaultValue = "1")
+	private int nodes;
+
+	@Override
+	protected void scale(SolrCloudManager solrCloudManager, ClusterScaler scaler, PhaseTimer timer) throws MojoExecutionException {
+		if(nodes < 1) {
+			throw new MojoExecutionException("solr.nodes.remove must be at least 1");
+		}
+		step(timer, "remove nodes", solrCloudManager, () -> scaler.removeNodes(getLog(), nodes));
+	}
+}
@@ -0,0 +1,234 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Registry of the clusters that can be shared by several modules of a reactor build.
+ *
+ * <p>
+ * The plugin classes are loaded once per build (and not once per module), so this JVM-wide registry lets a
+ * start-solrcloud attach to a cluster already started with the same settings (see
+ * {@link #acquire(Log, String, ClusterStarter)}) instead of starting a new one.
+ * Each cluster is started once: modules that need it meanwhile wait for that start, while clusters with other
+ * settings start in parallel (in parallel builds).
+ * Each attach increments a reference count, released by stop-solrcloud: the last release stops the cluster.
+ * </p>
+ * <p>
+ * The last release can also keep it running (unreferenced), for modules built later: until it's acquired again,
+ * until another cluster needs to start (it probably holds the ports it needs), or until the JVM exits. It's then
+ * stopped the way the last stop-solrcloud asked for.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public final class SharedClusters {
+
+	private static final ConcurrentMap<String, CompletableFuture<SharedCluster>> CLUSTERS = new ConcurrentHashMap<>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> stopUnreferenced(new SystemStreamLog()), "solr-shared-clusters-stop"));
+	}
+
+	private SharedClusters() {
+	}
+
+	/**
+	 * Starts a cluster
+	 */
+	@FunctionalInterface
+	public interface ClusterStarter {
+		SolrCloudManager start() throws MojoExecutionException;
+	}
+
+	/**
+	 * Stops a cluster that's not used anymore
+	 */
+	@FunctionalInterface
+	public interface ClusterStopper {
+		void stop(Log log) throws MojoExecutionException;
+	}
+
+	/**
+	 * Attaches to the cluster registered with that key, or starts it
+	 *
+	 * @param log maven log
+	 * @param key effective configuration of the cluster
+	 * @param starter starts the cluster, if it's not running yet
+	 * @return the cluster
+	 * @throws MojoExecutionException if the cluster can't be started
+	 */
+	public static SolrCloudManager acquire(Log log, String key, ClusterStarter starter) throws MojoExecutionException {
+		while (true) {
+			CompletableFuture<SharedCluster> start = new CompletableFuture<>();
+			CompletableFuture<SharedCluster> registered = CLUSTERS.putIfAbsent(key, start);
+			if (registered == null) {
+				return start(log, key, starter, start);
+			}
+
+			SharedCluster cluster;
+			try {
+				cluster = registered.join();
+			}
+			catch (CompletionException e) {
+				// the module that started it failed (and unregistered it): try again
+				continue;
+			}
+			int references = cluster.acquire();
+			if (references > 0) {
+				log.info("Attaching to the shared Solr cluster already started with the same configuration");
+				log.debug("Shared cluster " + key + " now has " + references + " reference(s)");
+				return cluster.manager;
+			}
+			// stopped meanwhile: its ports must be free before it's started again
+			cluster.stopped.join();
+		}
+	}
+
+	private static SolrCloudManager start(Log log, String key, ClusterStarter starter, CompletableFuture<SharedCluster> start)
+			throws MojoExecutionException {
+		SharedCluster cluster;
+		try {
+			// clusters that nobody uses anymore probably hold the ports we need
+			stopUnreferenced(log);
+			cluster = new SharedCluster(starter.start());
+		}
+		catch (MojoExecutionException | RuntimeException e) {
+			CLUSTERS.remove(key, start);
+			start.completeExceptionally(e);
+			throw e;
+		}
+		cluster.acquire();
+		start.complete(cluster);
+		log.debug("Shared cluster " + key + " now has 1 reference");
+		return cluster.manager;
+	}
+
+	/**
+	 * Releases a reference to a cluster: the last one stops it, or leaves it running until it's stopped by
+	 * {@link #stopUnreferenced(Log)}
+	 *
+	 * @param log maven log
+	 * @param key effective configuration of the cluster
+	 * @param stopper how to stop the cluster, once it's not used anymore
+	 * @param keepRunning true to leave the cluster running for the next modules, when it's not used anymore
+	 * @throws MojoExecutionException if the cluster can't be stopped
+	 */
+	public static void release(Log log, String key, ClusterStopper stopper, boolean keepRunning) throws MojoExecutionException {
+		CompletableFuture<SharedCluster> registered = CLUSTERS.get(key);
+		SharedCluster cluster = registered == null ? null : registered.getNow(null);
+		if (cluster == null) {
+			log.warn("No shared Solr cluster registered with this configuration");
+			return;
+		}
+
+		int references = cluster.release(stopper, keepRunning);
+		log.debug("Shared cluster " + key + " now has " + references + " reference(s)");
+		if (references > 0) {
+			log.info("Solr cluster still used by " + references + " other module(s): not stopped");
+		}
+		else if (keepRunning) {
+			log.info("Solr cluster kept running for the next modules: it's stopped when another cluster starts, or when the JVM exits");
+		}
+		else {
+			CLUSTERS.remove(key, registered);
+			try {
+				stopper.stop(log);
+			}
+			finally {
+				cluster.stopped.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Stops the clusters that are not referenced anymore
+	 *
+	 * @param log where to log
+	 */
+	private static void stopUnreferenced(Log log) {
+		List<SharedCluster> unreferenced = new ArrayList<>();
+		for (Entry<String, CompletableFuture<SharedCluster>> registered : CLUSTERS.entrySet()) {
+			// still starting otherwise
+			SharedCluster cluster = registered.getValue().getNow(null);
+			if (cluster != null && cluster.markStopped()) {
+				CLUSTERS.remove(registered.getKey(), registered.getValue());
+				unreferenced.add(cluster);
+			}
+		}
+		for (SharedCluster cluster : unreferenced) {
+			try {
+				log.info("Stopping shared Solr cluster that is not used anymore");
+				cluster.stopper.stop(log);
+			}
+			catch (MojoExecutionException | RuntimeException e) {
+				log.warn("Can't stop shared Solr cluster", e);
+			}
+			finally {
+				cluster.stopped.complete(null);
+			}
+		}
+	}
+
+	private static class SharedCluster {
+		private final SolrCloudManager manager;
+		private final CompletableFuture<Void> stopped = new CompletableFuture<>();
+		private int references;
+		private boolean stopping;
+		/**
+		 * set by the last release, if it keeps the cluster running
+		 */
+		private ClusterStopper stopper;
+
+		public SharedCluster(SolrCloudManager manager) {
+			this.manager = manager;
+		}
+
+		/**
+		 * @return the number of references, 0 if it's being stopped
+		 */
+		synchronized int acquire() {
+			if (stopping) {
+				return 0;
+			}
+			return ++references;
+		}
+
+		/**
+		 * @return the number of references left: at 0, the caller must stop it unless it's kept running
+		 */
+		synchronized int release(ClusterStopper stopper, boolean keepRunning) {
+			references--;
+			if (references == 0) {
+				if (keepRunning) {
+					this.stopper = stopper;
+				}
+				else {
+					stopping = true;
+				}
+			}
+			return references;
+		}
+
+		/**
+		 * @return true if it's not referenced anymore, and must be stopped by the caller
+		 */
+		synchronized boolean markStopped() {
+			if (references > 0 || stopper == null || stopping) {
+				return false;
+			}
+			stopping = true;
+			return true;
+		}
+	}
+}
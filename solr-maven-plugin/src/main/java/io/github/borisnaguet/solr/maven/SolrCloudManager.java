@@ -3,28 +3,69 @@ package io.github.borisnaguet.solr.maven;
 import static io.github.borisnaguet.solr.maven.util.FileUtil.read;
 import static org.apache.solr.cloud.AbstractZkTestCase.TIMEOUT;
 import static org.apache.solr.cloud.MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML;
+import static org.apache.solr.cloud.MiniSolrCloudCluster.DEFAULT_NODES_TIMEOUT;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.Mojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.embedded.JettyConfig;
+import org.apache.solr.client.solrj.embedded.JettySolrRunner;
+import org.apache.solr.client.solrj.impl.CloudSolrClient;
 import org.apache.solr.client.solrj.request.CollectionAdminRequest;
-import org.apache.solr.client.solrj.request.CollectionAdminRequest.Create;
+import org.apache.solr.client.solrj.response.RequestStatusState;
 import org.apache.solr.cloud.MiniSolrCloudCluster;
 import org.apache.solr.cloud.ZkTestServer;
 import org.apache.solr.cloud.ZkTestServer.LimitViolationAction;
+import org.apache.solr.common.cloud.ClusterState;
+import org.apache.solr.common.cloud.CollectionStateWatcher;
+import org.apache.solr.common.cloud.DocCollection;
+import org.apache.solr.common.cloud.LiveNodesListener;
+import org.apache.solr.common.cloud.Replica;
+import org.apache.solr.common.cloud.Slice;
 import org.apache.solr.common.cloud.SolrZkClient;
 import org.apache.solr.common.cloud.ZkConfigManager;
+import org.apache.solr.common.cloud.ZkStateReader;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 
 import io.github.borisnaguet.solr.maven.util.FileUtil;
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+import io.github.borisnaguet.solr.maven.util.Trash;
 
 /**
  * Wrapper around SolrCloudManager to manage operation on the cloud, the maven way (with {@link Log}
@@ -61,6 +102,58 @@ public class SolrCloudManager {
 	 * content of the solr.xml file that will be uploaded to Zookeeper
 	 */
 	private final String solrXmlContent;
+	/**
+	 * max number of seconds to wait for all Solr servers to register in ZK
+	 */
+	private int nodesTimeout = DEFAULT_NODES_TIMEOUT;
+	/**
+	 * max number of seconds to wait for a collection to be ready: all its replicas active, and a leader for each shard
+	 */
+	private int collectionsTimeout = DEFAULT_COLLECTIONS_TIMEOUT;
+	/**
+	 * when the config already exists in ZK, only upload the files that changed (instead of failing)
+	 */
+	private boolean incrementalUpload = false;
+	/**
+	 * reload the collections using the config when an incremental upload changed it
+	 */
+	private boolean reloadOnConfigChange = false;
+	/**
+	 * true while the nodes start: the collections can't be reloaded yet
+	 */
+	private boolean nodesStarting;
+	/**
+	 * the config changed while the nodes started: the collections are reloaded once they're live, since cores may
+	 * have loaded the previous config
+	 */
+	private boolean reloadWhenLive;
+
+	/**
+	 * where ZK keeps its data
+	 */
+	private ZkStorage zkStorage = ZkStorage.DISK;
+	/**
+	 * Lucene directory of the cores of the collections created
+	 */
+	private IndexStorage indexStorage = IndexStorage.CONFIG;
+	/**
+	 * where deleted dirs are moved before being deleted in the background (see {@link Trash}), null to delete them
+	 * right away
+	 */
+	private Path trashDir;
+	/**
+	 * data dir of ZK when it's not in {@link #dataDir} (see {@link ZkStorage#MEMORY}), deleted on stop
+	 */
+	private Path memoryZkDir;
+	/**
+	 * thread and connection pools of the nodes, and of the clients
+	 */
+	private PoolTuning poolTuning = new PoolTuning();
+
+	/**
+	 * times the phases of start and stop (set by each goal)
+	 */
+	private PhaseTimer timer = new PhaseTimer();
 
 	private MiniSolrCloudCluster solrCloud;
 
@@ -68,6 +161,42 @@ public class SolrCloudManager {
 
 	private String chroot;
 
+	/**
+	 * default max number of seconds to wait for a collection to be ready
+	 */
+	public static final int DEFAULT_COLLECTIONS_TIMEOUT = 180;
+
+	private static final String PROP_DATA_DIR = "dataDir";
+	private static final String PROP_CONF_DIR = "confDir";
+	private static final String PROP_NUM_SERVERS = "numServers";
+	private static final String PROP_ZK_PORT = "zkPort";
+	private static final String PROP_SOLR_XML = "solrXml";
+	private static final String PROP_CONFIG_NAME = "configName";
+	private static final String PROP_CHROOT = "chroot";
+	private static final String PROP_NODES_TIMEOUT = "nodesTimeout";
+	private static final String PROP_COLLECTIONS_TIMEOUT = "collectionsTimeout";
+	private static final String PROP_CAN_DELETE_DATA = "canDeleteDataDir";
+	private static final String PROP_CAN_DELETE_CONF = "canDeleteConfDir";
+	private static final String PROP_INCREMENTAL_UPLOAD = "incrementalUpload";
+	private static final String PROP_RELOAD_ON_CONFIG_CHANGE = "reloadOnConfigChange";
+	private static final String PROP_ZK_STORAGE = "zkStorage";
+	private static final String PROP_INDEX_STORAGE = "indexStorage";
+	private static final String PROP_TRASH_DIR = "trashDir";
+
+	/**
+	 * system property read by ZK when its transaction log is created
+	 */
+	private static final String ZK_FORCE_SYNC = "zookeeper.forceSync";
+	/**
+	 * the system property is global: ZK servers started in parallel (by parallel modules) must not mix it up
+	 */
+	private static final Object ZK_FORCE_SYNC_LOCK = new Object();
+
+	/**
+	 * Collections API tasks queued for the overseer (and the ones it's running)
+	 */
+	private static final String OVERSEER_WORK_QUEUE = "/overseer/collection-queue-work";
+
 	public SolrCloudManager(Path dataDir, Path confDir, int numServers, int zkPort, String configName, String chroot) {
 		this(dataDir, confDir, numServers, zkPort, DEFAULT_CLOUD_SOLR_XML, configName, chroot);
 	}
@@ -87,6 +216,59 @@ public class SolrCloudManager {
 		this.chroot = chroot;
 	}
 
+	/**
+	 * Creates a manager from its configuration (see {@link #toProperties()}), for example in another JVM
+	 * 
+	 * @param config configuration of the cluster
+	 */
+	public SolrCloudManager(Properties config) {
+		this(Paths.get(config.getProperty(PROP_DATA_DIR)), Paths.get(config.getProperty(PROP_CONF_DIR)),
+				Integer.parseInt(config.getProperty(PROP_NUM_SERVERS)), Integer.parseInt(config.getProperty(PROP_ZK_PORT)),
+				config.getProperty(PROP_SOLR_XML), config.getProperty(PROP_CONFIG_NAME), config.getProperty(PROP_CHROOT));
+		this.nodesTimeout = Integer.parseInt(config.getProperty(PROP_NODES_TIMEOUT));
+		this.collectionsTimeout = Integer.parseInt(config.getProperty(PROP_COLLECTIONS_TIMEOUT, String.valueOf(DEFAULT_COLLECTIONS_TIMEOUT)));
+		this.canDeleteDataDir = Boolean.parseBoolean(config.getProperty(PROP_CAN_DELETE_DATA));
+		this.canDeleteConfDir = Boolean.parseBoolean(config.getProperty(PROP_CAN_DELETE_CONF));
+		this.incrementalUpload = Boolean.parseBoolean(config.getProperty(PROP_INCREMENTAL_UPLOAD));
+		this.reloadOnConfigChange = Boolean.parseBoolean(config.getProperty(PROP_RELOAD_ON_CONFIG_CHANGE));
+		this.zkStorage = ZkStorage.of(config.getProperty(PROP_ZK_STORAGE, ZkStorage.DISK.name()));
+		this.indexStorage = IndexStorage.of(config.getProperty(PROP_INDEX_STORAGE, IndexStorage.CONFIG.name()));
+		this.poolTuning = PoolTuning.fromProperties(config);
+		String trash = config.getProperty(PROP_TRASH_DIR);
+		this.trashDir = trash == null ? null : Paths.get(trash);
+	}
+
+	/**
+	 * @return the configuration of the cluster, to create the same manager with {@link #SolrCloudManager(Properties)}
+	 */
+	public Properties toProperties() {
+		Properties config = new Properties();
+		config.setProperty(PROP_DATA_DIR, dataDir.toAbsolutePath().toString());
+		config.setProperty(PROP_CONF_DIR, confDir.toAbsolutePath().toString());
+		config.setProperty(PROP_NUM_SERVERS, String.valueOf(numServers));
+		config.setProperty(PROP_ZK_PORT, String.valueOf(zkPort));
+		if(solrXmlContent != null) {
+			config.setProperty(PROP_SOLR_XML, solrXmlContent);
+		}
+		config.setProperty(PROP_CONFIG_NAME, configName);
+		if(chroot != null) {
+			config.setProperty(PROP_CHROOT, chroot);
+		}
+		config.setProperty(PROP_NODES_TIMEOUT, String.valueOf(nodesTimeout));
+		config.setProperty(PROP_COLLECTIONS_TIMEOUT, String.valueOf(collectionsTimeout));
+		config.setProperty(PROP_CAN_DELETE_DATA, String.valueOf(canDeleteDataDir));
+		config.setProperty(PROP_CAN_DELETE_CONF, String.valueOf(canDeleteConfDir));
+		config.setProperty(PROP_INCREMENTAL_UPLOAD, String.valueOf(incrementalUpload));
+		config.setProperty(PROP_RELOAD_ON_CONFIG_CHANGE, String.valueOf(reloadOnConfigChange));
+		config.setProperty(PROP_ZK_STORAGE, zkStorage.name());
+		config.setProperty(PROP_INDEX_STORAGE, indexStorage.name());
+		poolTuning.toProperties(config);
+		if(trashDir != null) {
+			config.setProperty(PROP_TRASH_DIR, trashDir.toAbsolutePath().toString());
+		}
+		return config;
+	}
+
 	public void canDeleteDataDir() {
 		this.canDeleteDataDir = true;
 	}
@@ -94,6 +276,58 @@ public class SolrCloudManager {
 	public void canDeleteConfDir() {
 		this.canDeleteConfDir = true;
 	}
+
+	public void setNodesTimeout(int nodesTimeout) {
+		this.nodesTimeout = nodesTimeout;
+	}
+
+	public void setCollectionsTimeout(int collectionsTimeout) {
+		this.collectionsTimeout = collectionsTimeout;
+	}
+
+	public void setIncrementalUpload(boolean incrementalUpload) {
+		this.incrementalUpload = incrementalUpload;
+	}
+
+	public void setReloadOnConfigChange(boolean reloadOnConfigChange) {
+		this.reloadOnConfigChange = reloadOnConfigChange;
+	}
+
+	public void setPoolTuning(PoolTuning poolTuning) {
+		this.poolTuning = poolTuning;
+	}
+
+	public void setZkStorage(ZkStorage zkStorage) {
+		this.zkStorage = zkStorage;
+	}
+
+	public void setIndexStorage(IndexStorage indexStorage) {
+		this.indexStorage = indexStorage;
+	}
+
+	public void setTrashDir(Path trashDir) {
+		this.trashDir = trashDir;
+	}
+
+	protected Path getDataDir() {
+		return dataDir;
+	}
+
+	protected Path getConfDir() {
+		return confDir;
+	}
+
+	protected IndexStorage getIndexStorage() {
+		return indexStorage;
+	}
+
+	public synchronized PhaseTimer getTimer() {
+		return timer;
+	}
+
+	public synchronized void setTimer(PhaseTimer timer) {
+		this.timer = timer;
+	}
 	
 	/**
 	 * Start the {@link MiniSolrCloudCluster}
@@ -101,7 +335,519 @@ public class SolrCloudManager {
 	 * @param log maven log
 	 * @throws MojoExecutionException exception
 	 */
-	public synchronized void startCluster(Log log) throws MojoExecutionException {
+	public void startCluster(Log log) throws MojoExecutionException {
+		startCluster(log, null);
+	}
+
+	/**
+	 * Start the {@link MiniSolrCloudCluster}, and run a task while its nodes are starting: the task can only rely on
+	 * ZK (to upload the config for example)
+	 * 
+	 * @param log maven log
+	 * @param whileNodesStart task to run once ZK is ready, null if there's none
+	 * @throws MojoExecutionException if the cluster can't be started, or the task failed
+	 */
+	public synchronized void startCluster(Log log, ZkTask whileNodesStart) throws MojoExecutionException {
+		startZk(log);
+
+		// Start Solr Cluster
+		log.debug("Will start MiniSolrCloudCluster");
+		startNodes(log, () -> solrCloud.startJettySolrRunners(numServers), whileNodesStart);
+		log.debug("MiniSolrCloudCluster started");
+		poolTuning.logEffective(log, solrCloud.getJettySolrRunners().get(0));
+	}
+
+	/**
+	 * Start the {@link MiniSolrCloudCluster} on a data dir where a {@link ClusterTemplates template} was cloned: 
+	 * config and collections are already there, but each node must be restarted on its previous port.
+	 * 
+	 * @param log maven log
+	 * @param nodePorts port of each node, by node dir name
+	 * @throws MojoExecutionException exception
+	 */
+	public synchronized void startClusterFromTemplate(Log log, Map<String, Integer> nodePorts) throws MojoExecutionException {
+		startZk(log);
+		// nodes, leaders and overseer registered when the template was saved are not there anymore
+		removeEphemeralNodes(log);
+
+		log.debug("Will start MiniSolrCloudCluster with nodes " + nodePorts);
+		startNodes(log, () -> solrCloud.startJettySolrRunners(nodePorts), null);
+		log.debug("MiniSolrCloudCluster started");
+		poolTuning.logEffective(log, solrCloud.getJettySolrRunners().get(0));
+
+		// replicas of the template recover, and elect their leaders again
+		timer.run("ready collections", () -> waitForCollections(log));
+	}
+
+	/**
+	 * Saves the data dir of the cluster, just initialized, as a template (unless there's already one for that key).
+	 *
+	 * <p>
+	 * Index changes are hard committed, then the nodes and ZK are stopped while the data dir is copied: no Lucene file,
+	 * update log or ZK log is open then. They're started again on the same ports, and the collections are ready again
+	 * when this returns.
+	 * </p>
+	 *
+	 * @param log maven log
+	 * @param templates where templates are stored
+	 * @param key key of the template
+	 * @throws MojoExecutionException if the cluster can't be stopped or started again
+	 */
+	public synchronized void saveTemplate(Log log, ClusterTemplates templates, String key) throws MojoExecutionException {
+		if (templates.exists(key)) {
+			return;
+		}
+		CloudSolrClient client = solrCloud.getSolrClient();
+		client.connect();
+		for (String collection : client.getZkStateReader().getClusterState().getCollectionsMap().keySet()) {
+			try {
+				client.commit(collection, true, true);
+			}
+			catch (SolrServerException | IOException e) {
+				throw new MojoExecutionException("Can't commit collection " + collection + " before saving the cluster template", e);
+			}
+		}
+		// collections are ready before the overseer is done with their creation: it must not be in the template
+		awaitIdleOverseer(client.getZkStateReader().getZkClient());
+
+		Map<String, Integer> nodePorts = getNodePorts();
+		List<JettySolrRunner> stopped = new ArrayList<>();
+		int port = zkTestServer.getPort();
+		String zkDir = zkTestServer.getZkDir();
+		try {
+			// the last ones first: the others keep their index
+			for (int i = solrCloud.getJettySolrRunners().size() - 1; i >= 0; i--) {
+				stopped.add(0, solrCloud.stopJettySolrRunner(i));
+			}
+			zkTestServer.shutdown();
+			log.debug("Cluster stopped to save template " + key);
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Can't stop the cluster to save template " + key, e);
+		}
+
+		try {
+			templates.save(log, key, dataDir, nodePorts);
+		}
+		finally {
+			try {
+				startZkAgain(zkDir, port);
+				for (JettySolrRunner jetty : stopped) {
+					solrCloud.startJettySolrRunner(jetty, true);
+				}
+				solrCloud.waitForAllNodes(nodesTimeout, chroot);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while starting the cluster again after saving template " + key, e);
+			}
+			catch (Exception e) {
+				throw new MojoExecutionException("Can't start the cluster again after saving template " + key, e);
+			}
+			waitForCollections(log);
+		}
+	}
+
+	/**
+	 * Waits until every collection of the cluster is ready (all its replicas active, and a leader for each shard).
+	 *
+	 * <p>
+	 * Each wait registers a watcher on the state of the collection in ZK: we're notified of its changes, there's no
+	 * polling. They're waited for one after the other, but all collections get ready meanwhile.
+	 * </p>
+	 * 
+	 * @param log maven log
+	 * @throws MojoExecutionException if one of them is not ready after the collections timeout
+	 */
+	public synchronized void waitForCollections(Log log) throws MojoExecutionException {
+		waitForCollections(log, solrCloud.getSolrClient());
+	}
+
+	/**
+	 * Same as {@link #waitForCollections(Log)}, with a client of the cluster
+	 */
+	protected void waitForCollections(Log log, CloudSolrClient client) throws MojoExecutionException {
+		long start = System.nanoTime();
+		client.connect();
+		Map<String, DocCollection> collections = client.getZkStateReader().getClusterState().getCollectionsMap();
+		long deadline = start + TimeUnit.SECONDS.toNanos(collectionsTimeout);
+		for (Entry<String, DocCollection> collection : collections.entrySet()) {
+			int expectedReplicas = collection.getValue().getReplicas().size();
+			try {
+				client.waitForState(collection.getKey(), Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS, 
+						(liveNodes, state) -> isReady(liveNodes, state, expectedReplicas));
+			}
+			catch (TimeoutException e) {
+				throw new MojoExecutionException("Collection " + collection.getKey() + " not ready after " + collectionsTimeout + " s: " 
+						+ client.getZkStateReader().getClusterState().getCollectionOrNull(collection.getKey()), e);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while waiting for collection " + collection.getKey(), e);
+			}
+			log.info("Collection " + collection.getKey() + " ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Waits until a fault shows in the state of the collections (a replica not active, or a shard without an active
+	 * leader), then until every collection is ready again (see {@link #waitForCollections(Log)}).
+	 * 
+	 * @param log maven log
+	 * @param visibleTimeoutMillis max time to wait for the fault to show: a fault that doesn't by then had no effect
+	 * @return true if the fault showed in the state of the collections
+	 * @throws MojoExecutionException if a collection is not ready again after the collections timeout
+	 */
+	public boolean waitForRecovery(Log log, long visibleTimeoutMillis) throws MojoExecutionException {
+		try (SolrClient solrClient = newClient()) {
+			if (!(solrClient instanceof CloudSolrClient)) {
+				throw new MojoExecutionException("Faults can only be injected in a SolrCloud cluster");
+			}
+			CloudSolrClient client = (CloudSolrClient) solrClient;
+			client.connect();
+			boolean visible = waitForDisruption(client.getZkStateReader(), visibleTimeoutMillis);
+			waitForCollections(log, client);
+			return visible;
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't close Solr client", e);
+		}
+	}
+
+	/**
+	 * @return true if a collection was not ready before the timeout
+	 */
+	private static boolean waitForDisruption(ZkStateReader reader, long timeoutMillis) throws MojoExecutionException {
+		Map<String, Integer> expectedReplicas = new TreeMap<>();
+		for (Entry<String, DocCollection> collection : reader.getClusterState().getCollectionsMap().entrySet()) {
+			expectedReplicas.put(collection.getKey(), collection.getValue().getReplicas().size());
+		}
+		CountDownLatch disrupted = new CountDownLatch(1);
+		Runnable check = () -> {
+			ClusterState state = reader.getClusterState();
+			for (Entry<String, Integer> collection : expectedReplicas.entrySet()) {
+				if (!isReady(state.getLiveNodes(), state.getCollectionOrNull(collection.getKey()), collection.getValue())) {
+					disrupted.countDown();
+				}
+			}
+		};
+
+		// collection watchers aren't notified when a node leaves: live nodes have their own listeners
+		Map<String, CollectionStateWatcher> watchers = new TreeMap<>();
+		LiveNodesListener liveNodesListener = (oldLiveNodes, newLiveNodes) -> check.run();
+		reader.registerLiveNodesListener(liveNodesListener);
+		try {
+			for (Entry<String, Integer> collection : expectedReplicas.entrySet()) {
+				CollectionStateWatcher watcher = (liveNodes, state) -> {
+					if (isReady(liveNodes, state, collection.getValue())) {
+						return false;
+					}
+					disrupted.countDown();
+					return true;
+				};
+				watchers.put(collection.getKey(), watcher);
+				reader.registerCollectionStateWatcher(collection.getKey(), watcher);
+			}
+			// the fault may have shown before the watchers were there
+			check.run();
+			return disrupted.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while waiting for a fault to show", e);
+		}
+		finally {
+			reader.removeLiveNodesListener(liveNodesListener);
+			for (Entry<String, CollectionStateWatcher> watcher : watchers.entrySet()) {
+				reader.removeCollectionStateWatcher(watcher.getKey(), watcher.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Stops a node, and starts it again on the same port: its replicas recover, and the leaders it had are elected on
+	 * other nodes meanwhile
+	 * 
+	 * @param log maven log
+	 * @param index index of the node, in {@link #getJettyUrls()}
+	 * @param downMillis how long the node stays stopped (0 to start it right away)
+	 * @return base URL of the node
+	 * @throws MojoExecutionException if the node can't be stopped or started again
+	 */
+	public String restartNode(Log log, int index, long downMillis) throws MojoExecutionException {
+		String url;
+		JettySolrRunner jetty;
+		try {
+			synchronized (this) {
+				url = getJettyUrls().get(index);
+				jetty = solrCloud.stopJettySolrRunner(index);
+			}
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Can't stop node " + index, e);
+		}
+		log.info("Node " + url + " stopped");
+		try {
+			// not under the lock: the URLs and the ZK address stay available meanwhile
+			Thread.sleep(downMillis);
+			synchronized (this) {
+				// on its previous port, it's the same node for ZK
+				solrCloud.startJettySolrRunner(jetty, true);
+			}
+			log.info("Node " + url + " started again");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while restarting node " + url, e);
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Can't restart node " + url, e);
+		}
+		return url;
+	}
+
+	/**
+	 * Expires the ZK session of a node: its live node and its leader elections are lost, until it reconnects
+	 * 
+	 * @param log maven log
+	 * @param index index of the node, in {@link #getJettyUrls()}
+	 * @return base URL of the node
+	 * @throws MojoExecutionException if the session can't be expired
+	 */
+	public synchronized String expireZkSession(Log log, int index) throws MojoExecutionException {
+		String url = getJettyUrls().get(index);
+		solrCloud.expireZkSession(solrCloud.getJettySolrRunner(index));
+		log.info("ZooKeeper session of node " + url + " expired");
+		return url;
+	}
+
+	/**
+	 * Stops ZooKeeper, and starts it again on the same port and data: nodes and clients reconnect to it
+	 * 
+	 * @param log maven log
+	 * @param downMillis how long ZK stays stopped (0 to start it right away)
+	 * @throws MojoExecutionException if ZK can't be stopped or started again
+	 */
+	public void restartZk(Log log, long downMillis) throws MojoExecutionException {
+		int port;
+		String zkDir;
+		try {
+			synchronized (this) {
+				port = zkTestServer.getPort();
+				zkDir = zkTestServer.getZkDir();
+				zkTestServer.shutdown();
+			}
+			log.info("ZooKeeper stopped");
+			// not under the lock: the URLs and the ZK address stay available meanwhile
+			Thread.sleep(downMillis);
+			synchronized (this) {
+				startZkAgain(zkDir, port);
+			}
+			log.info("ZooKeeper started again on port " + port);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while restarting ZooKeeper", e);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't restart ZooKeeper", e);
+		}
+	}
+
+	/**
+	 * Waits until the overseer has no Collections API task left (they're short once the collections are ready)
+	 */
+	private void awaitIdleOverseer(SolrZkClient zkClient) throws MojoExecutionException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(collectionsTimeout);
+		try {
+			while (!zkClient.getChildren(OVERSEER_WORK_QUEUE, null, true).isEmpty()) {
+				if (System.nanoTime() > deadline) {
+					throw new MojoExecutionException("Overseer still busy after " + collectionsTimeout + " s");
+				}
+				Thread.sleep(100);
+			}
+		}
+		catch (KeeperException.NoNodeException e) {
+			// no task was ever queued
+		}
+		catch (KeeperException e) {
+			throw new MojoExecutionException("Can't read the tasks of the overseer", e);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while waiting for the overseer", e);
+		}
+	}
+
+	/**
+	 * Starts ZK again on its previous data and port, once stopped: the nodes and clients reconnect to it
+	 */
+	private void startZkAgain(String zkDir, int port) throws InterruptedException {
+		zkTestServer = new ZkTestServer(zkDir, port);
+		zkTestServer.setViolationReportAction(LimitViolationAction.IGNORE);
+		runZk();
+		solrCloud.setZkServer(zkTestServer);
+	}
+
+	/**
+	 * @return what adds and removes nodes and replicas of the cluster
+	 * @throws MojoExecutionException if the cluster is not started, or can't be scaled
+	 */
+	public synchronized ClusterScaler getScaler() throws MojoExecutionException {
+		if (solrCloud == null) {
+			throw new MojoExecutionException("Solr is not started");
+		}
+		return new MiniClusterScaler(this, solrCloud, chroot, nodesTimeout, collectionsTimeout, indexStorage, timer);
+	}
+
+	static String baseUrl(JettySolrRunner jetty) {
+		// as registered in ZK: the connector is bound on all interfaces, so Jetty's own base URL has no host
+		return jetty.getCoreContainer().getZkController().getBaseUrl();
+	}
+
+	/**
+	 * Starts the cluster (ZK being started), and waits until all its nodes are live.
+	 * The nodes start in the background, while the calling thread runs what only needs ZK.
+	 * 
+	 * @param jettyStarter starts the nodes of {@link #solrCloud}
+	 * @param whileNodesStart task to run while the nodes are starting, null if there's none
+	 */
+	private void startNodes(Log log, JettyStarter jettyStarter, ZkTask whileNodesStart) throws MojoExecutionException {
+		try {
+			timer.run("cluster init", () -> {
+				solrCloud = new MiniSolrCloudCluster(0, dataDir, solrXmlContent, buildJettyConfig(), zkTestServer, chroot, nodesTimeout);
+				poolTuning.applyTo(solrCloud);
+			});
+		}
+		catch (Exception e) {
+			throw new MojoExecutionException("Can't start solr", e);
+		}
+
+		ExecutorService executor = ExecutorUtil.newMDCAwareSingleThreadExecutor(new SolrjNamedThreadFactory("nodes-starter"));
+		MojoExecutionException error = null;
+		nodesStarting = true;
+		try {
+			CompletableFuture<Void> nodesStart = CompletableFuture.runAsync(() -> {
+				try {
+					timer.run("jetty start", jettyStarter::start);
+				}
+				catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+			
+			if (whileNodesStart != null) {
+				try {
+					whileNodesStart.run();
+				}
+				catch (MojoExecutionException e) {
+					error = e;
+				}
+			}
+			
+			try {
+				nodesStart.join();
+				if (error == null) {
+					timer.run("live nodes", () -> solrCloud.waitForAllNodes(nodesTimeout, chroot));
+					nodesStarting = false;
+					if (reloadWhenLive) {
+						reloadCollections(log, solrCloud.getZkClient());
+					}
+				}
+			}
+			catch (CompletionException e) {
+				error = startError(error, e.getCause());
+			}
+			catch (Exception e) {
+				error = startError(error, e);
+			}
+		}
+		finally {
+			nodesStarting = false;
+			reloadWhenLive = false;
+			ExecutorUtil.shutdownAndAwaitTermination(executor);
+		}
+
+		if (error != null) {
+			try {
+				solrCloud.shutdown();
+			}
+			catch (Exception shutdownError) {
+				error.addSuppressed(shutdownError);
+			}
+			solrCloud = null;
+			throw error;
+		}
+	}
+
+	/**
+	 * @return the error of the start, with the one of the task run meanwhile (if any) as suppressed
+	 */
+	private static MojoExecutionException startError(MojoExecutionException taskError, Throwable cause) {
+		MojoExecutionException error = new MojoExecutionException("Can't start solr", cause);
+		if (taskError != null) {
+			error.addSuppressed(taskError);
+		}
+		return error;
+	}
+
+	@FunctionalInterface
+	private interface JettyStarter {
+		void start() throws Exception;
+	}
+
+	/**
+	 * Something that only needs ZK to run, like the upload of the config
+	 */
+	@FunctionalInterface
+	public interface ZkTask {
+		void run() throws MojoExecutionException;
+	}
+
+	/**
+	 * @return true if the cluster runs in a JVM that outlives the build
+	 */
+	public boolean isDaemon() {
+		return false;
+	}
+
+	/**
+	 * @return ZooKeeper address (with chroot) of the running cluster
+	 */
+	public synchronized String getZkAddress() {
+		return zkTestServer.getZkAddress(chroot);
+	}
+
+	/**
+	 * @return a new client of the running cluster, to close once done
+	 */
+	public SolrClient newClient() {
+		return poolTuning.newClient(getZkAddress());
+	}
+
+	/**
+	 * @return base URLs of the running Solr nodes
+	 */
+	public synchronized List<String> getJettyUrls() {
+		List<String> urls = new ArrayList<>();
+		for (JettySolrRunner jetty : solrCloud.getJettySolrRunners()) {
+			urls.add(baseUrl(jetty));
+		}
+		return urls;
+	}
+
+	/**
+	 * @return the port of each running node, by node dir name
+	 */
+	public synchronized Map<String, Integer> getNodePorts() {
+		Map<String, Integer> nodePorts = new TreeMap<>();
+		for (JettySolrRunner jetty : solrCloud.getJettySolrRunners()) {
+			nodePorts.put(Paths.get(jetty.getSolrHome()).getFileName().toString(), jetty.getLocalPort());
+		}
+		return nodePorts;
+	}
+
+	private void startZk(Log log) throws MojoExecutionException {
 		if (solrCloud != null) {
 			throw new MojoExecutionException("Solr already started");
 		}
@@ -112,75 +858,395 @@ public class SolrCloudManager {
 		
 		log.debug("About to startCluster");
 
-		String zkDir = dataDir.resolve("zookeeper/server1/data").toString();
+		String zkDir = zkDataDir(log).toString();
 		zkTestServer = new ZkTestServer(zkDir, zkPort);
 		//TODO: look more into why we need that
 		zkTestServer.setViolationReportAction(LimitViolationAction.IGNORE);
 		try {
-			log.debug("Will start ZkTestServer");
-			zkTestServer.run();
+			log.debug("Will start ZkTestServer in " + zkDir + " (" + zkStorage + ")");
+			timer.run("zookeeper", this::runZk);
 			log.debug("ZkTestServer started");
 		}
 		catch (InterruptedException e) {
 			throw new MojoExecutionException("Can't start ZooKeeper test server", e);
 		}
+	}
 
-		// Start Solr Cluster
-		try {
-			log.debug("Will start MiniSolrCloudCluster");
-			
-			JettyConfig jettyConfig = JettyConfig.builder()
-					.stopAtShutdown(false)
-					.build();
-			
-			solrCloud = new MiniSolrCloudCluster(numServers, dataDir, solrXmlContent, jettyConfig, zkTestServer, chroot);
-			log.debug("MiniSolrCloudCluster started");
+	/**
+	 * @return where ZK must keep its data, depending on {@link #zkStorage}
+	 */
+	private Path zkDataDir(Log log) throws MojoExecutionException {
+		Path zkDir = dataDir.resolve("zookeeper/server1/data");
+		if (zkStorage != ZkStorage.MEMORY) {
+			return zkDir;
 		}
-		catch (Exception e) {
-			throw new MojoExecutionException("Can't start solr", e);
+		memoryZkDir = FileUtil.createTempDirInMemory(log, "solr-zk-");
+		if (memoryZkDir == null) {
+			log.warn("ZooKeeper data will be on disk (without fsync)");
+			return zkDir;
+		}
+		return memoryZkDir;
+	}
+
+	/**
+	 * Starts ZK: its transaction log reads {@value #ZK_FORCE_SYNC} when it's created, while the server starts.
+	 * Servers that sync start under the lock too, so that they never read the value set for one that doesn't
+	 */
+	private void runZk() throws InterruptedException {
+		synchronized (ZK_FORCE_SYNC_LOCK) {
+			if (zkStorage.isForceSync()) {
+				zkTestServer.run();
+				return;
+			}
+			String forceSync = System.getProperty(ZK_FORCE_SYNC);
+			System.setProperty(ZK_FORCE_SYNC, "no");
+			try {
+				zkTestServer.run();
+			}
+			finally {
+				if (forceSync == null) {
+					System.clearProperty(ZK_FORCE_SYNC);
+				}
+				else {
+					System.setProperty(ZK_FORCE_SYNC, forceSync);
+				}
+			}
+		}
+	}
+
+	private JettyConfig buildJettyConfig() {
+		return JettyConfig.builder()
+				.stopAtShutdown(false)
+				.build();
+	}
+
+	private void removeEphemeralNodes(Log log) throws MojoExecutionException {
+		try (SolrZkClient zkClient = new SolrZkClient(zkTestServer.getZkAddress(chroot), TIMEOUT, TIMEOUT, null)) {
+			removeEphemeralNodes(log, zkClient, "");
+		}
+		catch (KeeperException | InterruptedException e) {
+			throw new MojoExecutionException("Can't clean ephemeral nodes in ZK", e);
+		}
+	}
+
+	private void removeEphemeralNodes(Log log, SolrZkClient zkClient, String path) throws KeeperException, InterruptedException {
+		for (String child : zkClient.getChildren(path.isEmpty() ? "/" : path, null, true)) {
+			String childPath = path + "/" + child;
+			if ("/configs".equals(childPath) || "/zookeeper".equals(childPath)) {
+				continue;
+			}
+			Stat stat = zkClient.exists(childPath, null, true);
+			if (stat == null) {
+				continue;
+			}
+			if (stat.getEphemeralOwner() != 0) {
+				log.debug("Will remove ephemeral node " + childPath);
+				zkClient.delete(childPath, -1, true);
+			}
+			else if (stat.getNumChildren() > 0) {
+				removeEphemeralNodes(log, zkClient, childPath);
+			}
 		}
 	}
 
 	/**
-	 * Upload config to ZK
+	 * Upload config to ZK.
+	 * 
+	 * <p>
+	 * If the config already exists, it fails, unless the upload is incremental: only the files whose content changed
+	 * are then written, and the ones removed from the conf dir are deleted.
+	 * Collections using a config that changed are reloaded: once the nodes are live, if they're still starting.
+	 * </p>
 	 * 
 	 * @param log maven log
 	 * @throws MojoExecutionException exception
 	 */
 	public synchronized void uploadConfig(Log log) throws MojoExecutionException {
-		try (SolrZkClient zkClient = new SolrZkClient(solrCloud.getZkServer().getZkAddress(chroot), TIMEOUT, TIMEOUT, null)) {
+		try (SolrZkClient zkClient = new SolrZkClient(getZkAddress(), TIMEOUT, TIMEOUT, null)) {
 			ZkConfigManager manager = new ZkConfigManager(zkClient);
 			if(manager.configExists(configName)) {
-				throw new MojoExecutionException("Config " + configName + " already exists on ZK");
+				if(!incrementalUpload) {
+					throw new MojoExecutionException("Config " + configName + " already exists on ZK");
+				}
+				
+				log.debug("about to sync config from " + confDir + " to " + configName);
+				if(syncConfig(log, zkClient) > 0 && reloadOnConfigChange) {
+					if(nodesStarting) {
+						// no live node yet to reload them
+						reloadWhenLive = true;
+					}
+					else {
+						reloadCollections(log, zkClient);
+					}
+				}
+				return;
 			}
 			
 			log.debug("about to upload config from " + confDir + " to " + configName);
 			manager.uploadConfigDir(confDir, configName);
+			Map<String, HashCode> uploaded = new TreeMap<>();
+			for (Path file : listConfigFiles()) {
+				uploaded.put(configFileName(file), Hashing.sha256().hashBytes(Files.readAllBytes(file)));
+			}
+			writeManifest(zkClient, new ConfigManifest(uploaded));
 			log.debug("Config uploaded");
 		}
-		catch (IOException e) {
+		catch (IOException | KeeperException e) {
 			throw new MojoExecutionException("Can't upload solr config in ZK " + configName, e);
 		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while uploading solr config in ZK " + configName, e);
+		}
 	}
 
 	/**
-	 * Creates a collection
+	 * Writes in ZK the config files whose content differs (compared by hash) from the ones already there,
+	 * and removes the ones that are not in the conf dir anymore, if a previous upload wrote them 
+	 * (see {@link ConfigManifest}): the files written by Solr at runtime are kept
+	 * 
+	 * @return number of files written or removed
+	 */
+	private int syncConfig(Log log, SolrZkClient zkClient) throws IOException, KeeperException, InterruptedException {
+		String configPath = ZkConfigManager.CONFIGS_ZKNODE + "/" + configName;
+		Map<String, HashCode> zkFiles = new TreeMap<>();
+		collectZkFiles(zkClient, configPath, "", zkFiles);
+		String manifestPath = ConfigManifest.zkPath(configName);
+		ConfigManifest previous = ConfigManifest.parse(zkClient.exists(manifestPath, true) 
+				? zkClient.getData(manifestPath, null, null, true) : null);
+		
+		List<Path> files = listConfigFiles();
+		Map<String, HashCode> uploaded = new TreeMap<>();
+		int added = 0;
+		int changed = 0;
+		for (Path file : files) {
+			String name = configFileName(file);
+			byte[] content = Files.readAllBytes(file);
+			HashCode hash = Hashing.sha256().hashBytes(content);
+			uploaded.put(name, hash);
+			HashCode zkHash = zkFiles.remove(name);
+			if(zkHash == null) {
+				log.debug("Config file added: " + name);
+				zkClient.makePath(configPath + "/" + name, content, true);
+				added++;
+			}
+			else if(!zkHash.equals(hash)) {
+				log.debug("Config file changed: " + name);
+				zkClient.setData(configPath + "/" + name, content, true);
+				changed++;
+			}
+		}
+		List<String> removed = previous.removable(zkFiles);
+		for (String name : zkFiles.keySet()) {
+			if(removed.contains(name)) {
+				log.debug("Config file removed: " + name);
+				zkClient.clean(configPath + "/" + name);
+			}
+			else {
+				log.debug("Config file kept, not written by a previous upload: " + name);
+			}
+		}
+		writeManifest(zkClient, new ConfigManifest(uploaded));
+		
+		log.info("Config " + configName + " synced from " + confDir + ": " + added + " file(s) added, " + changed + " changed, " 
+				+ removed.size() + " removed, " + (files.size() - added - changed) + " unchanged");
+		return added + changed + removed.size();
+	}
+
+	/**
+	 * Files of the conf dir that are uploaded
+	 */
+	private List<Path> listConfigFiles() throws IOException {
+		try (Stream<Path> walk = Files.walk(confDir)) {
+			return walk.filter(Files::isRegularFile)
+					.filter(file -> !ZkConfigManager.UPLOAD_FILENAME_EXCLUDE_PATTERN.matcher(file.getFileName().toString()).matches())
+					.collect(Collectors.toList());
+		}
+	}
+
+	private String configFileName(Path file) {
+		return confDir.relativize(file).toString().replace(File.separatorChar, '/');
+	}
+
+	private void writeManifest(SolrZkClient zkClient, ConfigManifest manifest) throws KeeperException, InterruptedException {
+		zkClient.makePath(ConfigManifest.zkPath(configName), manifest.toBytes(), CreateMode.PERSISTENT, null, false, true);
+	}
+
+	/**
+	 * Collects the hash of the content of each file (leaf node) under a ZK path
+	 */
+	private void collectZkFiles(SolrZkClient zkClient, String root, String relativePath, Map<String, HashCode> zkFiles) 
+			throws KeeperException, InterruptedException {
+		String path = relativePath.isEmpty() ? root : root + "/" + relativePath;
+		List<String> children = zkClient.getChildren(path, null, true);
+		if(children.isEmpty() && !relativePath.isEmpty()) {
+			byte[] content = zkClient.getData(path, null, null, true);
+			zkFiles.put(relativePath, Hashing.sha256().hashBytes(content == null ? new byte[0] : content));
+			return;
+		}
+		for (String child : children) {
+			collectZkFiles(zkClient, root, relativePath.isEmpty() ? child : relativePath + "/" + child, zkFiles);
+		}
+	}
+
+	/**
+	 * Reloads the collections that use the config, so that they see its changes
+	 */
+	private void reloadCollections(Log log, SolrZkClient zkClient) throws MojoExecutionException, KeeperException, InterruptedException {
+		CloudSolrClient client = solrCloud.getSolrClient();
+		ZkStateReader reader = client.getZkStateReader();
+		for (String colName : zkClient.getChildren(ZkStateReader.COLLECTIONS_ZKNODE, null, true)) {
+			if(!configName.equals(reader.readConfigName(colName))) {
+				continue;
+			}
+			log.info("Will reload collection " + colName + " to apply config changes");
+			try {
+				CollectionAdminRequest.reloadCollection(colName).process(client);
+			}
+			catch (SolrServerException | IOException e) {
+				throw new MojoExecutionException("Can't reload solr collection " + colName, e);
+			}
+		}
+	}
+
+	/**
+	 * Creates a collection, and waits until it's ready (see {@link #createCollections(Log, List, int, int)})
 	 * 
 	 * @param log maven log
 	 * @param colName collection name to create
 	 * @throws MojoExecutionException Exception
 	 */
 	public synchronized void createCollection(Log log, String colName, int numShards, int replicationFactor) throws MojoExecutionException {
-		log.debug("About to create collection " + colName);
+		createCollections(log, Collections.singletonList(colName), numShards, replicationFactor);
+	}
 
+	/**
+	 * Creates several collections at once.
+	 * 
+	 * <p>
+	 * All creations are submitted concurrently as async Collections API requests, then we wait once for all of
+	 * them: a collection is ready when all its replicas are active, and each shard has a leader (we're notified of 
+	 * state changes by ZK). The time each one took is logged.
+	 * </p>
+	 * 
+	 * @param log maven log
+	 * @param colNames names of the collections to create
+	 * @param numShards number of shards of each collection
+	 * @param replicationFactor number of replicas of each shard
+	 * @throws MojoExecutionException if at least one collection can't be created
+	 */
+	public synchronized void createCollections(Log log, List<String> colNames, int numShards, int replicationFactor) throws MojoExecutionException {
+		log.debug("About to create collections " + colNames);
+		
+		ExecutorService executor = ExecutorUtil.newMDCAwareCachedThreadPool(new SolrjNamedThreadFactory("collection-creator"));
+		try {
+			Map<String, Future<Long>> creations = new LinkedHashMap<>();
+			for (String colName : colNames) {
+				creations.put(colName, executor.submit(() -> createCollectionAsync(colName, numShards, replicationFactor)));
+			}
+			
+			MojoExecutionException error = null;
+			for (Entry<String, Future<Long>> creation : creations.entrySet()) {
+				try {
+					long millis = creation.getValue().get();
+					log.info("Collection " + creation.getKey() + " created and ready in " + millis + " ms");
+				}
+				catch (ExecutionException e) {
+					if(error == null) {
+						error = new MojoExecutionException("Can't create solr collection(s)");
+					}
+					log.error("Can't create solr collection " + creation.getKey() + ": " + e.getCause().getMessage());
+					error.addSuppressed(e.getCause());
+				}
+			}
+			if(error != null) {
+				throw error;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while creating collections " + colNames, e);
+		}
+		finally {
+			ExecutorUtil.shutdownAndAwaitTermination(executor);
+		}
+	}
+
+	/**
+	 * Submits an async collection creation, and waits until it's ready
+	 * 
+	 * @return the time it took, in ms
+	 */
+	private long createCollectionAsync(String colName, int numShards, int replicationFactor) throws Exception {
+		long start = System.nanoTime();
+		CloudSolrClient client = solrCloud.getSolrClient();
+		
+		String asyncId = "create-" + colName + "-" + start;
+		CollectionAdminRequest.createCollection(colName, configName, numShards, replicationFactor)
+				.setMaxShardsPerNode(maxShardsPerNode(numShards, replicationFactor))
+				.setProperties(indexStorage.coreProperties())
+				.processAsync(asyncId, client);
+		
+		long deadline = start + TimeUnit.SECONDS.toNanos(collectionsTimeout);
 		try {
-			Create createCollection = CollectionAdminRequest.createCollection(colName, configName, numShards, replicationFactor);
-			createCollection.process(solrCloud.getSolrClient());
+			while (true) {
+				try {
+					// returns as soon as the state in ZK matches: this doesn't wait for the whole second
+					client.waitForState(colName, 1, TimeUnit.SECONDS, 
+							(liveNodes, state) -> isReady(liveNodes, state, numShards * replicationFactor));
+					return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				}
+				catch (TimeoutException e) {
+					// not ready yet: don't wait until the timeout if the overseer already failed
+					RequestStatusState status = CollectionAdminRequest.requestStatus(asyncId).process(client).getRequestStatus();
+					if (status == RequestStatusState.FAILED) {
+						throw new IllegalStateException("Creation of collection " + colName + " " + status.getKey());
+					}
+					if (System.nanoTime() > deadline) {
+						throw new IllegalStateException("Collection " + colName + " not ready after " + collectionsTimeout + " s: " 
+								+ client.getZkStateReader().getClusterState().getCollectionOrNull(colName));
+					}
+				}
+			}
 		}
-		catch (SolrServerException | IOException e) {
-			throw new MojoExecutionException("Can't create solr collection " + colName, e);
+		finally {
+			try {
+				CollectionAdminRequest.deleteAsyncId(asyncId).process(client);
+			}
+			catch (SolrServerException | IOException e) {
+				//only cleans the status stored by the overseer: not worth failing
+			}
 		}
-		log.debug("Collection " + colName + " created");
+	}
+
+	/**
+	 * @return the number of replicas each node must accept (Solr allows only one by default), so that there can be
+	 * more shards than nodes
+	 */
+	private int maxShardsPerNode(int numShards, int replicationFactor) {
+		int nodes = Math.max(1, solrCloud.getJettySolrRunners().size());
+		return (numShards * replicationFactor + nodes - 1) / nodes;
+	}
+
+	/**
+	 * @return true if the collection has all its replicas, all active, and an active leader for each shard
+	 */
+	private static boolean isReady(Set<String> liveNodes, DocCollection state, int expectedReplicas) {
+		if (state == null || state.getReplicas().size() < expectedReplicas) {
+			return false;
+		}
+		for (Replica replica : state.getReplicas()) {
+			if (!replica.isActive(liveNodes)) {
+				return false;
+			}
+		}
+		for (Slice slice : state.getActiveSlices()) {
+			Replica leader = slice.getLeader();
+			if (leader == null || !leader.isActive(liveNodes)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -194,7 +1260,7 @@ public class SolrCloudManager {
 		try {
 			if (solrCloud != null) {
 				log.debug("Will shutdown");
-				solrCloud.shutdown();
+				timer.run("solr shutdown", solrCloud::shutdown);
 				log.debug("Shutdown done");
 			}
 		}
@@ -204,11 +1270,17 @@ public class SolrCloudManager {
 		}
 		finally {
 			try {
-				zkTestServer.shutdown();
+				timer.run("zookeeper shutdown", zkTestServer::shutdown);
 			}
-			catch (IOException | InterruptedException e) {
+			catch (Exception e) {
 				throw new MojoExecutionException("Can't stop zookeeper", e);
 			}
+			finally {
+				if (memoryZkDir != null) {
+					FileUtil.delete(log, memoryZkDir);
+					memoryZkDir = null;
+				}
+			}
 		}
 	}
 
@@ -231,7 +1303,8 @@ public class SolrCloudManager {
 	}
 	
 	/**
-	 * Removes the dir
+	 * Removes the dir: it's moved to the trash right away, and deleted in the background (see {@link Trash}), or
+	 * deleted right away if there's no trash dir
 	 * 
 	 * @param log maven log
 	 * @param dir dir to clean
@@ -240,8 +1313,12 @@ public class SolrCloudManager {
 		log.debug("About to clean");
 		if (dir != null && Files.exists(dir)) {
 			log.debug("Will clean " + dir);
-			FileUtil.delete(log, dir);
-			log.debug(dir + " deleted");
+			if (trashDir == null) {
+				FileUtil.delete(log, dir);
+			}
+			else {
+				Trash.delete(log, dir, trashDir);
+			}
 		}
 	}
 }
@@ -0,0 +1,287 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Entry point of the JVM forked to run SolrCloud outside of the Maven JVM (see {@link ForkedSolrCloudManager}).
+ *
+ * <p>
+ * It starts the cluster described by the properties file given as first argument (see
+ * {@link SolrCloudManager#toProperties()}), reports to the parent on the port given as second argument, then
+ * executes the commands it receives on its control port.
+ * </p>
+ * <p>
+ * The protocol is line based, on the loopback interface: one command per connection, prefixed by the token given
+ * by the parent (and kept in the state file), answered by a single line starting with {@value #OK} or {@value #ERROR}.
+ * Connections are served in parallel, so that queries ({@value #PING}, {@value #URLS}...) are answered while a long
+ * command runs.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class SolrCloudProcess {
+	static final String OK = "OK";
+	static final String ERROR = "ERROR";
+
+	static final String PING = "PING";
+	static final String UPLOAD = "UPLOAD";
+	/**
+	 * CREATE numShards replicationFactor col1,col2
+	 */
+	static final String CREATE = "CREATE";
+	static final String NODES = "NODES";
+	/**
+	 * SAVE_TEMPLATE key templateDir (the rest of the line)
+	 */
+	static final String SAVE_TEMPLATE = "SAVE_TEMPLATE";
+	/**
+	 * RESTART_NODE index downMillis, answered by the URL of the node
+	 */
+	static final String RESTART_NODE = "RESTART_NODE";
+	/**
+	 * EXPIRE_SESSION index, answered by the URL of the node
+	 */
+	static final String EXPIRE_SESSION = "EXPIRE_SESSION";
+	/**
+	 * RESTART_ZK downMillis
+	 */
+	static final String RESTART_ZK = "RESTART_ZK";
+	/**
+	 * ADD_NODES count and REMOVE_NODES count, answered by the URLs of the nodes (comma separated)
+	 */
+	static final String ADD_NODES = "ADD_NODES";
+	static final String REMOVE_NODES = "REMOVE_NODES";
+	/**
+	 * ADD_REPLICAS perShard, and REBALANCE, answered by the number of replicas added or moved
+	 */
+	static final String ADD_REPLICAS = "ADD_REPLICAS";
+	static final String REBALANCE = "REBALANCE";
+	/**
+	 * answered by the URLs of the running nodes (comma separated): they change with ADD_NODES and REMOVE_NODES
+	 */
+	static final String URLS = "URLS";
+	static final String STOP = "STOP";
+
+	/**
+	 * config property: nodes to restart from a template (see {@link #formatNodes(Map)})
+	 */
+	static final String TEMPLATE_NODES = "templateNodes";
+	/**
+	 * config and state property: secret that prefixes each command, so that only who can read the state file drives
+	 * the cluster
+	 */
+	static final String CONTROL_TOKEN = "controlToken";
+
+	/**
+	 * max number of ms to wait for the command, once a client is connected
+	 */
+	private static final int READ_TIMEOUT = 10_000;
+
+	static final String STATE_PID = "pid";
+	static final String STATE_CONTROL_PORT = "controlPort";
+	static final String STATE_ZK_ADDRESS = "zkAddress";
+	static final String STATE_JETTY_URLS = "jettyUrls";
+
+	private SolrCloudProcess() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path configFile = Paths.get(args[0]);
+		int callbackPort = Integer.parseInt(args[1]);
+
+		Properties config = new Properties();
+		try (InputStream in = Files.newInputStream(configFile)) {
+			config.load(in);
+		}
+		Files.delete(configFile);
+		String token = (String) config.remove(CONTROL_TOKEN);
+
+		Log log = new SystemStreamLog();
+		log.info("JVM options: " + ManagementFactory.getRuntimeMXBean().getInputArguments());
+		SolrCloudManager manager = new SolrCloudManager(config);
+
+		try (ServerSocket control = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			String ready;
+			try {
+				String templateNodes = config.getProperty(TEMPLATE_NODES);
+				if (templateNodes == null) {
+					manager.startCluster(log);
+				}
+				else {
+					manager.startClusterFromTemplate(log, parseNodes(templateNodes));
+				}
+				ready = OK
+						+ " " + STATE_PID + "=" + ManagementFactory.getRuntimeMXBean().getName().split("@")[0]
+						+ " " + STATE_CONTROL_PORT + "=" + control.getLocalPort()
+						+ " " + STATE_ZK_ADDRESS + "=" + manager.getZkAddress()
+						+ " " + STATE_JETTY_URLS + "=" + String.join(",", manager.getJettyUrls());
+			}
+			catch (MojoExecutionException | RuntimeException e) {
+				log.error(e);
+				ready = ERROR + " " + oneLine(e);
+			}
+
+			try (Socket callback = new Socket(InetAddress.getLoopbackAddress(), callbackPort)) {
+				answer(callback, ready);
+			}
+			if (ready.startsWith(ERROR)) {
+				System.exit(1);
+			}
+
+			serve(log, manager, control, token);
+		}
+		System.exit(0);
+	}
+
+	private static void serve(Log log, SolrCloudManager manager, ServerSocket control, String token) throws IOException {
+		ExecutorService handlers = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "solr-control");
+			thread.setDaemon(true);
+			return thread;
+		});
+		while (!control.isClosed()) {
+			Socket socket;
+			try {
+				socket = control.accept();
+			}
+			catch (SocketException e) {
+				// closed by STOP
+				break;
+			}
+			handlers.execute(() -> handle(log, manager, control, token, socket));
+		}
+	}
+
+	private static void handle(Log log, SolrCloudManager manager, ServerSocket control, String token, Socket socket) {
+		try (Socket client = socket) {
+			client.setSoTimeout(READ_TIMEOUT);
+			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+			String line = in.readLine();
+			if (line == null) {
+				return;
+			}
+			String[] tokenAndCommand = line.split(" ", 2);
+			if (tokenAndCommand.length < 2
+					|| !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), tokenAndCommand[0].getBytes(StandardCharsets.UTF_8))) {
+				log.warn("Command rejected: invalid token");
+				answer(client, ERROR + " Invalid token");
+				return;
+			}
+			answer(client, execute(log, manager, tokenAndCommand[1]));
+			if (tokenAndCommand[1].equals(STOP)) {
+				control.close();
+			}
+		}
+		catch (IOException e) {
+			log.warn("Can't read or answer a command", e);
+		}
+	}
+
+	private static String execute(Log log, SolrCloudManager manager, String line) {
+		String[] command = line.split(" ");
+		try {
+			switch (command[0]) {
+				case PING:
+					return OK;
+				case UPLOAD:
+					manager.uploadConfig(log);
+					return OK;
+				case CREATE:
+					manager.createCollections(log, Arrays.asList(command[3].split(",")),
+							Integer.parseInt(command[1]), Integer.parseInt(command[2]));
+					return OK;
+				case NODES:
+					return OK + " " + formatNodes(manager.getNodePorts());
+				case SAVE_TEMPLATE:
+					manager.saveTemplate(log, new ClusterTemplates(Paths.get(line.split(" ", 3)[2])), command[1]);
+					return OK;
+				case RESTART_NODE:
+					return OK + " " + manager.restartNode(log, Integer.parseInt(command[1]), Long.parseLong(command[2]));
+				case EXPIRE_SESSION:
+					return OK + " " + manager.expireZkSession(log, Integer.parseInt(command[1]));
+				case RESTART_ZK:
+					manager.restartZk(log, Long.parseLong(command[1]));
+					return OK;
+				case ADD_NODES:
+					return OK + " " + String.join(",", manager.getScaler().addNodes(log, Integer.parseInt(command[1])));
+				case REMOVE_NODES:
+					return OK + " " + String.join(",", manager.getScaler().removeNodes(log, Integer.parseInt(command[1])));
+				case ADD_REPLICAS:
+					return OK + " " + manager.getScaler().addReplicas(log, Integer.parseInt(command[1]));
+				case REBALANCE:
+					return OK + " " + manager.getScaler().rebalance(log);
+				case URLS:
+					return OK + " " + String.join(",", manager.getJettyUrls());
+				case STOP:
+					manager.stopCluster(log);
+					return OK;
+				default:
+					return ERROR + " Unknown command " + command[0];
+			}
+		}
+		catch (MojoExecutionException | RuntimeException e) {
+			log.error(e);
+			return ERROR + " " + oneLine(e);
+		}
+	}
+
+	private static void answer(Socket socket, String answer) throws IOException {
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+		out.write(answer);
+		out.write('\n');
+		out.flush();
+	}
+
+	private static String oneLine(Exception e) {
+		return String.valueOf(e.getMessage()).replace('\n', ' ').replace('\r', ' ');
+	}
+
+	static String formatNodes(Map<String, Integer> nodePorts) {
+		StringBuilder nodes = new StringBuilder();
+		for (Entry<String, Integer> node : nodePorts.entrySet()) {
+			if (nodes.length() > 0) {
+				nodes.append(',');
+			}
+			nodes.append(node.getKey()).append('=').append(node.getValue());
+		}
+		return nodes.toString();
+	}
+
+	static Map<String, Integer> parseNodes(String nodes) {
+		Map<String, Integer> nodePorts = new TreeMap<>();
+		if (!nodes.isEmpty()) {
+			for (String node : nodes.split(",")) {
+				String[] nameAndPort = node.split("=");
+				nodePorts.put(nameAndPort[0], Integer.parseInt(nameAndPort[1]));
+			}
+		}
+		return nodePorts;
+	}
+}
@@ -0,0 +1,28 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.Locale;
+
+/**
+ * How Solr is started
+ *
+ * @author BorisNaguet
+ *
+ */
+public enum SolrMode {
+	/**
+	 * a SolrCloud cluster: ZooKeeper and Jetty nodes (see {@link SolrCloudManager})
+	 */
+	CLOUD,
+	/**
+	 * a single CoreContainer in this JVM, served over HTTP, without ZooKeeper nor Jetty (see {@link EmbeddedSolrManager})
+	 */
+	EMBEDDED;
+
+	/**
+	 * @param name cloud or embedded (case insensitive)
+	 * @throws IllegalArgumentException if it's none of them
+	 */
+	public static SolrMode of(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+}
@@ -4,19 +4,34 @@ import static org.apache.maven.plugins.annotations.LifecyclePhase.PRE_INTEGRATIO
 import static org.apache.solr.cloud.MiniSolrCloudCluster.DEFAULT_CLOUD_SOLR_XML;
 
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.mojo.cassandra.ConsoleScanner;
+import org.slf4j.LoggerFactory;
 
+import io.github.borisnaguet.solr.maven.metrics.MetricsCollector;
+import io.github.borisnaguet.solr.maven.metrics.MetricsFormat;
 import io.github.borisnaguet.solr.maven.util.FileUtil;
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
+import io.github.borisnaguet.solr.maven.util.Trash;
 
 /**
  * Starts a new SolrCloud instance
@@ -24,7 +39,7 @@ import io.github.borisnaguet.solr.maven.util.FileUtil;
  * @author BorisNaguet
  *
  */
-@Mojo(name = "start-solrcloud", defaultPhase = PRE_INTEGRATION_TEST)
+@Mojo(name = "start-solrcloud", defaultPhase = PRE_INTEGRATION_TEST, threadSafe = true)
 public class StartSolrCloudMojo extends AbstractSolrMojo {
 	
 //	@Parameter(readonly = true, defaultValue = "${plugin.artifacts}")
@@ -39,15 +54,130 @@ public class StartSolrCloudMojo extends AbstractSolrMojo {
 	@Parameter(property = "solr.base.dir")
 	private String baseDir;
 	
+	/**
+	 * cloud (ZooKeeper and Jetty nodes), or embedded: a single CoreContainer in the Maven JVM, with one core per collection, 
+	 * served over HTTP on solr.embedded.port. Much faster to start, but without ZooKeeper nor Collections API.
+	 */
+	@Parameter(property = "solr.mode", defaultValue = "cloud")
+	private String mode;
+	
+	/**
+	 * HTTP port of embedded Solr (mode=embedded): 0 to pick a free one
+	 */
+	@Parameter(property = "solr.embedded.port", defaultValue = "0")
+	private int embeddedPort;
+	
+	/**
+	 * ZooKeeper port: 0 to pick a free one (Solr nodes always get free ports). 
+	 * The actual address is published in the solrcloud.* project properties, and in target/solrcloud.properties
+	 */
 	@Parameter(property = "solr.zk.port", defaultValue = "9983")
 	private int zkPort;
 	
 	@Parameter(property = "solr.num.servers", defaultValue = "1")
 	private int numServers;
 	
+	/**
+	 * Where ZooKeeper keeps its data: disk (with fsync on every write), nosync (on disk, without fsync), 
+	 * or memory (on /dev/shm if available, without fsync). Durability doesn't matter for a throwaway cluster.
+	 */
+	@Parameter(property = "solr.zk.storage", defaultValue = "disk")
+	private String zkStorage;
+	
+	/**
+	 * Lucene directory of the cores of the collections created: config (the one declared by solrconfig.xml), 
+	 * ram (in the heap, for tests), mmap (like in production) or nrtcaching. 
+	 * Applied as core properties: the config must use ${solr.directoryFactory} and ${solr.lock.type}, like the default one.
+	 */
+	@Parameter(property = "solr.index.storage", defaultValue = "config")
+	private String indexStorage;
+	
+	/**
+	 * Put the data dir (Solr homes and indexes, and ZK data) on a RAM-backed file system (/dev/shm) when there's one, 
+	 * instead of solr.base.dir or target. Falls back to disk otherwise.
+	 */
+	@Parameter(property = "solr.data.memory", defaultValue = "false")
+	private boolean dataInMemory;
+	
+	/**
+	 * Max number of seconds to wait for all the Solr servers to register in ZooKeeper 
+	 * (and, with solr.lazy, to hold a connection while Solr starts)
+	 */
+	@Parameter(property = "solr.nodes.timeout", defaultValue = "60")
+	private int nodesTimeout;
+	
+	/**
+	 * Max number of seconds to wait for each collection to be ready (all its replicas active, and a leader for each shard), 
+	 * once created or restored from a template
+	 */
+	@Parameter(property = "solr.collections.timeout", defaultValue = "180")
+	private int collectionsTimeout;
+	
+	/**
+	 * Min and max number of threads of the Jetty of each node: requests beyond the max wait in Jetty's queue
+	 */
+	@Parameter(property = "solr.jetty.threads.min", defaultValue = "8")
+	private int jettyMinThreads;
+	
+	@Parameter(property = "solr.jetty.threads.max", defaultValue = "10000")
+	private int jettyMaxThreads;
+	
+	/**
+	 * Number of threads of the Jetty of each node accepting connections, and selecting the ones with data to read 
+	 * (-1 to let Jetty pick them from the number of CPUs)
+	 */
+	@Parameter(property = "solr.jetty.acceptors", defaultValue = "-1")
+	private int jettyAcceptors;
+	
+	@Parameter(property = "solr.jetty.selectors", defaultValue = "-1")
+	private int jettySelectors;
+	
+	/**
+	 * Max number of connections to the Jetty of each node waiting to be accepted (0 for the OS default)
+	 */
+	@Parameter(property = "solr.jetty.accept.queue", defaultValue = "0")
+	private int jettyAcceptQueueSize;
+	
+	/**
+	 * Connections of each node to each other node, and in total, for distributed requests (shard handler of the default solr.xml)
+	 */
+	@Parameter(property = "solr.shard.connections.host", defaultValue = "20")
+	private int shardMaxConnectionsPerHost;
+	
+	@Parameter(property = "solr.shard.connections.max", defaultValue = "10000")
+	private int shardMaxConnections;
+	
+	/**
+	 * Max number of threads of each node sending distributed requests (shard handler of the default solr.xml)
+	 */
+	@Parameter(property = "solr.shard.threads.max", defaultValue = "2147483647")
+	private int shardMaxPoolSize;
+	
+	/**
+	 * Connections of the clients of the plugin (index-data, bench...) to each node, and in total
+	 */
+	@Parameter(property = "solr.client.connections.host", defaultValue = "10000")
+	private int clientMaxConnectionsPerHost;
+	
+	@Parameter(property = "solr.client.connections.max", defaultValue = "10000")
+	private int clientMaxConnections;
+	
 	@Parameter(property = "solr.upload.config", defaultValue = "true")
 	private boolean uploadConfig;
 
+	/**
+	 * When the config already exists in ZK (on a daemon for example), only upload the files that changed, 
+	 * and delete the ones that were removed (instead of failing). Files written by Solr at runtime are kept
+	 */
+	@Parameter(property = "solr.upload.incremental", defaultValue = "false")
+	private boolean incrementalUpload;
+	
+	/**
+	 * Reload the collections using the config when an incremental upload changed it
+	 */
+	@Parameter(property = "solr.upload.reload", defaultValue = "true")
+	private boolean reloadOnConfigChange;
+
 	@Parameter(property = "solr.config.name", defaultValue = "solrcloud-config")
 	private String configName;
 
@@ -72,6 +202,88 @@ public class StartSolrCloudMojo extends AbstractSolrMojo {
 	@Parameter(property = "solr.keep.running", defaultValue = "false")
 	private boolean keepRunning;
 	
+	/**
+	 * Start from a snapshot of an already initialized cluster (config uploaded and collections created), 
+	 * when there's one matching the configuration. 
+	 * The first start with a given configuration saves that snapshot.
+	 */
+	@Parameter(property = "solr.template", defaultValue = "false")
+	private boolean useTemplate;
+	
+	/**
+	 * Where cluster snapshots are stored (see useTemplate)
+	 */
+	@Parameter(property = "solr.template.dir", defaultValue = "${user.home}/.solr-maven-plugin/templates")
+	private String templateDir;
+	
+	/**
+	 * Share the cluster between all the modules of the build that start one with the same settings
+	 * (ports, chroot, config, collections, number of servers...): the first start launches it, next ones attach to it.
+	 * It's really stopped by the last module that uses it.
+	 */
+	@Parameter(property = "solr.shared", defaultValue = "false")
+	private boolean shared;
+	
+	/**
+	 * Run the cluster in a background JVM that keeps running after the build: a later start with the same settings
+	 * attaches to it instead of starting a new one, and stop-solrcloud leaves it running (unless solr.daemon.kill is set).
+	 * Its state is written in solr.daemon.state, and its logs next to it.
+	 */
+	@Parameter(property = "solr.daemon", defaultValue = "false")
+	private boolean daemon;
+	
+	/**
+	 * Run the cluster in a separate JVM, stopped by stop-solrcloud (or when the build ends): ZooKeeper and the nodes 
+	 * don't compete with the build for heap, and their GCs don't stall it. See jvmArgs. Its logs are written in target.
+	 */
+	@Parameter(property = "solr.fork", defaultValue = "false")
+	private boolean fork;
+	
+	/**
+	 * Options of the JVM of the cluster, when it's forked or run as a daemon, separated by spaces (heap, GC, -XX flags...), 
+	 * like -Xmx2g -XX:+UseG1GC
+	 */
+	@Parameter(property = "solr.jvm.args")
+	private String jvmArgs;
+	
+	/**
+	 * Don't start Solr until something uses it: only bind the ZK port (or solr.embedded.port in embedded mode), 
+	 * and start the cluster (on free ports) on the first connection to it, which is held until the cluster is ready. 
+	 * index-data and bench start it too. If nothing uses it, it's never started.
+	 */
+	@Parameter(property = "solr.lazy", defaultValue = "false")
+	private boolean lazy;
+
+	/**
+	 * Poll /admin/metrics of each node in the background (heap, request handlers, caches), and write the samples
+	 * in solr.metrics.output, until stop-solrcloud, which logs a summary. Not used with lazy (it would start Solr).
+	 */
+	@Parameter(property = "solr.metrics", defaultValue = "false")
+	private boolean metrics;
+
+	/**
+	 * Number of seconds between two polls of the metrics
+	 */
+	@Parameter(property = "solr.metrics.interval", defaultValue = "5")
+	private int metricsInterval;
+
+	/**
+	 * How the metrics are written: jsonl (a JSON object per node and poll) or csv (a line per metric)
+	 */
+	@Parameter(property = "solr.metrics.format", defaultValue = "jsonl")
+	private String metricsFormat;
+
+	/**
+	 * Where the metrics are written, in a file named after the execution id of start-solrcloud
+	 */
+	@Parameter(property = "solr.metrics.output", defaultValue = "${project.build.directory}/solr-metrics")
+	private String metricsDir;
+
+	/**
+	 * times the phases of this start
+	 */
+	private PhaseTimer timer;
+	
 	protected boolean isKeepRunning() {
 		return keepRunning;
 	}
@@ -83,77 +295,81 @@ public class StartSolrCloudMojo extends AbstractSolrMojo {
 				getLog().info("solr.skip=true - not starting Solr");
 				return;
 			}
+			// ports may still be used by a cluster stopping in the background
+			awaitAsyncStops();
+			
+			timer = new PhaseTimer();
+			if(useTemplate && zkStorage() == ZkStorage.MEMORY) {
+				getLog().warn("Cluster templates need ZooKeeper data in the data dir: not used with zkStorage=memory");
+				useTemplate = false;
+			}
+			if(solrMode() == SolrMode.EMBEDDED && (useTemplate || daemon || fork)) {
+				getLog().warn("Embedded Solr runs in the Maven JVM, from its conf dir: templates, daemon and fork are not used");
+				useTemplate = false;
+				daemon = false;
+				fork = false;
+			}
+			if(lazy && daemon) {
+				getLog().warn("A lazy Solr is started by the first connection to this build: daemon is not used");
+				daemon = false;
+			}
 			
 			//no defaultValue possible in Maven for Lists
 			if(collectionsToCreate.isEmpty()) {
 				collectionsToCreate.add("default");
 			}
 			
-			// 1- Create the temp dir (for data)
-			boolean isDefault = baseDir == null;
-			Path dataDir = isDefault ? Paths.get(defaultBaseDir) : Paths.get(project.getBasedir().getAbsolutePath(), baseDir);
-			try {
-				Files.createDirectories(dataDir);
-			}
-			catch (IOException e) {
-				throw new MojoExecutionException("Error while creating parent dirs from " + dataDir, e);
+			// 1- Extract default config files (if needed), to upload them later in ZK
+			Path confDir = Paths.get(confToUploadDir);
+			if(! confDir.isAbsolute()) {
+				confDir = Paths.get(project.getBasedir().getAbsolutePath(), confToUploadDir);
 			}
-			//If no baseDir is defined, we use the default, but we create a new temp dir for every start
-			if(isDefault) {
+			// in the background, while ZK starts, unless the content of the conf is needed to know which cluster to start
+			Path finalConfDir = confDir;
+			CompletableFuture<Boolean> confExtraction = CompletableFuture.supplyAsync(() -> {
 				try {
-					dataDir = Files.createTempDirectory(dataDir, "data-");
+					return timer.call("extract conf", () -> uploadConfig && extractDefaultConf(finalConfDir));
 				}
-				catch (IOException e) {
-					throw new MojoExecutionException("Error while creating temp dir in " + dataDir, e);
+				catch (MojoExecutionException e) {
+					throw new CompletionException(e);
 				}
+			});
+			if(shared || daemon || useTemplate) {
+				join(confExtraction);
 			}
 			
-			// 2- Init & start Solr cloud (with ZK)
-			Path confDir = Paths.get(confToUploadDir);
-			if(! confDir.isAbsolute()) {
-				confDir = Paths.get(project.getBasedir().getAbsolutePath(), confToUploadDir);
-			}
 			//TODO: get solrXml from config (+ option to upload it?)
 			String solrXml = uploadConfig ? DEFAULT_CLOUD_SOLR_XML : null;
-			SolrCloudManager cloudManager = new SolrCloudManager(dataDir, confDir, numServers, zkPort, solrXml, configName, chroot);
 			
-			if(Files.notExists(dataDir) || FileUtil.isEmptyDir(dataDir)) {
-				cloudManager.canDeleteDataDir();
+			// 2- Start Solr cloud (with ZK), or attach to the one started by another module
+			SolrCloudManager cloudManager;
+			String clusterKey = shared || daemon ? clusterKey(confDir, solrXml) : null;
+			SharedClusters.ClusterStarter starter;
+			if(daemon) {
+				starter = () -> startOrAttachDaemon(finalConfDir, confExtraction, solrXml, clusterKey);
 			}
-	
-			cloudManager.startCluster(getLog());
-			
-			// 3- Upload some config files in ZK
-			if(uploadConfig) {
-				//if the dir is already there, we don't copy anything in it
-				if(Files.notExists(confDir) || FileUtil.isEmptyDir(confDir)) {
-					cloudManager.canDeleteConfDir();
-					
-					getLog().info("Will extract default conf to " + confDir);
-					
-					FileUtil.extractFileFromClasspath("conf/_rest_managed.json", confDir.resolve("_rest_managed.json"));
-					FileUtil.extractFileFromClasspath("conf/currency.xml", confDir.resolve("currency.xml"));
-					FileUtil.extractFileFromClasspath("conf/managed-schema", confDir.resolve("managed-schema"));
-					FileUtil.extractFileFromClasspath("conf/protwords.txt", confDir.resolve("protwords.txt"));
-					FileUtil.extractFileFromClasspath("conf/solrconfig.xml", confDir.resolve("solrconfig.xml"));
-					FileUtil.extractFileFromClasspath("conf/stopwords.txt", confDir.resolve("stopwords.txt"));
-					FileUtil.extractFileFromClasspath("conf/synonyms.txt", confDir.resolve("synonyms.txt"));
-					FileUtil.extractFileFromClasspath("conf/lang/stopwords_en.txt", confDir.resolve("lang/stopwords_en.txt"));
-				}
-				
-				getLog().info("Will upload conf from " + confDir + "to ZK config: " + configName );
-				cloudManager.uploadConfig(getLog());
+			else if(lazy) {
+				starter = () -> startLazy(finalConfDir, confExtraction, solrXml);
 			}
-	
-			// 4- Create a collection 
-			if(createCols) {
-				for (String col : collectionsToCreate) {
-					cloudManager.createCollection(getLog(), col, numShards, replicationFactor);
-				}
+			else {
+				starter = () -> startCloud(finalConfDir, confExtraction, solrXml, null, false);
+			}
+			if(shared) {
+				cloudManager = SharedClusters.acquire(getLog(), clusterKey, starter);
+				session.getPluginContext(plugin, project).put(SHARED_KEY_CXT, clusterKey);
+			}
+			else {
+				cloudManager = starter.start();
+				session.getPluginContext(plugin, project).remove(SHARED_KEY_CXT);
 			}
 			
-			// 5- set in MavenSession, to be used later by other Mojos (like StopSolrCloud)
+			// 3- set in MavenSession, to be used later by other Mojos (like StopSolrCloud)
 			session.getPluginContext(plugin, project).put(CLOUD_MANAGER_CXT, cloudManager);
+			publish(cloudManager, "Solr started");
+			if(metrics) {
+				startMetrics(cloudManager);
+			}
+			reportTimings(timer);
 			
 			if(isKeepRunning() && settings.getInteractiveMode()) {
 				ConsoleScanner consoleScanner = new ConsoleScanner();
@@ -173,4 +389,301 @@ public class StartSolrCloudMojo extends AbstractSolrMojo {
 			throw e;
 		}
 	}
+
+	/**
+	 * @return the effective configuration of the cluster: starts with the same key give the same cluster
+	 */
+	private String clusterKey(Path confDir, String solrXml) throws MojoExecutionException {
+		// a daemon with incremental upload gets the new config when we attach to it: its content doesn't matter
+		Path keyConfDir = daemon && incrementalUpload ? null : confDir;
+		return String.join(":", mode, String.valueOf(embeddedPort), String.valueOf(lazy), String.valueOf(zkPort), zkStorage, String.valueOf(baseDir), String.valueOf(dataInMemory), String.valueOf(createCols), String.valueOf(incrementalUpload),
+				String.valueOf(fork), String.join(" ", jvmArgs()), poolTuning().toString(), ClusterTemplates.key(keyConfDir, solrXml, configName, chroot, collectionsToCreate, numServers, numShards, replicationFactor, indexStorage()));
+	}
+	
+	private PoolTuning poolTuning() {
+		PoolTuning tuning = new PoolTuning();
+		tuning.setJettyThreads(jettyMinThreads, jettyMaxThreads);
+		tuning.setJettyAcceptors(jettyAcceptors, jettySelectors, jettyAcceptQueueSize);
+		tuning.setShardHandler(shardMaxConnectionsPerHost, shardMaxConnections, shardMaxPoolSize);
+		tuning.setClient(clientMaxConnectionsPerHost, clientMaxConnections);
+		return tuning;
+	}
+	
+	private SolrCloudManager startOrAttachDaemon(Path confDir, CompletableFuture<Boolean> confExtraction, String solrXml, String clusterKey) 
+			throws MojoExecutionException {
+		long start = System.nanoTime();
+		ForkedSolrCloudManager running = timer.call("daemon attach", () -> ForkedSolrCloudManager.attach(getLog(), daemonStateFile.toPath(), clusterKey));
+		if(running != null) {
+			getLog().info("Attached to Solr daemon " + running.getPid() + " (ZK on " + running.getZkAddress() + ") in " 
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+			running.setTimer(timer);
+			if(uploadConfig && incrementalUpload) {
+				timer.run("upload config", () -> running.uploadConfig(getLog()));
+			}
+			return running;
+		}
+		return startCloud(confDir, confExtraction, solrXml, clusterKey, false);
+	}
+	
+	/**
+	 * @return where the data dirs are created when solr.base.dir is not set: next to the state file for a daemon, 
+	 * that outlives the build directory
+	 */
+	private Path defaultBaseDir(String daemonKey) {
+		return daemonKey != null ? daemonStateFile.toPath().resolveSibling("solrcloud") : Paths.get(defaultBaseDir);
+	}
+	
+	/**
+	 * Binds the published port: the cluster is started by {@link #startCloud} on the first connection to it
+	 */
+	private SolrCloudManager startLazy(Path confDir, CompletableFuture<Boolean> confExtraction, String solrXml) throws MojoExecutionException {
+		boolean embedded = solrMode() == SolrMode.EMBEDDED;
+		LazySolrCloudManager lazyManager = new LazySolrCloudManager(confDir, chroot, embedded, 
+				() -> startCloud(confDir, confExtraction, solrXml, null, true), nodesTimeout, getLog());
+		lazyManager.setTimer(timer);
+		if(join(confExtraction)) {
+			lazyManager.canDeleteConfDir();
+		}
+		timer.run("lazy bind", () -> lazyManager.bind(embedded ? embeddedPort : zkPort));
+		return lazyManager;
+	}
+	
+	/**
+	 * Starts the cluster, uploads the config while the nodes are starting, then creates the collections once they're all live
+	 * 
+	 * @param confExtraction extraction of the default conf (true if it was extracted), maybe still running
+	 * @param daemonKey effective configuration of the cluster if it must run as a daemon, null to run it in this JVM (or in a JVM forked for this build, see fork)
+	 * @param freePorts true to pick free ports for ZK (or HTTP in embedded mode), instead of the configured ones (bound by a lazy proxy)
+	 */
+	private SolrCloudManager startCloud(Path confDir, CompletableFuture<Boolean> confExtraction, String solrXml, String daemonKey, boolean freePorts) 
+			throws MojoExecutionException {
+		// 1- Create the temp dir (for data)
+		boolean isDefault = baseDir == null;
+		Path dataDir = timer.call("data dir", () -> createDataDir(isDefault ? defaultBaseDir(daemonKey) : Paths.get(project.getBasedir().getAbsolutePath(), baseDir), isDefault));
+		// what a previous build didn't have time to delete
+		Path trashDir = target.toPath().resolve(Trash.TRASH_DIR);
+		Trash.resume(getLog(), trashDir);
+		
+		// 2- Init Solr cloud manager
+		SolrCloudManager localManager = solrMode() == SolrMode.EMBEDDED 
+				? new EmbeddedSolrManager(dataDir, confDir, configName, freePorts ? 0 : embeddedPort)
+				: new SolrCloudManager(dataDir, confDir, numServers, freePorts ? 0 : zkPort, solrXml, configName, chroot);
+		localManager.setNodesTimeout(nodesTimeout);
+		localManager.setCollectionsTimeout(collectionsTimeout);
+		localManager.setIncrementalUpload(incrementalUpload);
+		localManager.setReloadOnConfigChange(reloadOnConfigChange);
+		localManager.setZkStorage(zkStorage());
+		localManager.setIndexStorage(indexStorage());
+		localManager.setPoolTuning(poolTuning());
+		localManager.setTrashDir(trashDir);
+		
+		boolean emptyDataDir = Files.notExists(dataDir) || FileUtil.isEmptyDir(dataDir);
+		if(emptyDataDir) {
+			localManager.canDeleteDataDir();
+		}
+		SolrCloudManager cloudManager = daemonKey != null || fork ? fork(localManager, daemonKey) : localManager;
+		cloudManager.setTimer(timer);
+		
+		// 3- Start from a template (with config uploaded & collections created) if we have one
+		boolean withTemplate = useTemplate && emptyDataDir && uploadConfig && createCols;
+		ClusterTemplates templates = withTemplate ? new ClusterTemplates(Paths.get(templateDir)) : null;
+		String templateKey = withTemplate 
+				? ClusterTemplates.key(confDir, solrXml, configName, chroot, collectionsToCreate, numServers, numShards, replicationFactor, indexStorage()) 
+				: null;
+		Map<String, Integer> templateNodes = withTemplate 
+				? timer.call("template restore", () -> templates.restore(getLog(), templateKey, dataDir)) 
+				: null;
+		
+		if(templateNodes != null) {
+			cloudManager.startClusterFromTemplate(getLog(), templateNodes);
+			if(join(confExtraction)) {
+				cloudManager.canDeleteConfDir();
+			}
+			return cloudManager;
+		}
+		
+		// 4- Upload config files in ZK: it only needs ZK, so it's done while the nodes are starting
+		SolrCloudManager.ZkTask upload = () -> {
+			join(confExtraction);
+			getLog().info("Will upload conf from " + confDir + " to ZK config: " + configName);
+			timer.run("upload config", () -> cloudManager.uploadConfig(getLog()));
+		};
+		cloudManager.startCluster(getLog(), uploadConfig ? upload : null);
+		if(join(confExtraction)) {
+			cloudManager.canDeleteConfDir();
+		}
+		
+		// 5- Create the collections (all at once)
+		if(createCols) {
+			timer.run("create collections", () -> cloudManager.createCollections(getLog(), collectionsToCreate, numShards, replicationFactor));
+		}
+		
+		if(templates != null && !templates.exists(templateKey)) {
+			timer.run("template save", () -> cloudManager.saveTemplate(getLog(), templates, templateKey));
+		}
+		return cloudManager;
+	}
+
+	/**
+	 * Creates the data dir
+	 * 
+	 * @param dataDir where it's created, unless it's in memory (see dataInMemory)
+	 * @param isDefault true if solr.base.dir is not set: a new temp dir is then created in it, for every start
+	 * @return the data dir
+	 */
+	private Path createDataDir(Path dataDir, boolean isDefault) throws MojoExecutionException {
+		Path memoryDataDir = dataInMemory ? FileUtil.createTempDirInMemory(getLog(), "solr-data-") : null;
+		if(memoryDataDir != null) {
+			return memoryDataDir;
+		}
+		if(dataInMemory) {
+			getLog().warn("Data will be in " + dataDir);
+		}
+		try {
+			Files.createDirectories(dataDir);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Error while creating parent dirs from " + dataDir, e);
+		}
+		//If no baseDir is defined, we use the default, but we create a new temp dir for every start
+		if(isDefault) {
+			try {
+				return Files.createTempDirectory(dataDir, "data-");
+			}
+			catch (IOException e) {
+				throw new MojoExecutionException("Error while creating temp dir in " + dataDir, e);
+			}
+		}
+		return dataDir;
+	}
+
+	/**
+	 * @return a manager running the cluster in a JVM of its own (as a daemon if daemonKey is not null), 
+	 * configured like the given one
+	 */
+	private SolrCloudManager fork(SolrCloudManager localManager, String daemonKey) throws MojoExecutionException {
+		Path stateFile = daemonKey != null ? daemonStateFile.toPath() : target.toPath().resolve("solrcloud-fork-" + mojo.getExecutionId() + ".properties");
+		return new ForkedSolrCloudManager(localManager.toProperties(), getPluginClasspath(), jvmArgs(), stateFile, daemonKey);
+	}
+
+	/**
+	 * Starts polling the metrics of the nodes, stopped by stop-solrcloud
+	 */
+	private void startMetrics(SolrCloudManager cloudManager) throws MojoExecutionException {
+		if(lazy) {
+			getLog().warn("Polling the metrics of a lazy Solr would start it: solr.metrics is not used");
+			return;
+		}
+		if(metricsInterval < 1) {
+			throw new MojoExecutionException("solr.metrics.interval must be at least 1");
+		}
+		MetricsFormat format;
+		try {
+			format = MetricsFormat.of(metricsFormat);
+		}
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid metricsFormat " + metricsFormat + ": must be jsonl or csv", e);
+		}
+		Path file = Paths.get(metricsDir).resolve(mojo.getExecutionId() + "." + format.getExtension());
+		// nodes are read on each poll: they can be added or removed meanwhile
+		MetricsCollector collector = new MetricsCollector(cloudManager::getJettyUrls, file, format, metricsInterval);
+		try {
+			timer.run("start metrics", collector::start);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't write the metrics in " + file, e);
+		}
+		session.getPluginContext(plugin, project).put(METRICS_CXT, collector);
+		getLog().info("Polling the metrics of Solr every " + metricsInterval + " s, in " + file);
+	}
+
+	private SolrMode solrMode() throws MojoExecutionException {
+		try {
+			return SolrMode.of(mode);
+		}
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid mode " + mode + ": must be cloud or embedded", e);
+		}
+	}
+
+	private ZkStorage zkStorage() throws MojoExecutionException {
+		try {
+			return ZkStorage.of(zkStorage);
+		}
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid zkStorage " + zkStorage + ": must be disk, nosync or memory", e);
+		}
+	}
+
+	private IndexStorage indexStorage() throws MojoExecutionException {
+		try {
+			return IndexStorage.of(indexStorage);
+		}
+		catch (IllegalArgumentException e) {
+			throw new MojoExecutionException("Invalid indexStorage " + indexStorage + ": must be config, ram, mmap or nrtcaching", e);
+		}
+	}
+
+	/**
+	 * Waits for a task run in the background
+	 */
+	private static <T> T join(CompletableFuture<T> task) throws MojoExecutionException {
+		try {
+			return task.join();
+		}
+		catch (CompletionException e) {
+			if(e.getCause() instanceof MojoExecutionException) {
+				throw (MojoExecutionException) e.getCause();
+			}
+			throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * @return options of the forked JVM
+	 */
+	private List<String> jvmArgs() {
+		List<String> args = new ArrayList<>();
+		if(jvmArgs != null && ! jvmArgs.trim().isEmpty()) {
+			args.addAll(Arrays.asList(jvmArgs.trim().split("\\s+")));
+		}
+		return args;
+	}
+	
+	/**
+	 * @return the jar of the plugin and its dependencies, plus the jars Maven exports to plugins from its own classpath 
+	 * (they're not part of the plugin artifacts, nor of its class realm): the plugin API and SLF4J, used by the forked JVM
+	 */
+	private List<String> getPluginClasspath() throws MojoExecutionException {
+		Set<String> classpath = new LinkedHashSet<>();
+		classpath.add(plugin.getPluginArtifact().getFile().getAbsolutePath());
+		for (Artifact artifact : plugin.getArtifacts()) {
+			if(artifact.getFile() != null) {
+				classpath.add(artifact.getFile().getAbsolutePath());
+			}
+		}
+		for (Class<?> exported : Arrays.asList(MojoExecutionException.class, LoggerFactory.class)) {
+			try {
+				classpath.add(Paths.get(exported.getProtectionDomain().getCodeSource().getLocation().toURI()).toString());
+			}
+			catch (URISyntaxException e) {
+				throw new MojoExecutionException("Can't find the jar of " + exported.getName(), e);
+			}
+		}
+		return new ArrayList<>(classpath);
+	}
+	
+	/**
+	 * @return true if the default config was extracted (false if the conf dir was already there)
+	 */
+	private boolean extractDefaultConf(Path confDir) throws MojoExecutionException {
+		//if the dir is already there, we don't copy anything in it
+		if(Files.notExists(confDir) || FileUtil.isEmptyDir(confDir)) {
+			getLog().info("Will extract default conf to " + confDir);
+			
+			FileUtil.extractDefaultConf(confDir);
+			return true;
+		}
+		return false;
+	}
 }
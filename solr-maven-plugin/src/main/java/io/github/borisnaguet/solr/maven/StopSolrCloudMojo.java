@@ -2,17 +2,25 @@ package io.github.borisnaguet.solr.maven;
 
 import static org.apache.maven.plugins.annotations.LifecyclePhase.POST_INTEGRATION_TEST;
 
+import java.util.List;
+
+import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import io.github.borisnaguet.solr.maven.metrics.MetricsCollector;
+import io.github.borisnaguet.solr.maven.util.PhaseTimer;
 
 /**
  * 
  * @author BorisNaguet
  *
  */
-@Mojo(name = "stop-solrcloud", defaultPhase = POST_INTEGRATION_TEST)
+@Mojo(name = "stop-solrcloud", defaultPhase = POST_INTEGRATION_TEST, threadSafe = true)
 public class StopSolrCloudMojo extends AbstractSolrMojo {
 
 	@Parameter(property = "solr.delete.conf", defaultValue = "false")
@@ -21,28 +29,116 @@ public class StopSolrCloudMojo extends AbstractSolrMojo {
 	@Parameter(property = "solr.delete.data", defaultValue = "false")
 	private boolean deleteData;
 	
+	/**
+	 * Stop Solr (and delete its dirs) in the background, while the build goes on: the next start-solrcloud or 
+	 * stop-solrcloud waits for it (see solr.stop.timeout), and fails the build if it failed. 
+	 * If no module built after this one uses the plugin, nothing would wait for it before the end of the build: 
+	 * Solr is then stopped right away
+	 */
+	@Parameter(property = "solr.stop.async", defaultValue = "false")
+	private boolean async;
+	
+	/**
+	 * Also stop the Solr daemon (see solr.daemon of start-solrcloud), even if it wasn't started by this build
+	 */
+	@Parameter(property = "solr.daemon.kill", defaultValue = "false")
+	private boolean daemonKill;
+	
+	/**
+	 * When the cluster is shared (see solr.shared of start-solrcloud) and this module is the last one to use it, 
+	 * leave it running for the modules built later: it's then stopped when another cluster starts, or when the JVM exits 
+	 * (after the end of the build, so a failure to stop it is only logged)
+	 */
+	@Parameter(property = "solr.shared.keepRunning", defaultValue = "false")
+	private boolean keepShared;
+	
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		if(skip) {
 			getLog().info("solr.skip=true - not stopping Solr");
 			return;
 		}
-		
+		awaitAsyncStops();
+
+		// before the nodes are stopped: it takes a last sample
+		MetricsCollector metrics = (MetricsCollector) session.getPluginContext(plugin, project).remove(METRICS_CXT);
+		if(metrics != null) {
+			metrics.stop().log(getLog());
+		}
+
 		SolrCloudManager solrCloudManager = (SolrCloudManager) session.getPluginContext(plugin, project).get(CLOUD_MANAGER_CXT);
+		if(solrCloudManager == null && daemonKill) {
+			solrCloudManager = ForkedSolrCloudManager.attach(getLog(), daemonStateFile.toPath(), null);
+		}
 		
 		if(solrCloudManager == null) {
 			getLog().info("Solr was not started (or there's a problem with plugin config), can't stop it");
 			return;
 		}
 		
-		solrCloudManager.stopCluster(getLog());
+		String sharedKey = (String) session.getPluginContext(plugin, project).remove(SHARED_KEY_CXT);
+		if(sharedKey != null) {
+			SolrCloudManager shared = solrCloudManager;
+			// stopped once no module uses it anymore
+			SharedClusters.release(getLog(), sharedKey, log -> stopOrLeaveDaemon(log, shared), keepShared);
+			return;
+		}
+		
+		if(solrCloudManager.isDaemon() && ! daemonKill) {
+			getLog().info("Solr daemon left running - stop it with -Dsolr.daemon.kill");
+			return;
+		}
+		
+		SolrCloudManager stopped = solrCloudManager;
+		if(async && isUsedByLaterModule()) {
+			String description = "Solr of " + project.getArtifactId() + " (" + mojo.getExecutionId() + ")";
+			getLog().info("Will stop " + description + " in the background");
+			AsyncStops.submit(description, () -> stop(getLog(), stopped));
+		}
+		else {
+			if(async) {
+				getLog().info("No module built after this one uses the plugin: stopping Solr now, so that the build fails if it can't");
+			}
+			stop(getLog(), stopped);
+		}
+	}
+
+	/**
+	 * @return true if a module built after this one declares the plugin: its start-solrcloud or stop-solrcloud waits 
+	 * for the stops running in the background
+	 */
+	private boolean isUsedByLaterModule() {
+		List<MavenProject> projects = session.getProjects();
+		int index = projects.indexOf(project);
+		for (MavenProject later : projects.subList(index + 1, projects.size())) {
+			for (Plugin buildPlugin : later.getBuildPlugins()) {
+				if(plugin.getPluginLookupKey().equals(buildPlugin.getKey())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void stopOrLeaveDaemon(Log log, SolrCloudManager solrCloudManager) throws MojoExecutionException {
+		if(solrCloudManager.isDaemon() && ! daemonKill) {
+			log.info("Solr daemon left running - stop it with -Dsolr.daemon.kill");
+			return;
+		}
+		stop(log, solrCloudManager);
+	}
+
+	private void stop(Log log, SolrCloudManager solrCloudManager) throws MojoExecutionException {
+		PhaseTimer timer = new PhaseTimer();
+		solrCloudManager.setTimer(timer);
+		solrCloudManager.stopCluster(log);
 		
 		if(deleteConf) {
-			solrCloudManager.cleanConfDir(getLog());
+			timer.run("delete conf", () -> solrCloudManager.cleanConfDir(log));
 		}
 		if(deleteData) {
-			solrCloudManager.cleanDataDir(getLog());
+			timer.run("delete data", () -> solrCloudManager.cleanDataDir(log));
 		}
+		reportTimings(timer);
 	}
-
 }
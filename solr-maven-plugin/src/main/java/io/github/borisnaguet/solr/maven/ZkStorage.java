@@ -0,0 +1,41 @@
+package io.github.borisnaguet.solr.maven;
+
+import java.util.Locale;
+
+/**
+ * Where ZooKeeper keeps its data, and whether it waits for each write to be on disk (fsync)
+ * 
+ * @author BorisNaguet
+ *
+ */
+public enum ZkStorage {
+	/**
+	 * in the data dir, with fsync on every write (ZK default)
+	 */
+	DISK,
+	/**
+	 * in the data dir, without fsync of the transaction log: data can be lost if the machine crashes, 
+	 * which doesn't matter for a throwaway cluster
+	 */
+	NOSYNC,
+	/**
+	 * on a RAM-backed file system (/dev/shm), without fsync: falls back to NOSYNC on disk if there's none. 
+	 * Deleted when the cluster stops.
+	 */
+	MEMORY;
+
+	/**
+	 * @param name disk, nosync or memory (case insensitive)
+	 * @throws IllegalArgumentException if it's none of them
+	 */
+	public static ZkStorage of(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return false if ZK must not wait for writes to be on disk
+	 */
+	public boolean isForceSync() {
+		return this == DISK;
+	}
+}
@@ -0,0 +1,90 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+
+/**
+ * A query of the workload: request parameters with placeholders (see {@link ParameterTemplate}), and a weight
+ * telling how often it's picked compared to the others.
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class BenchQuery {
+	private final String name;
+	private final String collection;
+	private final int weight;
+	/**
+	 * templates of each parameter (fq... can be repeated)
+	 */
+	private final Map<String, List<ParameterTemplate>> params = new LinkedHashMap<>();
+
+	/**
+	 * @param name name of the query, in the report
+	 * @param collection collection to query
+	 * @param weight relative frequency of the query
+	 * @param query request parameters, like {@code q=name:{term}&rows=10} (URL-encoded, placeholders excepted)
+	 * @param pools values of the placeholders
+	 * @param sequence counter of {@value ParameterTemplate#SEQ}
+	 * @throws IllegalArgumentException if a placeholder has no pool
+	 */
+	public BenchQuery(String name, String collection, int weight, String query, Map<String, String[]> pools, AtomicLong sequence) {
+		this.name = name;
+		this.collection = collection;
+		this.weight = weight;
+		for (String param : query.split("&")) {
+			if (param.isEmpty()) {
+				continue;
+			}
+			int eq = param.indexOf('=');
+			String key = eq < 0 ? param : param.substring(0, eq);
+			String value = eq < 0 ? "" : param.substring(eq + 1);
+			params.computeIfAbsent(decode(key), k -> new ArrayList<>()).add(new ParameterTemplate(decode(value), pools, sequence));
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getCollection() {
+		return collection;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @param random random of the calling thread
+	 * @return request parameters, with a value for each placeholder
+	 */
+	public ModifiableSolrParams toParams(Random random) {
+		ModifiableSolrParams solrParams = new ModifiableSolrParams();
+		for (Entry<String, List<ParameterTemplate>> param : params.entrySet()) {
+			for (ParameterTemplate value : param.getValue()) {
+				solrParams.add(param.getKey(), value.expand(random));
+			}
+		}
+		return solrParams;
+	}
+
+	private static String decode(String text) {
+		try {
+			return URLDecoder.decode(text, StandardCharsets.UTF_8.name());
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.common.util.Utils;
+
+/**
+ * What was measured during a {@link BenchRunner run}: latencies (in ms) and throughput of each query, and of the
+ * indexing. Written as JSON (for tools) and HTML (for humans).
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class BenchReport {
+	private static final String[] COLUMNS = { "name", "collection", "requests", "errors", "req/s", "mean", "p50", "p95", "p99", "max" };
+
+	private final int threads;
+	private final long elapsedNanos;
+	private final Map<String, String> collections = new LinkedHashMap<>();
+	private final Map<String, BenchStats> queryStats;
+	private final String indexCollection;
+	private final BenchStats indexStats;
+
+	public BenchReport(int threads, long elapsedNanos, List<BenchQuery> queries, Map<String, BenchStats> queryStats,
+			String indexCollection, BenchStats indexStats) {
+		this.threads = threads;
+		this.elapsedNanos = elapsedNanos;
+		for (BenchQuery query : queries) {
+			collections.put(query.getName(), query.getCollection());
+		}
+		this.queryStats = queryStats;
+		this.indexCollection = indexCollection;
+		this.indexStats = indexStats;
+	}
+
+	/**
+	 * @return stats of each query, by name
+	 */
+	public Map<String, BenchStats> getQueryStats() {
+		return queryStats;
+	}
+
+	/**
+	 * @return stats of the indexing, null if there was none
+	 */
+	public BenchStats getIndexStats() {
+		return indexStats;
+	}
+
+	/**
+	 * @return total number of failed requests
+	 */
+	public long getErrors() {
+		long errors = indexStats == null ? 0 : indexStats.getErrors();
+		for (BenchStats stats : queryStats.values()) {
+			errors += stats.getErrors();
+		}
+		return errors;
+	}
+
+	/**
+	 * @return requests (or docs) per second
+	 */
+	public double perSecond(long count) {
+		return elapsedNanos <= 0 ? 0 : count * 1_000_000_000.0 / elapsedNanos;
+	}
+
+	public void log(Log log) {
+		log.info(String.format(Locale.ROOT, "%-20s %-15s %9s %7s %9s %9s %9s %9s %9s %9s", (Object[]) COLUMNS));
+		for (List<String> row : rows()) {
+			log.info(String.format(Locale.ROOT, "%-20s %-15s %9s %7s %9s %9s %9s %9s %9s %9s", row.toArray()));
+		}
+		log.info("(latencies in ms, " + threads + " threads, " + elapsedNanos / 1_000_000 + " ms measured)");
+	}
+
+	public void writeJson(Path file) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("threads", threads);
+		json.put("elapsedMs", elapsedNanos / 1_000_000);
+		Map<String, Object> queries = new LinkedHashMap<>();
+		for (Entry<String, BenchStats> stats : queryStats.entrySet()) {
+			queries.put(stats.getKey(), toJson(collections.get(stats.getKey()), stats.getValue()));
+		}
+		json.put("queries", queries);
+		if (indexStats != null) {
+			Map<String, Object> index = toJson(indexCollection, indexStats);
+			index.put("docs", indexStats.getDocs());
+			index.put("docsPerSec", round(perSecond(indexStats.getDocs())));
+			json.put("index", index);
+		}
+		Files.write(file, Utils.toJSON(json));
+	}
+
+	public void writeHtml(Path file) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Solr bench</title>\n"
+					+ "<style>body{font-family:sans-serif}table{border-collapse:collapse}"
+					+ "th,td{border:1px solid #ccc;padding:4px 8px}td.n{text-align:right}</style></head><body>\n");
+			out.write("<h1>Solr bench</h1>\n<p>" + threads + " threads, " + elapsedNanos / 1_000_000 + " ms measured, latencies in ms</p>\n");
+			out.write("<table>\n<tr>");
+			for (String column : COLUMNS) {
+				out.write("<th>" + column + "</th>");
+			}
+			out.write("</tr>\n");
+			for (List<String> row : rows()) {
+				out.write("<tr>");
+				for (int i = 0; i < row.size(); i++) {
+					out.write((i < 2 ? "<td>" : "<td class=\"n\">") + escape(row.get(i)) + "</td>");
+				}
+				out.write("</tr>\n");
+			}
+			out.write("</table>\n");
+			if (indexStats != null) {
+				out.write("<p>" + indexStats.getDocs() + " docs indexed in " + escape(indexCollection) + " ("
+						+ String.format(Locale.ROOT, "%.1f", perSecond(indexStats.getDocs())) + " docs/s)</p>\n");
+			}
+			for (Entry<String, BenchStats> stats : allStats().entrySet()) {
+				if (stats.getValue().getFirstError() != null) {
+					out.write("<p>First error of " + escape(stats.getKey()) + ": " + escape(stats.getValue().getFirstError()) + "</p>\n");
+				}
+			}
+			out.write("</body></html>\n");
+		}
+	}
+
+	private Map<String, BenchStats> allStats() {
+		Map<String, BenchStats> all = new LinkedHashMap<>(queryStats);
+		if (indexStats != null) {
+			all.put("(index)", indexStats);
+		}
+		return all;
+	}
+
+	private List<List<String>> rows() {
+		List<List<String>> rows = new ArrayList<>();
+		for (Entry<String, BenchStats> stats : allStats().entrySet()) {
+			LatencyHistogram latencies = stats.getValue().getLatencies();
+			String collection = stats.getValue() == indexStats ? indexCollection : collections.get(stats.getKey());
+			rows.add(Arrays.asList(stats.getKey(), collection,
+					String.valueOf(latencies.getCount()), String.valueOf(stats.getValue().getErrors()),
+					String.format(Locale.ROOT, "%.1f", perSecond(latencies.getCount())),
+					millis(Math.round(latencies.getMean())),
+					millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(95)),
+					millis(latencies.getValueAtPercentile(99)), millis(latencies.getMax())));
+		}
+		return rows;
+	}
+
+	private Map<String, Object> toJson(String collection, BenchStats stats) {
+		LatencyHistogram latencies = stats.getLatencies();
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("collection", collection);
+		json.put("requests", latencies.getCount());
+		json.put("errors", stats.getErrors());
+		if (stats.getFirstError() != null) {
+			json.put("firstError", stats.getFirstError());
+		}
+		json.put("throughput", round(perSecond(latencies.getCount())));
+		Map<String, Object> ms = new LinkedHashMap<>();
+		ms.put("min", latencies.getMin() / 1000.0);
+		ms.put("mean", round(latencies.getMean() / 1000.0));
+		ms.put("p50", latencies.getValueAtPercentile(50) / 1000.0);
+		ms.put("p95", latencies.getValueAtPercentile(95) / 1000.0);
+		ms.put("p99", latencies.getValueAtPercentile(99) / 1000.0);
+		ms.put("max", latencies.getMax() / 1000.0);
+		json.put("latencyMs", ms);
+		return json;
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+
+	private static String millis(long micros) {
+		return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+	}
+
+	private static String escape(String text) {
+		return String.valueOf(text).replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
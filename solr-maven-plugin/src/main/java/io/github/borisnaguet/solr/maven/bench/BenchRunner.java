@@ -0,0 +1,224 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
+
+/**
+ * Runs a mixed workload against a cluster: client threads send queries picked at random (by weight) as fast as
+ * they can, while an optional indexing thread sends documents at a fixed rate.
+ * 
+ * <p>
+ * Requests sent during the warmup are not measured. Then the run lasts a fixed duration, or until a number of
+ * queries is sent.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class BenchRunner {
+	/**
+	 * interval between 2 update requests of the indexing thread, in ns
+	 */
+	private static final long INDEX_INTERVAL = 100_000_000L;
+
+	private final SolrClient client;
+	private final List<BenchQuery> queries;
+	private final int totalWeight;
+	private final int threads;
+
+	private String indexCollection;
+	private Map<String, ParameterTemplate> indexFields;
+	private int indexRate;
+	private int commitWithin;
+
+	private volatile boolean queriesDone;
+
+	/**
+	 * @param client client to send the requests with (thread-safe)
+	 * @param queries queries of the workload (can be empty if there's indexing)
+	 * @param threads number of client threads sending queries
+	 */
+	public BenchRunner(SolrClient client, List<BenchQuery> queries, int threads) {
+		this.client = client;
+		this.queries = queries;
+		this.threads = threads;
+		int weight = 0;
+		for (BenchQuery query : queries) {
+			weight += query.getWeight();
+		}
+		this.totalWeight = weight;
+	}
+
+	/**
+	 * Adds indexing to the workload
+	 * 
+	 * @param collection collection to index in
+	 * @param fields fields of the documents (each value is a template)
+	 * @param docsPerSec rate of indexing
+	 * @param commitWithinMs commitWithin of the update requests
+	 */
+	public void setIndexing(String collection, Map<String, ParameterTemplate> fields, int docsPerSec, int commitWithinMs) {
+		this.indexCollection = collection;
+		this.indexFields = fields;
+		this.indexRate = docsPerSec;
+		this.commitWithin = commitWithinMs;
+	}
+
+	/**
+	 * Runs the workload
+	 * 
+	 * @param warmupSec duration of the warmup, in s
+	 * @param durationSec duration of the run, in s (if requests is 0)
+	 * @param requests number of queries of the run, 0 to run for a duration
+	 * @return what was measured
+	 * @throws InterruptedException if interrupted while waiting for the end of the run
+	 */
+	public BenchReport run(int warmupSec, int durationSec, long requests) throws InterruptedException {
+		boolean indexing = indexRate > 0;
+		ExecutorService executor = ExecutorUtil.newMDCAwareFixedThreadPool(threads + (indexing ? 1 : 0),
+				new SolrjNamedThreadFactory("solr-bench"));
+		try {
+			long start = System.nanoTime();
+			long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSec);
+			long measureEnd = requests > 0 ? Long.MAX_VALUE : measureStart + TimeUnit.SECONDS.toNanos(durationSec);
+			AtomicLong remaining = new AtomicLong(requests);
+
+			Future<BenchStats> indexer = indexing ? executor.submit(() -> index(start, measureStart, measureEnd)) : null;
+			List<Future<Map<String, BenchStats>>> workers = new ArrayList<>();
+			if (!queries.isEmpty()) {
+				for (int i = 0; i < threads; i++) {
+					workers.add(executor.submit(() -> query(measureStart, measureEnd, requests > 0 ? remaining : null)));
+				}
+			}
+
+			Map<String, BenchStats> queryStats = new LinkedHashMap<>();
+			for (BenchQuery query : queries) {
+				queryStats.put(query.getName(), new BenchStats());
+			}
+			for (Future<Map<String, BenchStats>> worker : workers) {
+				for (Entry<String, BenchStats> stats : worker.get().entrySet()) {
+					queryStats.get(stats.getKey()).add(stats.getValue());
+				}
+			}
+			if (!workers.isEmpty()) {
+				// in a run of n requests, indexing stops with the queries
+				queriesDone = true;
+			}
+			BenchStats indexStats = indexer == null ? null : indexer.get();
+			long elapsed = System.nanoTime() - measureStart;
+
+			return new BenchReport(threads, elapsed, queries, queryStats, indexCollection, indexStats);
+		}
+		catch (ExecutionException e) {
+			// requests errors are counted, so it's a bug
+			throw new IllegalStateException("Bench thread failed", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Body of a client thread
+	 */
+	private Map<String, BenchStats> query(long measureStart, long measureEnd, AtomicLong remaining) {
+		Random random = new Random();
+		BenchStats warmup = new BenchStats();
+		while (System.nanoTime() < measureStart && !Thread.currentThread().isInterrupted()) {
+			send(pick(random), random, warmup);
+		}
+
+		Map<String, BenchStats> stats = new LinkedHashMap<>();
+		for (BenchQuery query : queries) {
+			stats.put(query.getName(), new BenchStats());
+		}
+		while (!Thread.currentThread().isInterrupted()
+				&& (remaining == null ? System.nanoTime() < measureEnd : remaining.getAndDecrement() > 0)) {
+			BenchQuery query = pick(random);
+			send(query, random, stats.get(query.getName()));
+		}
+		return stats;
+	}
+
+	private BenchQuery pick(Random random) {
+		int ticket = random.nextInt(totalWeight);
+		for (BenchQuery query : queries) {
+			ticket -= query.getWeight();
+			if (ticket < 0) {
+				return query;
+			}
+		}
+		return queries.get(queries.size() - 1);
+	}
+
+	private void send(BenchQuery query, Random random, BenchStats stats) {
+		QueryRequest request = new QueryRequest(query.toParams(random));
+		long start = System.nanoTime();
+		try {
+			request.process(client, query.getCollection());
+			stats.success((System.nanoTime() - start) / 1000, 0);
+		}
+		catch (SolrServerException | IOException | SolrException e) {
+			stats.error(e);
+		}
+	}
+
+	/**
+	 * Body of the indexing thread: every {@link #INDEX_INTERVAL}, sends the documents needed to keep up with the rate
+	 */
+	private BenchStats index(long start, long measureStart, long measureEnd) throws InterruptedException {
+		Random random = new Random();
+		BenchStats warmup = new BenchStats();
+		BenchStats stats = new BenchStats();
+		long sent = 0;
+		while (!queriesDone && System.nanoTime() < measureEnd) {
+			long now = System.nanoTime();
+			long due = (now - start) * indexRate / 1_000_000_000L - sent;
+			if (due > 0) {
+				UpdateRequest update = new UpdateRequest();
+				for (long i = 0; i < due; i++) {
+					SolrInputDocument doc = new SolrInputDocument();
+					for (Entry<String, ParameterTemplate> field : indexFields.entrySet()) {
+						doc.addField(field.getKey(), field.getValue().expand(random));
+					}
+					update.add(doc);
+				}
+				update.setCommitWithin(commitWithin);
+				sent += due;
+
+				BenchStats current = now < measureStart ? warmup : stats;
+				try {
+					update.process(client, indexCollection);
+					current.success((System.nanoTime() - now) / 1000, due);
+				}
+				catch (SolrServerException | IOException | SolrException e) {
+					current.error(e);
+				}
+			}
+			long sleep = now + INDEX_INTERVAL - System.nanoTime();
+			if (sleep > 0) {
+				TimeUnit.NANOSECONDS.sleep(sleep);
+			}
+		}
+		return stats;
+	}
+}
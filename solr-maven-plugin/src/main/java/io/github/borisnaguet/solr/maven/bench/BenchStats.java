@@ -0,0 +1,65 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+/**
+ * Latencies and errors of the requests of one query (or of the indexing) during a run.
+ * 
+ * <p>
+ * Not thread-safe, like {@link LatencyHistogram}: merged at the end with {@link #add(BenchStats)}.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class BenchStats {
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private long errors;
+	private String firstError;
+	private long docs;
+
+	/**
+	 * @param micros latency of a successful request
+	 * @param docs number of documents sent (0 for a query)
+	 */
+	public void success(long micros, long docs) {
+		latencies.record(micros);
+		this.docs += docs;
+	}
+
+	public void error(Exception e) {
+		errors++;
+		if (firstError == null) {
+			firstError = String.valueOf(e.getMessage());
+		}
+	}
+
+	public void add(BenchStats other) {
+		latencies.add(other.latencies);
+		errors += other.errors;
+		docs += other.docs;
+		if (firstError == null) {
+			firstError = other.firstError;
+		}
+	}
+
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return message of the first failed request, null if there's none
+	 */
+	public String getFirstError() {
+		return firstError;
+	}
+
+	/**
+	 * @return number of documents indexed
+	 */
+	public long getDocs() {
+		return docs;
+	}
+}
@@ -0,0 +1,106 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+/**
+ * Histogram of latencies (in µs), in the spirit of HdrHistogram: values are counted in log-linear buckets
+ * (64 sub-buckets per power of 2), so that percentiles are computed with a bounded relative error (less than 2%)
+ * and a fixed memory footprint, whatever the number of recorded values.
+ * 
+ * <p>
+ * Not thread-safe: each thread records in its own histogram, merged at the end with {@link #add(LatencyHistogram)}.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class LatencyHistogram {
+	/**
+	 * values below are counted exactly
+	 */
+	private static final int LINEAR_VALUES = 128;
+	private static final int SUB_BUCKETS = LINEAR_VALUES / 2;
+	private static final int SUB_BUCKET_BITS = 6;
+
+	private final long[] counts = new long[indexOf(Long.MAX_VALUE) + 1];
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	/**
+	 * @param micros a latency, in µs
+	 */
+	public void record(long micros) {
+		long value = Math.max(0, micros);
+		counts[indexOf(value)]++;
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds all the values recorded in another histogram
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the value (in µs) under which this percentage of the recorded values are (0 if there's none)
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				// the highest value of the bucket, but never more than what was really recorded
+				return Math.min(highestValueOf(i), max);
+			}
+		}
+		return max;
+	}
+
+	static int indexOf(long value) {
+		if (value < LINEAR_VALUES) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS * shift + (int) (value >>> shift);
+	}
+
+	static long highestValueOf(int index) {
+		if (index < LINEAR_VALUES) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index - (long) SUB_BUCKETS * shift;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,80 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A text with placeholders like {@code {term}}, each replaced by a random value of the pool of the same name every
+ * time it's {@link #expand(Random) expanded}.
+ * 
+ * <p>
+ * {@code {seq}} is a built-in placeholder: a counter, unique across all the templates of a run.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class ParameterTemplate {
+	public static final String SEQ = "seq";
+
+	/**
+	 * literal texts (String) and pools of values (String[]), in order; null for {@value #SEQ}
+	 */
+	private final List<Object> parts = new ArrayList<>();
+
+	private final AtomicLong sequence;
+
+	/**
+	 * @param template text with placeholders
+	 * @param pools values of each placeholder
+	 * @param sequence counter of {@value #SEQ}
+	 * @throws IllegalArgumentException if a placeholder has no pool
+	 */
+	public ParameterTemplate(String template, Map<String, String[]> pools, AtomicLong sequence) {
+		this.sequence = sequence;
+		int from = 0;
+		int open;
+		while ((open = template.indexOf('{', from)) >= 0) {
+			int close = template.indexOf('}', open);
+			if (close < 0) {
+				break;
+			}
+			String name = template.substring(open + 1, close);
+			if (!name.equals(SEQ) && !pools.containsKey(name)) {
+				throw new IllegalArgumentException("No pool of values for {" + name + "} in " + template);
+			}
+			if (open > from) {
+				parts.add(template.substring(from, open));
+			}
+			parts.add(name.equals(SEQ) ? null : pools.get(name));
+			from = close + 1;
+		}
+		if (from < template.length()) {
+			parts.add(template.substring(from));
+		}
+	}
+
+	/**
+	 * @param random random of the calling thread
+	 * @return the template, with each placeholder replaced by a value
+	 */
+	public String expand(Random random) {
+		StringBuilder text = new StringBuilder();
+		for (Object part : parts) {
+			if (part == null) {
+				text.append(sequence.getAndIncrement());
+			}
+			else if (part instanceof String) {
+				text.append((String) part);
+			}
+			else {
+				String[] values = (String[]) part;
+				text.append(values[random.nextInt(values.length)]);
+			}
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,262 @@
+package io.github.borisnaguet.solr.maven.chaos;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
+
+import io.github.borisnaguet.solr.maven.bench.BenchQuery;
+import io.github.borisnaguet.solr.maven.bench.BenchStats;
+import io.github.borisnaguet.solr.maven.bench.ParameterTemplate;
+
+/**
+ * Load sent to a cluster while faults are injected: client threads send queries picked at random (by weight) as
+ * fast as they can, and an optional indexing thread sends documents at a fixed rate, until it's stopped.
+ *
+ * <p>
+ * What's measured is split in {@link Window windows}: the current one is closed, and a new one opened, by
+ * {@link #mark()} (before and after each fault for example).
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class ChaosLoad {
+	/**
+	 * interval between 2 update requests of the indexing thread, in ns
+	 */
+	private static final long INDEX_INTERVAL = 100_000_000L;
+
+	private final SolrClient client;
+	private final List<BenchQuery> queries;
+	private final int totalWeight;
+	private final int threads;
+
+	private String indexCollection;
+	private Map<String, ParameterTemplate> indexFields;
+	private int indexRate;
+	private int commitWithin;
+
+	private ExecutorService executor;
+	private final List<Future<?>> workers = new ArrayList<>();
+	private volatile boolean stopped;
+	private volatile Window window;
+
+	/**
+	 * Latencies and errors of the requests sent during a period of time. Requests are counted in the window they
+	 * started in.
+	 */
+	public static class Window {
+		private final long start = System.nanoTime();
+		private long end;
+		private final BenchStats queries = new BenchStats();
+		private final BenchStats index = new BenchStats();
+
+		private synchronized void query(long micros) {
+			queries.success(micros, 0);
+		}
+
+		private synchronized void queryError(Exception e) {
+			queries.error(e);
+		}
+
+		private synchronized void index(long micros, long docs) {
+			index.success(micros, docs);
+		}
+
+		private synchronized void indexError(Exception e) {
+			index.error(e);
+		}
+
+		private synchronized void close() {
+			end = System.nanoTime();
+		}
+
+		/**
+		 * @return stats of the queries (don't change once the window is closed)
+		 */
+		public BenchStats getQueries() {
+			return queries;
+		}
+
+		/**
+		 * @return stats of the indexing (don't change once the window is closed)
+		 */
+		public BenchStats getIndex() {
+			return index;
+		}
+
+		public synchronized long getElapsedNanos() {
+			return (end == 0 ? System.nanoTime() : end) - start;
+		}
+	}
+
+	/**
+	 * @param client client to send the requests with (thread-safe)
+	 * @param queries queries of the load (can be empty if there's indexing)
+	 * @param threads number of client threads sending queries
+	 */
+	public ChaosLoad(SolrClient client, List<BenchQuery> queries, int threads) {
+		this.client = client;
+		this.queries = queries;
+		this.threads = threads;
+		int weight = 0;
+		for (BenchQuery query : queries) {
+			weight += query.getWeight();
+		}
+		this.totalWeight = weight;
+	}
+
+	/**
+	 * Adds indexing to the load
+	 *
+	 * @param collection collection to index in
+	 * @param fields fields of the documents (each value is a template)
+	 * @param docsPerSec rate of indexing
+	 * @param commitWithinMs commitWithin of the update requests
+	 */
+	public void setIndexing(String collection, Map<String, ParameterTemplate> fields, int docsPerSec, int commitWithinMs) {
+		this.indexCollection = collection;
+		this.indexFields = fields;
+		this.indexRate = docsPerSec;
+		this.commitWithin = commitWithinMs;
+	}
+
+	/**
+	 * Starts sending requests, in a first window
+	 */
+	public void start() {
+		boolean indexing = indexRate > 0;
+		int queryThreads = queries.isEmpty() ? 0 : threads;
+		window = new Window();
+		executor = ExecutorUtil.newMDCAwareFixedThreadPool(queryThreads + (indexing ? 1 : 0), new SolrjNamedThreadFactory("solr-chaos"));
+		for (int i = 0; i < queryThreads; i++) {
+			workers.add(executor.submit(this::query));
+		}
+		if (indexing) {
+			workers.add(executor.submit(this::index));
+		}
+	}
+
+	/**
+	 * Closes the current window, and opens a new one
+	 *
+	 * @return the closed window
+	 */
+	public Window mark() {
+		Window closed = window;
+		window = new Window();
+		closed.close();
+		return closed;
+	}
+
+	/**
+	 * Stops sending requests, once the ones being sent are done
+	 *
+	 * @return the last window
+	 * @throws InterruptedException if interrupted while waiting for the requests being sent
+	 */
+	public Window stop() throws InterruptedException {
+		stopped = true;
+		Window last = window;
+		last.close();
+		try {
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		}
+		catch (ExecutionException e) {
+			// requests errors are counted, so it's a bug
+			throw new IllegalStateException("Chaos load thread failed", e.getCause());
+		}
+		finally {
+			ExecutorUtil.shutdownAndAwaitTermination(executor);
+		}
+		return last;
+	}
+
+	/**
+	 * Body of a client thread
+	 */
+	private void query() {
+		Random random = new Random();
+		while (!stopped) {
+			BenchQuery query = pick(random);
+			QueryRequest request = new QueryRequest(query.toParams(random));
+			Window current = window;
+			long start = System.nanoTime();
+			try {
+				request.process(client, query.getCollection());
+				current.query((System.nanoTime() - start) / 1000);
+			}
+			catch (SolrServerException | IOException | SolrException e) {
+				current.queryError(e);
+			}
+		}
+	}
+
+	private BenchQuery pick(Random random) {
+		int ticket = random.nextInt(totalWeight);
+		for (BenchQuery query : queries) {
+			ticket -= query.getWeight();
+			if (ticket < 0) {
+				return query;
+			}
+		}
+		return queries.get(queries.size() - 1);
+	}
+
+	/**
+	 * Body of the indexing thread: every {@link #INDEX_INTERVAL}, sends the documents needed to keep up with the rate
+	 */
+	private Void index() throws InterruptedException {
+		Random random = new Random();
+		long start = System.nanoTime();
+		long sent = 0;
+		while (!stopped) {
+			long now = System.nanoTime();
+			long due = (now - start) * indexRate / 1_000_000_000L - sent;
+			if (due > 0) {
+				UpdateRequest update = new UpdateRequest();
+				for (long i = 0; i < due; i++) {
+					SolrInputDocument doc = new SolrInputDocument();
+					for (Entry<String, ParameterTemplate> field : indexFields.entrySet()) {
+						doc.addField(field.getKey(), field.getValue().expand(random));
+					}
+					update.add(doc);
+				}
+				update.setCommitWithin(commitWithin);
+				sent += due;
+
+				Window current = window;
+				try {
+					update.process(client, indexCollection);
+					current.index((System.nanoTime() - now) / 1000, due);
+				}
+				catch (SolrServerException | IOException | SolrException e) {
+					current.indexError(e);
+				}
+			}
+			long sleep = now + INDEX_INTERVAL - System.nanoTime();
+			if (sleep > 0) {
+				TimeUnit.NANOSECONDS.sleep(sleep);
+			}
+		}
+		return null;
+	}
+}
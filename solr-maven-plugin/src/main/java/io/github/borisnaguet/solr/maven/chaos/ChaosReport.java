@@ -0,0 +1,242 @@
+package io.github.borisnaguet.solr.maven.chaos;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.common.util.Utils;
+
+import io.github.borisnaguet.solr.maven.bench.BenchStats;
+import io.github.borisnaguet.solr.maven.bench.LatencyHistogram;
+
+/**
+ * What was measured during a chaos run: for each fault, the time the cluster took to recover, and the error rate and
+ * latencies of the load from the fault until the recovery, compared to the ones before the first fault (baseline).
+ * Written as JSON (for tools) and HTML (for humans).
+ *
+ * <p>
+ * Latencies are the ones of the queries, or of the indexing when there's no query.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class ChaosReport {
+	private static final String[] COLUMNS = { "fault", "target", "at", "down", "recovery", "requests", "errors", "error %", "p50", "p99",
+			"max", "p99 x" };
+
+	private final ChaosLoad.Window baseline;
+	private final List<FaultResult> faults = new ArrayList<>();
+
+	/**
+	 * A fault, and how the cluster (and the load) went through it
+	 */
+	public static class FaultResult {
+		private final Fault fault;
+		private final String target;
+		private final long atMillis;
+		private final long downMillis;
+		private final boolean visible;
+		private final long recoveryMillis;
+		private final ChaosLoad.Window window;
+
+		/**
+		 * @param fault what was injected
+		 * @param target node URL, or ZooKeeper address
+		 * @param atMillis when it was injected, since the start of the load
+		 * @param downMillis time taken by the injection (including the downtime)
+		 * @param visible false if the cluster state never showed the fault (nothing to recover from then)
+		 * @param recoveryMillis from the end of the injection until all replicas were active again
+		 * @param window load from the injection until the recovery
+		 */
+		public FaultResult(Fault fault, String target, long atMillis, long downMillis, boolean visible, long recoveryMillis,
+				ChaosLoad.Window window) {
+			this.fault = fault;
+			this.target = target;
+			this.atMillis = atMillis;
+			this.downMillis = downMillis;
+			this.visible = visible;
+			this.recoveryMillis = recoveryMillis;
+			this.window = window;
+		}
+
+		public Fault getFault() {
+			return fault;
+		}
+
+		public String getTarget() {
+			return target;
+		}
+
+		public long getRecoveryMillis() {
+			return recoveryMillis;
+		}
+	}
+
+	/**
+	 * @param baseline load before the first fault
+	 */
+	public ChaosReport(ChaosLoad.Window baseline) {
+		this.baseline = baseline;
+	}
+
+	public void add(FaultResult result) {
+		faults.add(result);
+	}
+
+	public List<FaultResult> getFaults() {
+		return faults;
+	}
+
+	public void log(Log log) {
+		String format = "%-15s %-30s %8s %8s %8s %8s %7s %7s %8s %8s %8s %6s";
+		log.info(String.format(Locale.ROOT, format, (Object[]) COLUMNS));
+		for (List<String> row : rows()) {
+			log.info(String.format(Locale.ROOT, format, row.toArray()));
+		}
+		log.info("(times and latencies in ms, p99 x: p99 compared to the baseline, - for a recovery: the fault was never visible)");
+	}
+
+	public void writeJson(Path file) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("baseline", toJson(baseline));
+		List<Object> results = new ArrayList<>();
+		for (FaultResult result : faults) {
+			Map<String, Object> fault = new LinkedHashMap<>();
+			fault.put("fault", result.fault.getName());
+			fault.put("target", result.target);
+			fault.put("atMs", result.atMillis);
+			fault.put("downMs", result.downMillis);
+			fault.put("visible", result.visible);
+			fault.put("recoveryMs", result.recoveryMillis);
+			fault.putAll(toJson(result.window));
+			fault.put("p99Ratio", round(p99Ratio(result.window)));
+			results.add(fault);
+		}
+		json.put("faults", results);
+		Files.write(file, Utils.toJSON(json));
+	}
+
+	public void writeHtml(Path file) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Solr chaos</title>\n"
+					+ "<style>body{font-family:sans-serif}table{border-collapse:collapse}"
+					+ "th,td{border:1px solid #ccc;padding:4px 8px}td.n{text-align:right}</style></head><body>\n");
+			out.write("<h1>Solr chaos</h1>\n<p>" + faults.size() + " faults, times and latencies in ms, "
+					+ "p99 x: p99 compared to the baseline</p>\n");
+			out.write("<table>\n<tr>");
+			for (String column : COLUMNS) {
+				out.write("<th>" + column + "</th>");
+			}
+			out.write("</tr>\n");
+			for (List<String> row : rows()) {
+				out.write("<tr>");
+				for (int i = 0; i < row.size(); i++) {
+					out.write((i < 2 ? "<td>" : "<td class=\"n\">") + escape(row.get(i)) + "</td>");
+				}
+				out.write("</tr>\n");
+			}
+			out.write("</table>\n");
+			for (FaultResult result : faults) {
+				String error = firstError(result.window);
+				if (error != null) {
+					out.write("<p>First error during " + escape(result.fault.getName()) + " of " + escape(result.target) + ": "
+							+ escape(error) + "</p>\n");
+				}
+			}
+			out.write("</body></html>\n");
+		}
+	}
+
+	private List<List<String>> rows() {
+		List<List<String>> rows = new ArrayList<>();
+		rows.add(row("(baseline)", "", "0", "", "", baseline, ""));
+		for (FaultResult result : faults) {
+			rows.add(row(result.fault.getName(), result.target, String.valueOf(result.atMillis), String.valueOf(result.downMillis),
+					result.visible ? String.valueOf(result.recoveryMillis) : "-", result.window,
+					String.format(Locale.ROOT, "%.1f", p99Ratio(result.window))));
+		}
+		return rows;
+	}
+
+	private static List<String> row(String fault, String target, String at, String down, String recovery, ChaosLoad.Window window,
+			String ratio) {
+		LatencyHistogram latencies = latencies(window);
+		return Arrays.asList(fault, target, at, down, recovery, String.valueOf(requests(window)), String.valueOf(errors(window)),
+				String.format(Locale.ROOT, "%.2f", errorRate(window) * 100), millis(latencies.getValueAtPercentile(50)),
+				millis(latencies.getValueAtPercentile(99)), millis(latencies.getMax()), ratio);
+	}
+
+	private Map<String, Object> toJson(ChaosLoad.Window window) {
+		LatencyHistogram latencies = latencies(window);
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("elapsedMs", window.getElapsedNanos() / 1_000_000);
+		json.put("requests", requests(window));
+		json.put("errors", errors(window));
+		json.put("errorRate", round(errorRate(window)));
+		if (firstError(window) != null) {
+			json.put("firstError", firstError(window));
+		}
+		json.put("docs", window.getIndex().getDocs());
+		Map<String, Object> ms = new LinkedHashMap<>();
+		ms.put("p50", latencies.getValueAtPercentile(50) / 1000.0);
+		ms.put("p95", latencies.getValueAtPercentile(95) / 1000.0);
+		ms.put("p99", latencies.getValueAtPercentile(99) / 1000.0);
+		ms.put("max", latencies.getMax() / 1000.0);
+		json.put("latencyMs", ms);
+		return json;
+	}
+
+	/**
+	 * @return p99 of a window, compared to the one of the baseline (0 if either has no latency)
+	 */
+	private double p99Ratio(ChaosLoad.Window window) {
+		long base = latencies(baseline).getValueAtPercentile(99);
+		LatencyHistogram latencies = latencies(window);
+		return base == 0 || latencies.getCount() == 0 ? 0 : latencies.getValueAtPercentile(99) / (double) base;
+	}
+
+	private static LatencyHistogram latencies(ChaosLoad.Window window) {
+		LatencyHistogram queries = window.getQueries().getLatencies();
+		return queries.getCount() > 0 || window.getIndex().getLatencies().getCount() == 0 ? queries : window.getIndex().getLatencies();
+	}
+
+	private static long requests(ChaosLoad.Window window) {
+		return window.getQueries().getLatencies().getCount() + window.getIndex().getLatencies().getCount() + errors(window);
+	}
+
+	private static long errors(ChaosLoad.Window window) {
+		return window.getQueries().getErrors() + window.getIndex().getErrors();
+	}
+
+	private static double errorRate(ChaosLoad.Window window) {
+		long requests = requests(window);
+		return requests == 0 ? 0 : errors(window) / (double) requests;
+	}
+
+	private static String firstError(ChaosLoad.Window window) {
+		BenchStats queries = window.getQueries();
+		return queries.getFirstError() != null ? queries.getFirstError() : window.getIndex().getFirstError();
+	}
+
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+
+	private static String millis(long micros) {
+		return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+	}
+
+	private static String escape(String text) {
+		return String.valueOf(text).replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+}
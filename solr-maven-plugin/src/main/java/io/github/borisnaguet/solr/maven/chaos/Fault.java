@@ -0,0 +1,50 @@
+package io.github.borisnaguet.solr.maven.chaos;
+
+import java.util.Locale;
+
+/**
+ * What can be injected in a running cluster by the chaos goal
+ *
+ * @author BorisNaguet
+ *
+ */
+public enum Fault {
+	/**
+	 * a node is stopped, and started again right away
+	 */
+	RESTART_NODE,
+	/**
+	 * a node is stopped, and started again after the downtime: its replicas are down meanwhile
+	 */
+	STOP_NODE,
+	/**
+	 * the ZooKeeper session of a node expires: it loses its live node and its leaders, until it reconnects
+	 */
+	EXPIRE_SESSION,
+	/**
+	 * ZooKeeper is stopped, and started again after the downtime
+	 */
+	RESTART_ZK;
+
+	/**
+	 * @param name restart-node, stop-node, expire-session or restart-zk (case insensitive, _ or -)
+	 * @throws IllegalArgumentException if it's none of them
+	 */
+	public static Fault of(String name) {
+		return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return name of the fault, like it's configured
+	 */
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT).replace('_', '-');
+	}
+
+	/**
+	 * @return true if the fault is injected in a node (picked at random)
+	 */
+	public boolean targetsNode() {
+		return this != RESTART_ZK;
+	}
+}
@@ -0,0 +1,220 @@
+package io.github.borisnaguet.solr.maven.embedded;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrException.ErrorCode;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ContentStreamBase;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequestBase;
+import org.apache.solr.request.SolrRequestHandler;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.QueryResponseWriter;
+import org.apache.solr.response.QueryResponseWriterUtil;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.servlet.ResponseUtils;
+import org.apache.solr.servlet.SolrRequestParsers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal HTTP front of a {@link CoreContainer}, so that an embedded Solr can be queried by HTTP clients (like
+ * HttpSolrClient) from another JVM, without Jetty.
+ *
+ * <p>
+ * It serves <code>/solr/&lt;core&gt;/&lt;handler&gt;</code> (request handlers of the cores) and
+ * <code>/solr/admin/...</code> (handlers of the container), with parameters in the query string or in a form body.
+ * Any other body is given to the handler as a content stream (updates).
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class EmbeddedHttpServer {
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final String CONTEXT = "/solr";
+	private static final String ADMIN_PATH = "/admin/";
+	private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+	static {
+		// without it, each response waits for the delayed ACK of the client (~40 ms): read once, by the first server
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final CoreContainer container;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Binds the server on the loopback interface (it doesn't accept requests until {@link #start()})
+	 *
+	 * @param container cores to serve
+	 * @param port port to listen on, 0 to pick a free one
+	 * @throws IOException if the port can't be bound
+	 */
+	public EmbeddedHttpServer(CoreContainer container, int port) throws IOException {
+		this.container = container;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.executor = ExecutorUtil.newMDCAwareCachedThreadPool(new SolrjNamedThreadFactory("embedded-http"));
+		server.setExecutor(executor);
+		server.createContext(CONTEXT, this::handle);
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		ExecutorUtil.shutdownAndAwaitTermination(executor);
+	}
+
+	/**
+	 * @return the URL to give to HTTP clients, like http://127.0.0.1:port/solr
+	 */
+	public String getBaseUrl() {
+		return baseUrl(server.getAddress().getAddress().getHostAddress(), getPort());
+	}
+
+	/**
+	 * @return the URL to give to HTTP clients, when the server is (or will be) reachable on this host and port
+	 */
+	public static String baseUrl(String host, int port) {
+		return "http://" + host + ":" + port + CONTEXT;
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getRawPath().substring(CONTEXT.length());
+			ModifiableSolrParams params = new ModifiableSolrParams(SolrRequestParsers.parseQueryString(exchange.getRequestURI().getRawQuery()));
+			byte[] body = read(exchange.getRequestBody());
+			String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+
+			ContentStreamBase.ByteArrayStream stream = null;
+			if (contentType != null && contentType.startsWith(FORM_CONTENT_TYPE)) {
+				params.add(SolrRequestParsers.parseQueryString(new String(body, StandardCharsets.UTF_8)));
+			}
+			else if (body.length > 0) {
+				stream = new ContentStreamBase.ByteArrayStream(body, "request body");
+				stream.setContentType(contentType);
+			}
+
+			if (path.startsWith(ADMIN_PATH)) {
+				serve(exchange, null, container.getRequestHandler(path), params, stream);
+				return;
+			}
+			int handlerStart = path.indexOf('/', 1);
+			String coreName = handlerStart < 0 ? path.substring(1) : path.substring(1, handlerStart);
+			try (SolrCore core = container.getCore(coreName)) {
+				SolrRequestHandler handler = core == null ? null
+						: core.getRequestHandler(handlerStart < 0 ? "/select" : path.substring(handlerStart));
+				serve(exchange, core, handler, params, stream);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			LOG.error("Can't serve " + exchange.getRequestURI(), e);
+			// once the headers are sent (response code set), the client only sees a truncated response
+			if (exchange.getResponseCode() == -1) {
+				sendError(exchange, 500, e.toString());
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Executes a request handler (of a core, or of the container if core is null), and writes its response. If there's
+	 * no handler (or no core), the response is a 404 error, written like Solr errors so that clients can read it.
+	 */
+	private void serve(HttpExchange exchange, SolrCore core, SolrRequestHandler handler, ModifiableSolrParams params,
+			ContentStreamBase stream) throws IOException {
+		SolrQueryRequest req = new SolrQueryRequestBase(core, params) {
+		};
+		if (stream != null) {
+			((SolrQueryRequestBase) req).setContentStreams(Collections.singletonList(stream));
+		}
+		SolrQueryResponse rsp = new SolrQueryResponse();
+		SolrRequestInfo.setRequestInfo(new SolrRequestInfo(req, rsp));
+		try {
+			if (handler == null) {
+				rsp.setException(new SolrException(ErrorCode.NOT_FOUND, "No core nor request handler for " + exchange.getRequestURI().getPath()));
+			}
+			else if (core != null) {
+				core.execute(handler, req, rsp);
+			}
+			else {
+				handler.handleRequest(req, rsp);
+			}
+
+			int status = 200;
+			if (rsp.getException() != null) {
+				NamedList<Object> error = new SimpleOrderedMap<>();
+				status = ResponseUtils.getErrorInfo(rsp.getException(), error, LOG);
+				rsp.add("error", error);
+			}
+
+			QueryResponseWriter writer = core != null ? core.getQueryResponseWriter(req)
+					: SolrCore.DEFAULT_RESPONSE_WRITERS.get(params.get(CommonParams.WT, CommonParams.JSON));
+			if (writer == null) {
+				throw new SolrException(ErrorCode.BAD_REQUEST, "Unknown response writer " + params.get(CommonParams.WT));
+			}
+			String contentType = writer.getContentType(req, rsp);
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(status, 0);
+			try (OutputStream out = exchange.getResponseBody()) {
+				QueryResponseWriterUtil.writeQueryResponse(out, writer, req, rsp, contentType);
+			}
+		}
+		finally {
+			req.close();
+			SolrRequestInfo.clearRequestInfo();
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] content = message.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, content.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(content);
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		return content.toByteArray();
+	}
+}
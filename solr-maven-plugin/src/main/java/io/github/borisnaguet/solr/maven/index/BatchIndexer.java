@@ -0,0 +1,200 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrjNamedThreadFactory;
+
+/**
+ * Sends documents to Solr by batches, from several threads.
+ *
+ * <p>
+ * Documents are read by the caller thread, and queued by batches in a bounded queue: when the update threads can't
+ * keep up, reading blocks until there's room in the queue (back-pressure), so memory stays bounded whatever the size
+ * of the files.
+ * </p>
+ * <p>
+ * Nothing is committed here: the caller commits once, when everything was sent.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class BatchIndexer {
+	/**
+	 * tells an update thread to stop
+	 */
+	private static final Batch END = new Batch(null, null);
+
+	/**
+	 * interval between progress logs, in ns
+	 */
+	private static final long PROGRESS_INTERVAL = 10_000_000_000L;
+
+	private final SolrClient client;
+	private final int batchSize;
+	private final int threads;
+	private final BlockingQueue<Batch> queue;
+	private final ExecutorService executor;
+
+	private final AtomicLong indexed = new AtomicLong();
+	private final AtomicInteger rejectedBatches = new AtomicInteger();
+	private final AtomicReference<Exception> firstError = new AtomicReference<>();
+
+	/**
+	 * Starts the update threads
+	 *
+	 * @param client client to send the updates with (thread-safe)
+	 * @param batchSize number of documents sent by request
+	 * @param threads number of concurrent update requests
+	 * @param queueSize max number of batches waiting to be sent
+	 */
+	public BatchIndexer(SolrClient client, int batchSize, int threads, int queueSize) {
+		this.client = client;
+		this.batchSize = batchSize;
+		this.threads = threads;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+		this.executor = ExecutorUtil.newMDCAwareFixedThreadPool(threads, new SolrjNamedThreadFactory("solr-indexer"));
+		for (int i = 0; i < threads; i++) {
+			executor.execute(this::sendBatches);
+		}
+	}
+
+	/**
+	 * Reads all the documents of a reader, and queues them to be sent to a collection.
+	 * Stops early if a batch was rejected.
+	 *
+	 * @param log maven log
+	 * @param collection collection to send the documents to
+	 * @param reader documents to send
+	 * @return the number of documents read
+	 * @throws IOException if the documents can't be read
+	 * @throws InterruptedException if interrupted while waiting for room in the queue
+	 */
+	public long index(Log log, String collection, DocumentReader reader) throws IOException, InterruptedException {
+		long read = 0;
+		long start = System.nanoTime();
+		long nextProgress = start + PROGRESS_INTERVAL;
+
+		List<SolrInputDocument> docs = new ArrayList<>(batchSize);
+		SolrInputDocument doc;
+		while (firstError.get() == null && (doc = reader.next()) != null) {
+			docs.add(doc);
+			read++;
+			if (docs.size() == batchSize) {
+				queue.put(new Batch(collection, docs));
+				docs = new ArrayList<>(batchSize);
+
+				if (System.nanoTime() > nextProgress) {
+					log.info(read + " docs read for " + collection + " in " + (System.nanoTime() - start) / 1_000_000_000L + " s, "
+							+ indexed.get() + " sent so far");
+					nextProgress += PROGRESS_INTERVAL;
+				}
+			}
+		}
+		if (!docs.isEmpty() && firstError.get() == null) {
+			queue.put(new Batch(collection, docs));
+		}
+		return read;
+	}
+
+	/**
+	 * Waits until all the queued documents are sent, and stops the update threads
+	 *
+	 * @return the number of documents sent
+	 * @throws MojoExecutionException if at least one batch was rejected
+	 */
+	public long finish() throws MojoExecutionException {
+		try {
+			for (int i = 0; i < threads; i++) {
+				queue.put(END);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+			throw new MojoExecutionException("Interrupted while waiting for documents to be sent", e);
+		}
+		ExecutorUtil.shutdownAndAwaitTermination(executor);
+
+		if (firstError.get() != null) {
+			throw new MojoExecutionException(rejectedBatches.get() + " batch(es) of documents rejected, first error: "
+					+ firstError.get().getMessage(), firstError.get());
+		}
+		return indexed.get();
+	}
+
+	/**
+	 * Stops the update threads without waiting for queued documents
+	 */
+	public void abort() {
+		queue.clear();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Body of an update thread
+	 */
+	private void sendBatches() {
+		while (true) {
+			Batch batch;
+			try {
+				batch = queue.take();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			if (batch == END) {
+				return;
+			}
+			if (firstError.get() != null) {
+				// no need to send more: drain the queue so that the reader isn't blocked
+				continue;
+			}
+
+			try {
+				UpdateRequest update = new UpdateRequest();
+				update.add(batch.docs);
+				update.process(client, batch.collection);
+				indexed.addAndGet(batch.docs.size());
+			}
+			catch (SolrServerException | IOException | RuntimeException e) {
+				// any error: this thread must keep draining the queue, or the reader and finish() would wait forever
+				rejectedBatches.incrementAndGet();
+				firstError.compareAndSet(null, e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of docs/s, for a duration in ns
+	 */
+	public static long docsPerSec(long docs, long nanos) {
+		return nanos == 0 ? 0 : docs * 1_000_000_000L / nanos;
+	}
+
+	private static class Batch {
+		private final String collection;
+		private final List<SolrInputDocument> docs;
+
+		public Batch(String collection, List<SolrInputDocument> docs) {
+			this.collection = collection;
+			this.docs = docs;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.internal.csv.CSVParser;
+
+/**
+ * Reads CSV: the first line gives the field names, each next line is a document. Empty values are ignored.
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class CsvReader implements DocumentReader {
+	private final Reader in;
+	private final CSVParser parser;
+	private String[] header;
+
+	public CsvReader(Reader in) {
+		this.in = in;
+		this.parser = new CSVParser(in);
+	}
+
+	@Override
+	public SolrInputDocument next() throws IOException {
+		if (header == null) {
+			header = parser.getLine();
+			if (header == null) {
+				return null;
+			}
+		}
+
+		String[] values = parser.getLine();
+		if (values == null) {
+			return null;
+		}
+		if (values.length > header.length) {
+			throw new IOException("Line " + parser.getLineNumber() + " has " + values.length + " values, but there are only " 
+					+ header.length + " fields");
+		}
+
+		SolrInputDocument doc = new SolrInputDocument();
+		for (int i = 0; i < values.length; i++) {
+			if (!values[i].isEmpty()) {
+				doc.addField(header[i], values[i]);
+			}
+		}
+		return doc;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,85 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Formats of the files that can be indexed
+ * 
+ * @author BorisNaguet
+ *
+ */
+public enum DataFormat {
+	JSONL {
+		@Override
+		protected DocumentReader open(Reader in) {
+			return new JsonLinesReader(in);
+		}
+	},
+	CSV {
+		@Override
+		protected DocumentReader open(Reader in) {
+			return new CsvReader(in);
+		}
+	},
+	XML {
+		@Override
+		protected DocumentReader open(Reader in) throws IOException {
+			return new SolrXmlReader(in);
+		}
+	};
+
+	protected abstract DocumentReader open(Reader in) throws IOException;
+
+	/**
+	 * Opens a file (gzipped if its name ends with .gz), to read its documents
+	 * 
+	 * @param file UTF-8 file to read
+	 * @return the reader of its documents
+	 * @throws IOException if the file can't be opened
+	 */
+	public DocumentReader open(Path file) throws IOException {
+		InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+		try {
+			if (file.getFileName().toString().endsWith(".gz")) {
+				in = new GZIPInputStream(in, 1 << 16);
+			}
+			return open(new InputStreamReader(in, StandardCharsets.UTF_8));
+		}
+		catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Guesses the format of a file from its extension
+	 * 
+	 * @param file file to read
+	 * @return its format
+	 * @throws IllegalArgumentException if the extension is unknown
+	 */
+	public static DataFormat of(Path file) {
+		String name = file.getFileName().toString().toLowerCase(Locale.ROOT).replaceFirst("\\.gz$", "");
+		String extension = name.substring(name.lastIndexOf('.') + 1);
+		switch (extension) {
+			case "jsonl":
+			case "ndjson":
+				return JSONL;
+			case "csv":
+				return CSV;
+			case "xml":
+				return XML;
+			default:
+				throw new IllegalArgumentException("Unknown format of " + file + ": set it explicitly (JSONL, CSV or XML)");
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Reads documents from a file, one at a time (files can be much bigger than the heap)
+ * 
+ * @author BorisNaguet
+ *
+ */
+public interface DocumentReader extends Closeable {
+	/**
+	 * @return the next document, or null when there's no more
+	 * @throws IOException if the file can't be read or parsed
+	 */
+	SolrInputDocument next() throws IOException;
+}
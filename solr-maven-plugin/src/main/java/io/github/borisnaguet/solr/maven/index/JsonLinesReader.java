@@ -0,0 +1,81 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.noggit.ObjectBuilder;
+
+/**
+ * Reads JSON Lines: one JSON object (the fields of a document) per line. Empty lines are ignored.
+ * Values are strings, numbers, booleans, or arrays of them (multi-valued fields): nested objects are rejected.
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class JsonLinesReader implements DocumentReader {
+	private final BufferedReader in;
+	private int lineNumber = 0;
+
+	public JsonLinesReader(Reader in) {
+		this.in = new BufferedReader(in);
+	}
+
+	@Override
+	public SolrInputDocument next() throws IOException {
+		String line;
+		do {
+			line = in.readLine();
+			lineNumber++;
+			if (line == null) {
+				return null;
+			}
+		}
+		while (line.trim().isEmpty());
+
+		Object json;
+		try {
+			json = ObjectBuilder.fromJSON(line);
+		}
+		catch (RuntimeException e) {
+			throw new IOException("Invalid JSON on line " + lineNumber + ": " + e.getMessage(), e);
+		}
+		if (!(json instanceof Map)) {
+			throw new IOException("Line " + lineNumber + " is not a JSON object");
+		}
+
+		SolrInputDocument doc = new SolrInputDocument();
+		for (Entry<?, ?> field : ((Map<?, ?>) json).entrySet()) {
+			String name = String.valueOf(field.getKey());
+			if (field.getValue() instanceof Collection) {
+				for (Object value : (Collection<?>) field.getValue()) {
+					doc.addField(name, checkValue(name, value));
+				}
+			}
+			else {
+				doc.addField(name, checkValue(name, field.getValue()));
+			}
+		}
+		return doc;
+	}
+
+	/**
+	 * @return the value of a field, if it's not a nested object: Solr would take it as an atomic update
+	 * ({"set": ...}), or reject it
+	 */
+	private Object checkValue(String name, Object value) throws IOException {
+		if (value instanceof Map) {
+			throw new IOException("Field " + name + " on line " + lineNumber + " is a JSON object: nested objects are not supported");
+		}
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
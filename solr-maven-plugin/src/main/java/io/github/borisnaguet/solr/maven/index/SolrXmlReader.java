@@ -0,0 +1,98 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Reads Solr XML update messages: the &lt;doc&gt; elements of &lt;add&gt; elements (wherever they are in the file).
+ * Nested &lt;doc&gt; elements are added as child documents.
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class SolrXmlReader implements DocumentReader {
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	static {
+		FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final Reader in;
+	private final XMLStreamReader parser;
+
+	public SolrXmlReader(Reader in) throws IOException {
+		this.in = in;
+		try {
+			this.parser = FACTORY.createXMLStreamReader(in);
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Can't parse XML", e);
+		}
+	}
+
+	@Override
+	public SolrInputDocument next() throws IOException {
+		try {
+			while (parser.hasNext()) {
+				if (parser.next() == XMLStreamConstants.START_ELEMENT && "doc".equals(parser.getLocalName())) {
+					return readDoc();
+				}
+			}
+			return null;
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Can't parse XML: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads a doc, the parser being on its start element
+	 */
+	private SolrInputDocument readDoc() throws XMLStreamException {
+		SolrInputDocument doc = new SolrInputDocument();
+		while (true) {
+			int event = parser.nextTag();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				return doc;
+			}
+			if ("doc".equals(parser.getLocalName())) {
+				doc.addChildDocument(readDoc());
+			}
+			else if ("field".equals(parser.getLocalName())) {
+				String name = parser.getAttributeValue(null, "name");
+				if (name == null) {
+					throw new XMLStreamException("<field> without name", parser.getLocation());
+				}
+				boolean isNull = Boolean.parseBoolean(parser.getAttributeValue(null, "null"));
+				String value = parser.getElementText();
+				if (!isNull) {
+					doc.addField(name, value);
+				}
+			}
+			else {
+				throw new XMLStreamException("Unexpected <" + parser.getLocalName() + "> in <doc>", parser.getLocation());
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			parser.close();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+		finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package io.github.borisnaguet.solr.maven.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.noggit.JSONUtil;
+
+/**
+ * Polls /admin/metrics on each node at a fixed interval, in the background, and appends what it got to a file: JVM
+ * heap and threads, request handlers (requests, time, errors), update handler and searcher caches of each core.
+ *
+ * <p>
+ * Samples are compact: only a few fields of each timer or cache are kept. What's needed for the
+ * {@link MetricsSummary summary} is kept in memory.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class MetricsCollector {
+	private static final String GROUPS = "jvm,core";
+	private static final String PREFIXES = "memory.heap.,threads.count,QUERY.,UPDATE.,CACHE.searcher.";
+	/**
+	 * fields kept of the metrics that are maps (timers, meters, caches)
+	 */
+	private static final Set<String> FIELDS = new HashSet<>(Arrays.asList("count", "mean_ms", "p99_ms", "max_ms", "lookups", "hits",
+			"hitratio", "size", "evictions", "cumulative_lookups", "cumulative_hits", "cumulative_hitratio"));
+	private static final String CORE_REGISTRY_PREFIX = "solr.core.";
+	private static final String JVM_REGISTRY = "solr.jvm";
+
+	private final Supplier<List<String>> nodes;
+	private final Path file;
+	private final MetricsFormat format;
+	private final int intervalSeconds;
+	private final MetricsSummary summary;
+
+	private ScheduledExecutorService scheduler;
+	private CloseableHttpClient httpClient;
+	private Writer out;
+
+	/**
+	 * @param nodes gives the base URLs of the nodes (they can change between polls)
+	 * @param file where the samples are written (replaced)
+	 * @param format how they're written
+	 * @param intervalSeconds interval between polls
+	 */
+	public MetricsCollector(Supplier<List<String>> nodes, Path file, MetricsFormat format, int intervalSeconds) {
+		this.nodes = nodes;
+		this.file = file;
+		this.format = format;
+		this.intervalSeconds = intervalSeconds;
+		this.summary = new MetricsSummary(file);
+	}
+
+	/**
+	 * Starts polling, right away
+	 *
+	 * @throws IOException if the file can't be created
+	 */
+	public synchronized void start() throws IOException {
+		Files.createDirectories(file.getParent());
+		out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		if (format == MetricsFormat.CSV) {
+			out.write("time,node,registry,metric,value\n");
+		}
+		httpClient = HttpClientUtil.createClient(null);
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "solr-metrics");
+			// doesn't keep the build running if stop-solrcloud isn't reached
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::poll, 0, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops polling, once a last sample is taken (the nodes must still be running)
+	 *
+	 * @return summary of the samples
+	 */
+	public MetricsSummary stop() {
+		ScheduledExecutorService stopped;
+		synchronized (this) {
+			stopped = scheduler;
+			scheduler = null;
+		}
+		if (stopped == null) {
+			return summary;
+		}
+		// not synchronized meanwhile: the poll running writes its sample
+		stopped.shutdown();
+		try {
+			stopped.awaitTermination(intervalSeconds + 30L, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		poll();
+		HttpClientUtil.close(httpClient);
+		synchronized (this) {
+			try {
+				out.close();
+			}
+			catch (IOException e) {
+				summary.error(file.toString(), e);
+			}
+			out = null;
+		}
+		return summary;
+	}
+
+	private void poll() {
+		long time = System.currentTimeMillis();
+		List<String> urls;
+		try {
+			urls = nodes.get();
+		}
+		catch (RuntimeException e) {
+			summary.error("cluster", e);
+			return;
+		}
+		for (String url : urls) {
+			try {
+				Map<String, Map<String, Number>> sample = fetch(url);
+				write(time, url, sample);
+				summary.add(url, time, sample);
+			}
+			catch (SolrServerException | IOException | RuntimeException e) {
+				summary.error(url, e);
+			}
+		}
+	}
+
+	/**
+	 * @return metrics of the node, by registry (jvm, or name of the core)
+	 */
+	private Map<String, Map<String, Number>> fetch(String url) throws SolrServerException, IOException {
+		ModifiableSolrParams params = new ModifiableSolrParams();
+		params.set("group", GROUPS);
+		params.set("prefix", PREFIXES);
+		NamedList<Object> response;
+		try (HttpSolrClient client = new HttpSolrClient.Builder(url).withHttpClient(httpClient).build()) {
+			response = client.request(new GenericSolrRequest(SolrRequest.METHOD.GET, "/admin/metrics", params));
+		}
+		NamedList<?> registries = (NamedList<?>) response.get("metrics");
+		if (registries == null) {
+			throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "No metrics in the response of " + url);
+		}
+
+		Map<String, Map<String, Number>> sample = new TreeMap<>();
+		for (Entry<String, ?> registry : registries) {
+			String name = registry.getKey().equals(JVM_REGISTRY) ? "jvm"
+					: registry.getKey().startsWith(CORE_REGISTRY_PREFIX) ? registry.getKey().substring(CORE_REGISTRY_PREFIX.length()) : registry.getKey();
+			Map<String, Number> metrics = new TreeMap<>();
+			for (Entry<String, ?> metric : (NamedList<?>) registry.getValue()) {
+				flatten(metrics, metric.getKey(), metric.getValue());
+			}
+			sample.put(name, metrics);
+		}
+		return sample;
+	}
+
+	private static void flatten(Map<String, Number> metrics, String name, Object value) {
+		if (value instanceof Number) {
+			// start time of the handlers: not a measure
+			if (!name.endsWith(".handlerStart")) {
+				metrics.put(name, (Number) value);
+			}
+		}
+		else if (value instanceof Map) {
+			for (Entry<?, ?> field : ((Map<?, ?>) value).entrySet()) {
+				if (FIELDS.contains(String.valueOf(field.getKey()))) {
+					flatten(metrics, name + "." + field.getKey(), field.getValue());
+				}
+			}
+		}
+	}
+
+	private synchronized void write(long time, String node, Map<String, Map<String, Number>> sample) throws IOException {
+		if (out == null) {
+			return;
+		}
+		if (format == MetricsFormat.JSONL) {
+			Map<String, Object> line = new LinkedHashMap<>();
+			line.put("time", time);
+			line.put("node", node);
+			line.put("metrics", sample);
+			out.write(JSONUtil.toJSON(line, -1));
+			out.write('\n');
+		}
+		else {
+			for (Entry<String, Map<String, Number>> registry : sample.entrySet()) {
+				for (Entry<String, Number> metric : registry.getValue().entrySet()) {
+					out.write(time + "," + node + "," + registry.getKey() + "," + metric.getKey() + "," + metric.getValue() + "\n");
+				}
+			}
+		}
+		out.flush();
+	}
+}
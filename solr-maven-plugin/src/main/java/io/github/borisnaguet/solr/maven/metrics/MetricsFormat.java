@@ -0,0 +1,38 @@
+package io.github.borisnaguet.solr.maven.metrics;
+
+import java.util.Locale;
+
+/**
+ * How the samples of the {@link MetricsCollector} are written
+ *
+ * @author BorisNaguet
+ *
+ */
+public enum MetricsFormat {
+	/**
+	 * a JSON object per node and sample: time, node, and metrics by registry (jvm, or core)
+	 */
+	JSONL("jsonl"),
+	/**
+	 * a line per metric: time, node, registry, metric, value
+	 */
+	CSV("csv");
+
+	private final String extension;
+
+	private MetricsFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * @param name jsonl or csv (case insensitive)
+	 * @throws IllegalArgumentException if it's none of them
+	 */
+	public static MetricsFormat of(String name) {
+		return valueOf(name.trim().toUpperCase(Locale.ROOT));
+	}
+}
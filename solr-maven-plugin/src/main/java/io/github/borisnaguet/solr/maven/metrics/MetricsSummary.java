@@ -0,0 +1,163 @@
+package io.github.borisnaguet.solr.maven.metrics;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Summary of what a {@link MetricsCollector} got: peak heap (and threads), request handlers that took the most time,
+ * and hit ratios of the searcher caches of each collection.
+ *
+ * <p>
+ * Handler and cache metrics are cumulative (since each core started): the last sample of each core gives its totals.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class MetricsSummary {
+	private static final int TOP_HANDLERS = 5;
+	private static final String TOTAL_TIME = ".totalTime";
+	private static final String CACHE_PREFIX = "CACHE.searcher.";
+	private static final String CACHE_LOOKUPS = ".cumulative_lookups";
+	private static final String CACHE_HITS = ".cumulative_hits";
+
+	private final Path file;
+
+	private long samples;
+	private long errors;
+	private String firstError;
+
+	private long peakHeap;
+	private long heapMax;
+	private String peakHeapNode;
+	private long peakHeapTime;
+	private long peakThreads;
+
+	/**
+	 * last metrics of each core, by name
+	 */
+	private final Map<String, Map<String, Number>> cores = new TreeMap<>();
+
+	MetricsSummary(Path file) {
+		this.file = file;
+	}
+
+	synchronized void add(String node, long time, Map<String, Map<String, Number>> sample) {
+		samples++;
+		for (Entry<String, Map<String, Number>> registry : sample.entrySet()) {
+			Map<String, Number> metrics = registry.getValue();
+			if (registry.getKey().equals("jvm")) {
+				long heap = longValue(metrics, "memory.heap.used");
+				if (heap > peakHeap) {
+					peakHeap = heap;
+					heapMax = longValue(metrics, "memory.heap.max");
+					peakHeapNode = node;
+					peakHeapTime = time;
+				}
+				peakThreads = Math.max(peakThreads, longValue(metrics, "threads.count"));
+			}
+			else {
+				cores.put(registry.getKey(), metrics);
+			}
+		}
+	}
+
+	synchronized void error(String source, Exception e) {
+		errors++;
+		if (firstError == null) {
+			firstError = source + ": " + e;
+		}
+	}
+
+	/**
+	 * @return number of samples taken (one per node and poll)
+	 */
+	public synchronized long getSamples() {
+		return samples;
+	}
+
+	public synchronized void log(Log log) {
+		log.info("Solr metrics: " + samples + " samples in " + file
+				+ (errors > 0 ? ", " + errors + " failed polls (first: " + firstError + ")" : ""));
+		if (samples == 0) {
+			return;
+		}
+		log.info(String.format(Locale.ROOT, "  peak heap: %d MB of %d MB (%s at %tT), peak threads: %d",
+				peakHeap / (1024 * 1024), heapMax / (1024 * 1024), peakHeapNode, peakHeapTime, peakThreads));
+
+		// requests and total time (ns) of each handler of each collection
+		Map<String, long[]> handlers = new TreeMap<>();
+		// lookups and hits of each cache of each collection
+		Map<String, Map<String, long[]>> caches = new TreeMap<>();
+		for (Entry<String, Map<String, Number>> core : cores.entrySet()) {
+			String collection = collection(core.getKey());
+			for (Entry<String, Number> metric : core.getValue().entrySet()) {
+				String name = metric.getKey();
+				// handlers that got no request and caches that got no lookup
+				if (metric.getValue().longValue() == 0) {
+					continue;
+				}
+				if (name.endsWith(TOTAL_TIME)) {
+					String handler = name.substring(0, name.length() - TOTAL_TIME.length());
+					long[] totals = handlers.computeIfAbsent(collection + " " + handler.substring(handler.indexOf('.') + 1), k -> new long[2]);
+					totals[0] += longValue(core.getValue(), handler + ".requests");
+					totals[1] += metric.getValue().longValue();
+				}
+				else if (name.startsWith(CACHE_PREFIX) && name.endsWith(CACHE_LOOKUPS)) {
+					String cache = name.substring(0, name.length() - CACHE_LOOKUPS.length());
+					long[] totals = caches.computeIfAbsent(collection, k -> new TreeMap<>())
+							.computeIfAbsent(cache.substring(CACHE_PREFIX.length()), k -> new long[2]);
+					totals[0] += metric.getValue().longValue();
+					totals[1] += longValue(core.getValue(), cache + CACHE_HITS);
+				}
+			}
+		}
+
+		log.info("  top handlers by time:");
+		List<Entry<String, long[]>> byTime = new ArrayList<>(handlers.entrySet());
+		byTime.sort((h1, h2) -> Long.compare(h2.getValue()[1], h1.getValue()[1]));
+		for (Entry<String, long[]> handler : byTime.subList(0, Math.min(TOP_HANDLERS, byTime.size()))) {
+			long requests = handler.getValue()[0];
+			double millis = handler.getValue()[1] / 1_000_000.0;
+			log.info(String.format(Locale.ROOT, "    %-30s %8d requests %10.1f ms %8.2f ms mean", handler.getKey(), requests, millis,
+					requests == 0 ? 0 : millis / requests));
+		}
+		if (byTime.isEmpty()) {
+			log.info("    (no request)");
+		}
+
+		log.info("  cache hit ratios:");
+		for (Entry<String, Map<String, long[]>> collection : caches.entrySet()) {
+			List<String> ratios = new ArrayList<>();
+			for (Entry<String, long[]> cache : collection.getValue().entrySet()) {
+				ratios.add(String.format(Locale.ROOT, "%s %.1f%% (%d lookups)", cache.getKey(), cache.getValue()[1] * 100.0 / cache.getValue()[0],
+						cache.getValue()[0]));
+			}
+			log.info("    " + collection.getKey() + ": " + String.join(", ", ratios));
+		}
+		if (caches.isEmpty()) {
+			log.info("    (no lookup)");
+		}
+	}
+
+	/**
+	 * @return collection of a core: collection.shard.replica
+	 */
+	private static String collection(String core) {
+		int replica = core.lastIndexOf('.');
+		int shard = replica < 0 ? -1 : core.lastIndexOf('.', replica - 1);
+		return shard < 0 ? core : core.substring(0, shard);
+	}
+
+	private static long longValue(Map<String, Number> metrics, String name) {
+		Number value = metrics.get(name);
+		return value == null ? 0 : value.longValue();
+	}
+}
@@ -3,12 +3,18 @@ package io.github.borisnaguet.solr.maven.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.DirectoryStream;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
@@ -22,9 +28,46 @@ import com.google.common.base.Charsets;
  *
  */
 public class FileUtil {
+	/**
+	 * files of the default config, in the conf dir of the classpath
+	 */
+	private static final String[] DEFAULT_CONF_FILES = { "_rest_managed.json", "currency.xml", "managed-schema", "protwords.txt",
+			"solrconfig.xml", "stopwords.txt", "synonyms.txt", "lang/stopwords_en.txt" };
+
+	/**
+	 * RAM-backed file system (tmpfs), on most Linux
+	 */
+	private static final Path SHM_DIR = Paths.get("/dev/shm");
+
+	/**
+	 * threads deleting dirs: they mostly wait for the file system, so there can be more than CPUs
+	 */
+	private static final ForkJoinPool DELETE_POOL = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
 	private FileUtil() {
 	}
 
+	/**
+	 * Creates a temp dir on a RAM-backed file system, if there's one
+	 * 
+	 * @param log Maven logger to use
+	 * @param prefix prefix of the dir name
+	 * @return the new dir, or null if there's no RAM-backed file system (a warning is logged)
+	 * @throws MojoExecutionException if the dir can't be created
+	 */
+	public static Path createTempDirInMemory(Log log, String prefix) throws MojoExecutionException {
+		if (!Files.isDirectory(SHM_DIR) || !Files.isWritable(SHM_DIR)) {
+			log.warn("No RAM-backed file system in " + SHM_DIR);
+			return null;
+		}
+		try {
+			return Files.createTempDirectory(SHM_DIR, prefix);
+		}
+		catch (IOException e) {
+			throw new MojoExecutionException("Can't create temp dir in " + SHM_DIR, e);
+		}
+	}
+
 	/**
 	 * Fully read into memory a File
 	 * 
@@ -45,7 +88,7 @@ public class FileUtil {
 	/**
 	 * Deletes a file or a directory
 	 * 
-	 * If the directory is not empty, it'll delete all files and sub-dirs before
+	 * If the directory is not empty, it'll delete all files and sub-dirs before (in parallel)
 	 * 
 	 * @param log Maven logger to use
 	 * @param path of the file
@@ -53,49 +96,122 @@ public class FileUtil {
 	public static void delete(Log log, Path path) {
 		if (log != null && path != null) {
 			try {
-				if (Files.isDirectory(path)) {
-					Files.walkFileTree(path, new Deleter(log));
+				if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+					DELETE_POOL.invoke(new Deleter(path));
 				}
 				else if (Files.isWritable(path)) {
 					Files.deleteIfExists(path);
 				}
 			}
-			catch (IOException e) {
+			catch (IOException | UncheckedIOException e) {
 				log.warn("Can't delete " + path.toAbsolutePath() + " - "+ e.getMessage() + " (will try on exit)");
 				log.debug(e);
 			}
 		}
 	}
 
-	private static class Deleter extends SimpleFileVisitor<Path> {
-		private final Log log;
+	/**
+	 * Deletes a dir: forks a task for each sub-dir, and for each batch of its files. Most of the time is spent waiting
+	 * for the file system, so it goes faster with several threads (an index dir has a lot of files, and no sub-dir)
+	 */
+	private static class Deleter extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path dir;
 
-		public Deleter(Log log) {
-			this.log = log;
+		public Deleter(Path dir) {
+			this.dir = dir;
 		}
 
 		@Override
-		public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-			log.debug("Will delete dir " + dir);
+		protected void compute() {
+			List<RecursiveAction> tasks = new ArrayList<>();
+			List<Path> files = new ArrayList<>();
 			try {
+				try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+					for (Path child : children) {
+						if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+							tasks.add(new Deleter(child));
+						}
+						else {
+							files.add(child);
+						}
+					}
+				}
+				for (int from = 0; from < files.size(); from += FileBatchDeleter.BATCH_SIZE) {
+					tasks.add(new FileBatchDeleter(files.subList(from, Math.min(files.size(), from + FileBatchDeleter.BATCH_SIZE))));
+				}
+				invokeAll(tasks);
 				Files.deleteIfExists(dir);
 			}
-			catch(IOException e) {
-				throw e;
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-			return super.postVisitDirectory(dir, exc);
+		}
+	}
+
+	/**
+	 * Deletes a batch of files
+	 */
+	private static class FileBatchDeleter extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * files deleted by a task: enough to be worth a task, few enough to spread a flat dir on all the threads
+		 */
+		private static final int BATCH_SIZE = 16;
+
+		private final List<Path> files;
+
+		public FileBatchDeleter(List<Path> files) {
+			this.files = files;
 		}
 
 		@Override
-		public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
-			log.debug("Will delete file " + path);
+		protected void compute() {
 			try {
-				Files.delete(path);
+				for (Path file : files) {
+					Files.delete(file);
+				}
 			}
-			catch(IOException e) {
-				throw e;
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Recursively copies a directory
+	 * 
+	 * @param source dir to copy
+	 * @param target dir to create
+	 * @throws IOException if a file can't be copied
+	 */
+	public static void copyDir(Path source, Path target) throws IOException {
+		try (Stream<Path> files = Files.walk(source)) {
+			Iterator<Path> it = files.iterator();
+			while (it.hasNext()) {
+				Path file = it.next();
+				Path dest = target.resolve(source.relativize(file).toString());
+				if (Files.isDirectory(file)) {
+					Files.createDirectories(dest);
+				}
+				else {
+					Files.copy(file, dest);
+				}
 			}
-			return FileVisitResult.CONTINUE;
+		}
+	}
+
+	/**
+	 * Extracts the default config of Solr (from the classpath of the plugin)
+	 * 
+	 * @param confDir dir to extract it to
+	 * @throws MojoExecutionException if a file can't be extracted
+	 */
+	public static void extractDefaultConf(Path confDir) throws MojoExecutionException {
+		for (String file : DEFAULT_CONF_FILES) {
+			extractFileFromClasspath("conf/" + file, confDir.resolve(file));
 		}
 	}
 
@@ -0,0 +1,243 @@
+package io.github.borisnaguet.solr.maven.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.solr.common.util.Utils;
+
+/**
+ * Measures the phases of a goal (wall-clock and CPU time), to know where the time goes:
+ * 
+ * <pre>
+ * timer.run("zookeeper", () -&gt; startZk());
+ * Path dir = timer.call("data dir", () -&gt; createDataDir());
+ * </pre>
+ * 
+ * <p>
+ * The phase ends when the task returns or throws, and the checked exception of the task is thrown as is.
+ * </p>
+ * 
+ * <p>
+ * CPU time is the one of the whole JVM during the phase (Solr nodes start in their own threads), so phases that
+ * overlap count the same CPU time. It's -1 if the JVM doesn't tell.
+ * </p>
+ * <p>
+ * Phases can be timed from several threads.
+ * </p>
+ * 
+ * @author BorisNaguet
+ *
+ */
+public class PhaseTimer {
+	private final long start = System.nanoTime();
+	private final long cpuStart = processCpuTime();
+	private final List<Timing> timings = new ArrayList<>();
+
+	/**
+	 * Timed task
+	 *
+	 * @param <E> exception it throws
+	 */
+	@FunctionalInterface
+	public interface Task<E extends Exception> {
+		void run() throws E;
+	}
+
+	/**
+	 * Timed task that returns a result
+	 *
+	 * @param <T> its result
+	 * @param <E> exception it throws
+	 */
+	@FunctionalInterface
+	public interface Computation<T, E extends Exception> {
+		T call() throws E;
+	}
+
+	/**
+	 * Runs a task as a phase: it ends when the task returns or throws
+	 */
+	public <E extends Exception> void run(String name, Task<E> task) throws E {
+		Phase phase = new Phase(name);
+		try {
+			task.run();
+		}
+		finally {
+			phase.end();
+		}
+	}
+
+	/**
+	 * Runs a task as a phase, and returns its result
+	 */
+	public <T, E extends Exception> T call(String name, Computation<T, E> task) throws E {
+		Phase phase = new Phase(name);
+		try {
+			return task.call();
+		}
+		finally {
+			phase.end();
+		}
+	}
+
+	/**
+	 * @return the timed phases, in the order they ended
+	 */
+	public synchronized List<Timing> getTimings() {
+		return new ArrayList<>(timings);
+	}
+
+	/**
+	 * Logs a summary table of the phases
+	 * 
+	 * @param log maven log
+	 * @param title what was timed
+	 */
+	public void log(Log log, String title) {
+		log.info(title + " timings:");
+		for (Timing timing : getTimings()) {
+			log.info(format(timing.getName(), timing.getWallMillis(), timing.getCpuMillis()));
+		}
+		log.info(format("total", getTotalWallMillis(), getTotalCpuMillis()));
+	}
+
+	/**
+	 * Writes the timings in a JSON file, under the given key: timings written before (by other goals) under other
+	 * keys are kept
+	 * 
+	 * @param file JSON file
+	 * @param key key of the timings in the file (the id of the execution for example)
+	 * @param goal what was timed
+	 * @throws IOException if the file can't be written
+	 */
+	@SuppressWarnings("unchecked")
+	public void write(Path file, String key, String goal) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		if (Files.exists(file)) {
+			try (InputStream in = Files.newInputStream(file)) {
+				Object previous = Utils.fromJSON(in);
+				if (previous instanceof Map) {
+					json.putAll((Map<String, Object>) previous);
+				}
+			}
+			catch (RuntimeException e) {
+				// not JSON: replaced
+			}
+		}
+
+		Map<String, Object> execution = new LinkedHashMap<>();
+		execution.put("goal", goal);
+		execution.put("wallMs", getTotalWallMillis());
+		execution.put("cpuMs", getTotalCpuMillis());
+		List<Object> phases = new ArrayList<>();
+		for (Timing timing : getTimings()) {
+			Map<String, Object> phase = new LinkedHashMap<>();
+			phase.put("name", timing.getName());
+			phase.put("startMs", timing.getStartMillis());
+			phase.put("wallMs", timing.getWallMillis());
+			phase.put("cpuMs", timing.getCpuMillis());
+			phases.add(phase);
+		}
+		execution.put("phases", phases);
+		json.put(key, execution);
+
+		Files.createDirectories(file.getParent());
+		Files.write(file, Utils.toJSON(json));
+	}
+
+	public long getTotalWallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	public long getTotalCpuMillis() {
+		return cpuStart < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(processCpuTime() - cpuStart);
+	}
+
+	private synchronized void add(Timing timing) {
+		timings.add(timing);
+	}
+
+	private static String format(String name, long wallMillis, long cpuMillis) {
+		return String.format(Locale.ROOT, "  %-24s %8d ms %s", name, wallMillis, cpuMillis < 0 ? "" : "(cpu " + cpuMillis + " ms)");
+	}
+
+	/**
+	 * @return CPU time of the JVM, in ns, or -1 if it's not available
+	 */
+	private static long processCpuTime() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	/**
+	 * A running phase
+	 */
+	private class Phase {
+		private final String name;
+		private final long phaseStart = System.nanoTime();
+		private final long phaseCpuStart = processCpuTime();
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		private void end() {
+			long end = System.nanoTime();
+			long cpu = phaseCpuStart < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(processCpuTime() - phaseCpuStart);
+			add(new Timing(name, TimeUnit.NANOSECONDS.toMillis(phaseStart - start), TimeUnit.NANOSECONDS.toMillis(end - phaseStart), cpu));
+		}
+	}
+
+	/**
+	 * How long a phase took
+	 */
+	public static class Timing {
+		private final String name;
+		private final long startMillis;
+		private final long wallMillis;
+		private final long cpuMillis;
+
+		public Timing(String name, long startMillis, long wallMillis, long cpuMillis) {
+			this.name = name;
+			this.startMillis = startMillis;
+			this.wallMillis = wallMillis;
+			this.cpuMillis = cpuMillis;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return when the phase started, in ms since the timer was created
+		 */
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		public long getWallMillis() {
+			return wallMillis;
+		}
+
+		/**
+		 * @return CPU time of the JVM during the phase, -1 if unknown
+		 */
+		public long getCpuMillis() {
+			return cpuMillis;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package io.github.borisnaguet.solr.maven.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards the TCP connections made to a local port to another address, known only when the first connection
+ * arrives (see {@link Target}).
+ *
+ * <p>
+ * Each connection is handled by its own threads (daemons): resolving the target may take a while (a cluster
+ * starting), only the connections waiting for it are held.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public class TcpProxy implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Where to forward the connections
+	 */
+	@FunctionalInterface
+	public interface Target {
+		/**
+		 * Called for each connection, by the thread that handles it
+		 *
+		 * @return the address to connect to
+		 * @throws IOException if there's none: the connection is closed
+		 */
+		InetSocketAddress resolve() throws IOException;
+	}
+
+	private final ServerSocket serverSocket;
+	private final Target target;
+	private final ExecutorService executor;
+
+	/**
+	 * Binds the port on the loopback interface (connections are accepted once {@link #start()} is called)
+	 *
+	 * @param port port to listen on, 0 to pick a free one
+	 * @param target where to forward the connections
+	 * @throws IOException if the port can't be bound
+	 */
+	public TcpProxy(int port, Target target) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.target = target;
+		this.executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "solr-proxy");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public void start() {
+		executor.execute(this::accept);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Stops accepting connections (the open ones end when the target closes them)
+	 */
+	@Override
+	public void close() {
+		try {
+			serverSocket.close();
+		}
+		catch (IOException e) {
+			LOG.debug("Can't close proxy on port " + getPort(), e);
+		}
+		executor.shutdownNow();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket client = serverSocket.accept();
+				executor.execute(() -> forward(client));
+			}
+			catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					LOG.warn("Proxy on port " + getPort() + " can't accept connections", e);
+				}
+				return;
+			}
+		}
+	}
+
+	private void forward(Socket client) {
+		try (Socket clientSocket = client; Socket server = new Socket()) {
+			server.connect(target.resolve());
+			// small requests and responses (ZK pings, HTTP headers) must not wait for ACKs
+			clientSocket.setTcpNoDelay(true);
+			server.setTcpNoDelay(true);
+			executor.execute(() -> pump(clientSocket, server));
+			pump(server, clientSocket);
+		}
+		catch (IOException e) {
+			LOG.debug("Proxy connection from " + client.getRemoteSocketAddress() + " closed", e);
+		}
+	}
+
+	/**
+	 * Copies what's read from a socket to the other one, until the end of its input
+	 */
+	private static void pump(Socket from, Socket to) {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try {
+			InputStream in = from.getInputStream();
+			OutputStream out = to.getOutputStream();
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				out.flush();
+			}
+			to.shutdownOutput();
+		}
+		catch (SocketException e) {
+			// the other side closed the connection
+		}
+		catch (IOException e) {
+			LOG.debug("Proxy pump from " + from.getRemoteSocketAddress() + " stopped", e);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package io.github.borisnaguet.solr.maven.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * Deletes dirs in the background.
+ *
+ * <p>
+ * A dir is first renamed (atomically) to a trash dir (in the build directory of the project): it's gone from its
+ * location right away, and a new one can be created there. Its content is then deleted by a background thread (with
+ * {@link FileUtil#delete(Log, Path)}, in parallel). A dir on another file system (like a data dir in memory) can't be
+ * renamed there: it's deleted right away.
+ * </p>
+ * <p>
+ * Before the JVM exits, we wait (for a while) for the pending deletions to finish. What's left in a trash dir is
+ * deleted the next time {@link #resume(Log, Path)} is called for it.
+ * </p>
+ *
+ * @author BorisNaguet
+ *
+ */
+public final class Trash {
+	/**
+	 * name of the trash dir, in the build directory
+	 */
+	public static final String TRASH_DIR = ".solr-trash";
+
+	/**
+	 * max number of seconds to wait for pending deletions when the JVM exits
+	 */
+	private static final int EXIT_TIMEOUT = 60;
+
+	private static final ExecutorService DELETER = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "solr-trash");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> awaitPending(new SystemStreamLog()), "solr-trash-wait"));
+	}
+
+	private Trash() {
+	}
+
+	/**
+	 * Moves a dir to the trash, and deletes it in the background. If it can't be moved, it's deleted right away.
+	 *
+	 * @param log Maven logger to use
+	 * @param dir dir to delete
+	 * @param trashDir where to move it
+	 */
+	public static void delete(Log log, Path dir, Path trashDir) {
+		Path trashed = trashDir.resolve(dir.getFileName() + "-" + System.nanoTime());
+		try {
+			Files.createDirectories(trashDir);
+			Files.move(dir, trashed, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			log.debug("Can't move " + dir + " to " + trashDir + " (" + e.getMessage() + "), will delete it now");
+			FileUtil.delete(log, dir);
+			return;
+		}
+		log.debug(dir + " moved to " + trashed + ", will be deleted in the background");
+		try {
+			DELETER.execute(() -> FileUtil.delete(log, trashed));
+		}
+		catch (RejectedExecutionException e) {
+			// the JVM is exiting (the dir is deleted by a stop running in the background)
+			FileUtil.delete(log, trashed);
+		}
+	}
+
+	/**
+	 * Deletes in the background what's left in a trash dir (when the JVM exited before it was emptied)
+	 *
+	 * @param log Maven logger to use
+	 * @param trashDir the trash dir
+	 */
+	public static void resume(Log log, Path trashDir) {
+		if (!Files.isDirectory(trashDir)) {
+			return;
+		}
+		try (DirectoryStream<Path> trashed = Files.newDirectoryStream(trashDir)) {
+			for (Path dir : trashed) {
+				log.debug("Will delete " + dir + ", left in the trash");
+				DELETER.execute(() -> FileUtil.delete(log, dir));
+			}
+		}
+		catch (IOException e) {
+			log.warn("Can't list " + trashDir + " - " + e.getMessage());
+		}
+	}
+
+	private static void awaitPending(Log log) {
+		DELETER.shutdown();
+		try {
+			if (!DELETER.awaitTermination(EXIT_TIMEOUT, TimeUnit.SECONDS)) {
+				log.warn("Data still being deleted after " + EXIT_TIMEOUT + " s: will be deleted on next start");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.client.solrj.embedded;
+
+import org.eclipse.jetty.server.Server;
+
+/**
+ * Access to the Jetty {@link Server} of a {@link JettySolrRunner}, which doesn't expose it: its thread pool and
+ * connector can then be tuned before the runner is started.
+ */
+public final class JettyServers {
+
+  private JettyServers() {
+  }
+
+  /**
+   * @return the server of the runner, built when the runner was created
+   */
+  public static Server getServer(JettySolrRunner jetty) {
+    return jetty.server;
+  }
+}
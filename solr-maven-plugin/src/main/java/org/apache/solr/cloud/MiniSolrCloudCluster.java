@@ -27,16 +27,21 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.Random;
 import java.util.SortedMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.solr.client.solrj.embedded.JettyConfig;
 import org.apache.solr.client.solrj.embedded.JettySolrRunner;
@@ -52,7 +57,9 @@ import org.apache.solr.common.util.ExecutorUtil;
 import org.apache.solr.common.util.IOUtils;
 import org.apache.solr.common.util.SolrjNamedThreadFactory;
 import org.apache.solr.core.CoreContainer;
+import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +70,13 @@ import org.slf4j.LoggerFactory;
 public class MiniSolrCloudCluster {
 
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Default number of seconds to wait for all the servers to register in live_nodes
+   */
+  public static final int DEFAULT_NODES_TIMEOUT = 60;
+
+  private static final String ZK_HOST = "zkHost";
   
   public static final String DEFAULT_CLOUD_SOLR_XML = "<solr>\n" +
       "\n" +
@@ -75,6 +89,9 @@ public class MiniSolrCloudCluster {
       "    <str name=\"urlScheme\">${urlScheme:}</str>\n" +
       "    <int name=\"socketTimeout\">${socketTimeout:90000}</int>\n" +
       "    <int name=\"connTimeout\">${connTimeout:15000}</int>\n" +
+      "    <int name=\"maxConnectionsPerHost\">${shardHandler.maxConnectionsPerHost:20}</int>\n" +
+      "    <int name=\"maxConnections\">${shardHandler.maxConnections:10000}</int>\n" +
+      "    <int name=\"maximumPoolSize\">${shardHandler.maximumPoolSize:2147483647}</int>\n" +
       "  </shardHandlerFactory>\n" +
       "\n" +
       "  <solrcloud>\n" +
@@ -100,6 +117,10 @@ public class MiniSolrCloudCluster {
   private ZkTestServer zkServer; // non-final due to injectChaos()
   private final boolean externalZkServer;
   private final List<JettySolrRunner> jettys = new CopyOnWriteArrayList<>();
+  /**
+   * index of each stopped node in {@link #jettys}, to start it again at the same place
+   */
+  private final Map<JettySolrRunner, Integer> stoppedIndexes = new ConcurrentHashMap<>();
   private final Path baseDir;
   private final CloudSolrClient solrClient;
   private final JettyConfig jettyConfig;
@@ -109,6 +130,20 @@ public class MiniSolrCloudCluster {
   
   private final AtomicInteger nodeIds = new AtomicInteger();
 
+  /**
+   * solr.xml written in the home of each node, that reads the ZK address from {@link #nodeProperties}
+   */
+  private final String nodeSolrXml;
+  /**
+   * properties of each node (ZK address of this cluster)
+   */
+  private final Properties nodeProperties;
+
+  /**
+   * called on each node before it starts
+   */
+  private volatile Consumer<JettySolrRunner> jettyCustomizer = jetty -> {};
+
   /**
    * Create a MiniSolrCloudCluster with default solr.xml
    *
@@ -192,7 +227,24 @@ public class MiniSolrCloudCluster {
    */
   public MiniSolrCloudCluster(int numServers, Path baseDir, String solrXml, JettyConfig jettyConfig,
       ZkTestServer zkTestServer, String chroot) throws Exception {
-    this(numServers, baseDir, solrXml, jettyConfig, zkTestServer, Optional.empty(), chroot);
+    this(numServers, baseDir, solrXml, jettyConfig, zkTestServer, chroot, DEFAULT_NODES_TIMEOUT);
+  }
+
+  /**
+   * Create a MiniSolrCloudCluster
+   *
+   * @param numServers number of Solr servers to start
+   * @param baseDir base directory that the mini cluster should be run from
+   * @param solrXml solr.xml file to be uploaded to ZooKeeper
+   * @param jettyConfig Jetty configuration
+   * @param zkTestServer ZkTestServer to use.  If null, one will be created
+   * @param nodesTimeout number of seconds to wait for all servers to register in live_nodes
+   *
+   * @throws Exception if there was an error starting the cluster
+   */
+  public MiniSolrCloudCluster(int numServers, Path baseDir, String solrXml, JettyConfig jettyConfig,
+      ZkTestServer zkTestServer, String chroot, int nodesTimeout) throws Exception {
+    this(numServers, baseDir, solrXml, jettyConfig, zkTestServer, Optional.empty(), chroot, nodesTimeout);
   }
 
   /**
@@ -207,11 +259,12 @@ public class MiniSolrCloudCluster {
    * @param jettyConfig Jetty configuration
    * @param zkTestServer ZkTestServer to use.  If null, one will be created
    * @param securityJson A string representation of security.json file (optional).
+   * @param nodesTimeout number of seconds to wait for all servers to register in live_nodes
    *
    * @throws Exception if there was an error starting the cluster
    */
    MiniSolrCloudCluster(int numServers, Path baseDir, String solrXml, JettyConfig jettyConfig,
-      ZkTestServer zkTestServer, Optional<String> securityJson, String chroot) throws Exception {
+      ZkTestServer zkTestServer, Optional<String> securityJson, String chroot, int nodesTimeout) throws Exception {
 
     Objects.requireNonNull(securityJson);
     this.baseDir = Objects.requireNonNull(baseDir);
@@ -230,19 +283,27 @@ public class MiniSolrCloudCluster {
     this.zkServer = zkTestServer;
 
     try (SolrZkClient zkClient = new SolrZkClient(zkServer.getZkHost(), AbstractZkTestCase.TIMEOUT)) {
+      // these files are already there (and overwritten) when the base dir is a cloned cluster template
       if(solrXml != null) {
-        zkClient.makePath(chroot + "/solr.xml", solrXml.getBytes(Charset.defaultCharset()), true);
+        zkClient.makePath(chroot + "/solr.xml", solrXml.getBytes(Charset.defaultCharset()), CreateMode.PERSISTENT, null, false, true);
+      }
+      else if (zkClient.exists(chroot + "/solr.xml", true)) {
+        // uploaded by a previous run in the same base dir
+        solrXml = new String(zkClient.getData(chroot + "/solr.xml", null, null, true), Charset.defaultCharset());
       }
       if (jettyConfig.sslConfig != null && jettyConfig.sslConfig.isSSLMode()) {
-        zkClient.makePath(chroot + "/clusterprops.json", "{'urlScheme':'https'}".getBytes(StandardCharsets.UTF_8), true);
+        zkClient.makePath(chroot + "/clusterprops.json", "{'urlScheme':'https'}".getBytes(StandardCharsets.UTF_8), CreateMode.PERSISTENT, null, false, true);
       }
       if (securityJson.isPresent()) { // configure Solr security
-        zkClient.makePath(chroot + "/security.json", securityJson.get().getBytes(Charset.defaultCharset()), true);
+        zkClient.makePath(chroot + "/security.json", securityJson.get().getBytes(Charset.defaultCharset()), CreateMode.PERSISTENT, null, false, true);
       }
     }
 
-    // tell solr to look in zookeeper for solr.xml
-    System.setProperty("zkHost", zkServer.getZkAddress(chroot));
+    // each node gets its ZK address from its own solr.xml, and not from the (JVM-wide) zkHost system property:
+    // several clusters can run at the same time in this JVM
+    this.nodeSolrXml = withZkHostProperty(solrXml == null ? DEFAULT_CLOUD_SOLR_XML : solrXml);
+    this.nodeProperties = new Properties();
+    nodeProperties.setProperty(ZK_HOST, zkServer.getZkAddress(chroot));
 
     List<Callable<JettySolrRunner>> startups = new ArrayList<>(numServers);
     for (int i = 0; i < numServers; ++i) {
@@ -261,32 +322,41 @@ public class MiniSolrCloudCluster {
       throw startupError;
     }
 
-    waitForAllNodes(numServers, 60, chroot);
+    waitForAllNodes(numServers, nodesTimeout, chroot);
 
     solrClient = buildSolrClient(chroot);
   }
 
   private void waitForAllNodes(int numServers, int timeout, String chroot) throws IOException, InterruptedException {
     try (SolrZkClient zkClient = new SolrZkClient(zkServer.getZkHost(), AbstractZkTestCase.TIMEOUT)) {
-      int numliveNodes = 0;
-      int retries = timeout;
       String liveNodesPath = chroot + "/live_nodes";
+      // any change on live_nodes (creation of the node itself, or of a child) wakes us up: no need to poll
+      Object liveNodesChanged = new Object();
+      Watcher watcher = event -> {
+        synchronized (liveNodesChanged) {
+          liveNodesChanged.notifyAll();
+        }
+      };
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+      int numliveNodes = 0;
       // Wait up to {timeout} seconds for number of live_nodes to match up number of servers
-      do {
-        if (zkClient.exists(liveNodesPath, true)) {
-          numliveNodes = zkClient.getChildren(liveNodesPath, null, true).size();
+      synchronized (liveNodesChanged) {
+        while (true) {
+          // watches are one-shot: they're set again on every check
+          if (zkClient.exists(liveNodesPath, watcher, true) != null) {
+            numliveNodes = zkClient.getChildren(liveNodesPath, watcher, true).size();
+          }
           if (numliveNodes == numServers) {
             break;
           }
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            throw new IllegalStateException("Solr servers failed to register with ZK."
+                + " Current count: " + numliveNodes + "; Expected count: " + numServers);
+          }
+          TimeUnit.NANOSECONDS.timedWait(liveNodesChanged, remaining);
         }
-        retries--;
-        if (retries == 0) {
-          throw new IllegalStateException("Solr servers failed to register with ZK."
-              + " Current count: " + numliveNodes + "; Expected count: " + numServers);
-        }
-
-        Thread.sleep(1000);
-      } while (numliveNodes != numServers);
+      }
     }
     catch (KeeperException e) {
       throw new IOException("Error communicating with zookeeper", e);
@@ -301,6 +371,16 @@ public class MiniSolrCloudCluster {
     return "node" + nodeIds.incrementAndGet();
   }
 
+  /**
+   * @return the solr.xml with a zkHost (in its solrcloud section) read from the node properties, if it has none
+   */
+  private static String withZkHostProperty(String solrXml) {
+    if (solrXml.contains("name=\"" + ZK_HOST + "\"")) {
+      return solrXml;
+    }
+    return solrXml.replaceFirst("<solrcloud>", "<solrcloud>\n    <str name=\"" + ZK_HOST + "\">\\${" + ZK_HOST + "}</str>");
+  }
+
   private Path createInstancePath(String name) throws IOException {
     Path instancePath = baseDir.resolve(name);
     if(Files.notExists(instancePath)) {
@@ -309,6 +389,27 @@ public class MiniSolrCloudCluster {
     return instancePath;
   }
 
+  /**
+   * Sets properties of the nodes started from now on: they can be used in solr.xml, like ${name:default}
+   */
+  public void setNodeProperties(Properties properties) {
+    nodeProperties.putAll(properties);
+  }
+
+  /**
+   * Sets what to do on each node started from now on, before it starts (to tune its Jetty server for example)
+   */
+  public void setJettyCustomizer(Consumer<JettySolrRunner> jettyCustomizer) {
+    this.jettyCustomizer = jettyCustomizer;
+  }
+
+  /**
+   * Replaces the ZooKeeper server, once the external one was restarted (on the same port) by the caller
+   */
+  public void setZkServer(ZkTestServer zkServer) {
+    this.zkServer = zkServer;
+  }
+
   /**
    * @return ZooKeeper server used by the MiniCluster
    */
@@ -382,14 +483,70 @@ public class MiniSolrCloudCluster {
    */
   public JettySolrRunner startJettySolrRunner(String name, String hostContext, JettyConfig config) throws Exception {
     Path runnerPath = createInstancePath(name);
+    Files.write(runnerPath.resolve("solr.xml"), nodeSolrXml.getBytes(StandardCharsets.UTF_8));
     String context = getHostContextSuitableForServletContext(hostContext);
     JettyConfig newConfig = JettyConfig.builder(config).setContext(context).build();
-    JettySolrRunner jetty = new JettySolrRunner(runnerPath.toString(), newConfig);
+    JettySolrRunner jetty = new JettySolrRunner(runnerPath.toString(), new Properties(nodeProperties), newConfig);
+    jettyCustomizer.accept(jetty);
     jetty.start();
     jettys.add(jetty);
     return jetty;
   }
 
+  /**
+   * Start several Solr instances in parallel, each one on a given port.
+   * This is used to restart nodes that are already referenced in the cluster state.
+   *
+   * @param nodePorts port of each instance, by instance name
+   *
+   * @return the started instances
+   */
+  public List<JettySolrRunner> startJettySolrRunners(Map<String, Integer> nodePorts) throws Exception {
+    List<Callable<JettySolrRunner>> startups = new ArrayList<>(nodePorts.size());
+    for (Map.Entry<String, Integer> node : nodePorts.entrySet()) {
+      JettyConfig config = JettyConfig.builder(jettyConfig).setPort(node.getValue()).build();
+      startups.add(() -> startJettySolrRunner(node.getKey(), jettyConfig.context, config));
+    }
+    // next nodes started with a generated name must not reuse those instances
+    nodeIds.accumulateAndGet(nodePorts.size(), Math::max);
+
+    List<Future<JettySolrRunner>> futures = executorLauncher.invokeAll(startups);
+    Exception startupError = checkForExceptions("Error starting up Solr instances " + nodePorts.keySet(), futures);
+    if (startupError != null) {
+      throw startupError;
+    }
+    List<JettySolrRunner> started = new ArrayList<>(futures.size());
+    for (Future<JettySolrRunner> future : futures) {
+      started.add(future.get());
+    }
+    return started;
+  }
+
+  /**
+   * Start several new Solr instances in parallel, using the default config
+   *
+   * @param count number of instances to start
+   *
+   * @return the started instances
+   */
+  public List<JettySolrRunner> startJettySolrRunners(int count) throws Exception {
+    List<Callable<JettySolrRunner>> startups = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      startups.add(() -> startJettySolrRunner(newNodeName(), jettyConfig.context, jettyConfig));
+    }
+
+    List<Future<JettySolrRunner>> futures = executorLauncher.invokeAll(startups);
+    Exception startupError = checkForExceptions("Error starting up " + count + " Solr instances", futures);
+    if (startupError != null) {
+      throw startupError;
+    }
+    List<JettySolrRunner> started = new ArrayList<>(futures.size());
+    for (Future<JettySolrRunner> future : futures) {
+      started.add(future.get());
+    }
+    return started;
+  }
+
   /**
    * Start a new Solr instance, using the default config
    *
@@ -405,6 +562,19 @@ public class MiniSolrCloudCluster {
    * @return the shut down node
    */
   public JettySolrRunner stopJettySolrRunner(int index) throws Exception {
+    JettySolrRunner jetty = jettys.get(index);
+    jetty.stop();
+    jettys.remove(index);
+    stoppedIndexes.put(jetty, index);
+    return jetty;
+  }
+
+  /**
+   * Stop a Solr instance for good: unlike {@link #stopJettySolrRunner(int)}, it can't be added back to the cluster
+   * @param index the index of node in collection returned by {@link #getJettySolrRunners()}
+   * @return the shut down node
+   */
+  public JettySolrRunner removeJettySolrRunner(int index) throws Exception {
     JettySolrRunner jetty = jettys.get(index);
     jetty.stop();
     jettys.remove(index);
@@ -418,9 +588,29 @@ public class MiniSolrCloudCluster {
    * @throws Exception on error
    */
   public JettySolrRunner startJettySolrRunner(JettySolrRunner jetty) throws Exception {
-    jetty.start(false);
-    jettys.add(jetty);
-    return jetty;
+    return startJettySolrRunner(jetty, false);
+  }
+
+  /**
+   * Add a previously stopped node back to the cluster, at the index it had (nodes stopped meanwhile excepted).
+   * The runner is replaced by a new one of the same instance: a runner started again rebuilds its Jetty server,
+   * without the changes of the customizer.
+   * @param jetty a {@link JettySolrRunner} previously returned by {@link #stopJettySolrRunner(int)}
+   * @param reusePort true to start it on its previous port: it keeps its node name, and its replicas
+   * @return the started node, that replaces the stopped one
+   * @throws Exception on error
+   */
+  public JettySolrRunner startJettySolrRunner(JettySolrRunner jetty, boolean reusePort) throws Exception {
+    JettyConfig config = JettyConfig.builder(jettyConfig)
+        .setContext(getHostContextSuitableForServletContext(jettyConfig.context))
+        .setPort(reusePort ? jetty.getLocalPort() : jettyConfig.port)
+        .build();
+    JettySolrRunner restarted = new JettySolrRunner(jetty.getSolrHome(), jetty.getNodeProperties(), config);
+    jettyCustomizer.accept(restarted);
+    restarted.start();
+    Integer index = stoppedIndexes.remove(jetty);
+    jettys.add(index == null ? jettys.size() : Math.min(index, jettys.size()), restarted);
+    return restarted;
   }
 
   protected JettySolrRunner stopJettySolrRunner(JettySolrRunner jetty) throws Exception {
@@ -472,12 +662,8 @@ public class MiniSolrCloudCluster {
     } finally {
       ExecutorUtil.shutdownAndAwaitTermination(executorLauncher);
       ExecutorUtil.shutdownAndAwaitTermination(executorCloser);
-      try {
-        if (!externalZkServer) {
-          zkServer.shutdown();
-        }
-      } finally {
-        System.clearProperty("zkHost");
+      if (!externalZkServer) {
+        zkServer.shutdown();
       }
     }
   }
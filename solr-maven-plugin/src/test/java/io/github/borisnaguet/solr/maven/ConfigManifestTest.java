@@ -0,0 +1,50 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+public class ConfigManifestTest {
+
+	@Test
+	public void testRemovable_onlyUploadedUnchanged() {
+		Map<String, HashCode> uploaded = new TreeMap<>();
+		uploaded.put("stopwords.txt", hash("a"));
+		uploaded.put("lang/stopwords_en.txt", hash("b"));
+		uploaded.put("managed-schema", hash("schema"));
+		ConfigManifest manifest = ConfigManifest.parse(new ConfigManifest(uploaded).toBytes());
+
+		// in ZK, but removed from the conf dir
+		Map<String, HashCode> zkFiles = new TreeMap<>();
+		zkFiles.put("stopwords.txt", hash("a"));
+		zkFiles.put("lang/stopwords_en.txt", hash("b"));
+		// changed by the Schema API
+		zkFiles.put("managed-schema", hash("schema with a new field"));
+		// written by the Config API
+		zkFiles.put("configoverlay.json", hash("{}"));
+		zkFiles.put("params.json", hash("{}"));
+
+		assertEquals(Arrays.asList("lang/stopwords_en.txt", "stopwords.txt"), manifest.removable(zkFiles));
+	}
+
+	@Test
+	public void testRemovable_noManifest() {
+		Map<String, HashCode> zkFiles = new TreeMap<>();
+		zkFiles.put("stopwords.txt", hash("a"));
+
+		assertTrue(ConfigManifest.parse(null).removable(zkFiles).isEmpty());
+	}
+
+	private static HashCode hash(String content) {
+		return Hashing.sha256().hashBytes(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
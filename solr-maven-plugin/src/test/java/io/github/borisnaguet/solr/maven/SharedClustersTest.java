@@ -0,0 +1,60 @@
+package io.github.borisnaguet.solr.maven;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class SharedClustersTest {
+
+	private final Log log = new SystemStreamLog();
+
+	@Test
+	public void testRelease_lastStops() throws Exception {
+		AtomicInteger starts = new AtomicInteger();
+		AtomicInteger stops = new AtomicInteger();
+		SharedClusters.acquire(log, "last-stops", () -> start(starts));
+		SharedClusters.acquire(log, "last-stops", () -> start(starts));
+		assertEquals(1, starts.get());
+
+		SharedClusters.release(log, "last-stops", l -> stops.incrementAndGet(), false);
+		assertEquals(0, stops.get());
+		// stopped before release returns
+		SharedClusters.release(log, "last-stops", l -> stops.incrementAndGet(), false);
+		assertEquals(1, stops.get());
+
+		// started again by the next module
+		SharedClusters.acquire(log, "last-stops", () -> start(starts));
+		assertEquals(2, starts.get());
+		SharedClusters.release(log, "last-stops", l -> stops.incrementAndGet(), false);
+		assertEquals(2, stops.get());
+	}
+
+	@Test
+	public void testRelease_keepRunning() throws Exception {
+		AtomicInteger starts = new AtomicInteger();
+		AtomicInteger stops = new AtomicInteger();
+		SharedClusters.acquire(log, "kept", () -> start(starts));
+		SharedClusters.release(log, "kept", l -> stops.incrementAndGet(), true);
+		assertEquals(0, stops.get());
+
+		// attached again, without starting it
+		SharedClusters.acquire(log, "kept", () -> start(starts));
+		assertEquals(1, starts.get());
+		SharedClusters.release(log, "kept", l -> stops.incrementAndGet(), true);
+
+		// stopped when another cluster starts
+		SharedClusters.acquire(log, "other", () -> start(starts));
+		assertEquals(1, stops.get());
+		SharedClusters.release(log, "other", l -> {}, false);
+	}
+
+	private static SolrCloudManager start(AtomicInteger starts) {
+		starts.incrementAndGet();
+		// the registry doesn't use the manager
+		return null;
+	}
+}
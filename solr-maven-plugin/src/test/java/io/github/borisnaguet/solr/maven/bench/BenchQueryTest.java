@@ -0,0 +1,33 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.Test;
+
+public class BenchQueryTest {
+
+	@Test
+	public void testToParams() {
+		Map<String, String[]> pools = new HashMap<>();
+		pools.put("term", new String[] { "café" });
+		BenchQuery query = new BenchQuery("q1", "col1", 2, "q=name%3A{term}+AND+type:%22a+b%22&fq=x:1&fq=y:%5B1+TO+2%5D&rows=10&&debug", 
+				pools, new AtomicLong());
+		assertEquals("q1", query.getName());
+		assertEquals("col1", query.getCollection());
+		assertEquals(2, query.getWeight());
+
+		ModifiableSolrParams params = query.toParams(new Random());
+		assertEquals("name:café AND type:\"a b\"", params.get("q"));
+		// repeated parameters are all kept
+		assertArrayEquals(new String[] { "x:1", "y:[1 TO 2]" }, params.getParams("fq"));
+		assertEquals("10", params.get("rows"));
+		assertEquals("", params.get("debug"));
+	}
+}
@@ -0,0 +1,85 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		assertEquals(127, LatencyHistogram.indexOf(127));
+		assertEquals(127, LatencyHistogram.highestValueOf(127));
+
+		// first log-linear buckets: 2 values each
+		assertEquals(128, LatencyHistogram.indexOf(128));
+		assertEquals(129, LatencyHistogram.highestValueOf(128));
+		assertEquals(191, LatencyHistogram.indexOf(255));
+		assertEquals(255, LatencyHistogram.highestValueOf(191));
+
+		// next power of 2: 4 values each
+		assertEquals(192, LatencyHistogram.indexOf(256));
+		assertEquals(259, LatencyHistogram.highestValueOf(192));
+
+		int last = LatencyHistogram.indexOf(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(last));
+	}
+
+	@Test
+	public void testBuckets_contiguous() {
+		for (long value : new long[] { 1, 127, 128, 129, 255, 256, 1000, 123_456_789, Long.MAX_VALUE / 3 }) {
+			int index = LatencyHistogram.indexOf(value);
+			assertTrue(value + " above its bucket", value <= LatencyHistogram.highestValueOf(index));
+			assertTrue(value + " in the previous bucket", value > LatencyHistogram.highestValueOf(index - 1));
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		Random random = new Random(42);
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] values = new long[10_000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (long) Math.exp(random.nextDouble() * 14);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		assertEquals(values.length, histogram.getCount());
+		assertEquals(values[0], histogram.getMin());
+		assertEquals(values[values.length - 1], histogram.getMax());
+		for (double percentile : new double[] { 1, 50, 90, 95, 99, 99.9, 100 }) {
+			long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+			long value = histogram.getValueAtPercentile(percentile);
+			assertTrue("p" + percentile + "=" + value + " below " + exact, value >= exact);
+			assertTrue("p" + percentile + "=" + value + " too far from " + exact, value <= exact + exact / 64);
+		}
+	}
+
+	@Test
+	public void testAdd() {
+		LatencyHistogram first = new LatencyHistogram();
+		LatencyHistogram second = new LatencyHistogram();
+		first.record(10);
+		second.record(30);
+		second.record(-5);
+		first.add(second);
+
+		assertEquals(3, first.getCount());
+		assertEquals(0, first.getMin());
+		assertEquals(30, first.getMax());
+		assertEquals(40 / 3.0, first.getMean(), 0.001);
+		assertEquals(10, first.getValueAtPercentile(50));
+	}
+
+	@Test
+	public void testEmpty() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getMin());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+}
@@ -0,0 +1,46 @@
+package io.github.borisnaguet.solr.maven.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ParameterTemplateTest {
+
+	private final Map<String, String[]> pools = new HashMap<>();
+
+	@Test
+	public void testExpand() {
+		pools.put("term", new String[] { "a", "b" });
+		String text = new ParameterTemplate("name:{term} OR id:{term}", pools, new AtomicLong()).expand(new Random());
+		assertTrue(text, text.matches("name:[ab] OR id:[ab]"));
+	}
+
+	@Test
+	public void testExpand_seq() {
+		AtomicLong sequence = new AtomicLong();
+		ParameterTemplate first = new ParameterTemplate("doc-{seq}", pools, sequence);
+		ParameterTemplate second = new ParameterTemplate("{seq}", pools, sequence);
+		assertEquals("doc-0", first.expand(new Random()));
+		assertEquals("1", second.expand(new Random()));
+		assertEquals("doc-2", first.expand(new Random()));
+	}
+
+	@Test
+	public void testExpand_unclosed() {
+		// an unclosed brace is kept as is
+		pools.put("term", new String[] { "a" });
+		assertEquals("name:a AND {term", new ParameterTemplate("name:{term} AND {term", pools, new AtomicLong()).expand(new Random()));
+		assertEquals("{", new ParameterTemplate("{", pools, new AtomicLong()).expand(new Random()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoPool() {
+		new ParameterTemplate("name:{term}", pools, new AtomicLong());
+	}
+}
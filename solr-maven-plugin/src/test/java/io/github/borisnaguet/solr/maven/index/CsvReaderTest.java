@@ -0,0 +1,44 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+public class CsvReaderTest {
+
+	@Test
+	public void testNext() throws Exception {
+		try (CsvReader reader = new CsvReader(new StringReader("id,name,price\n1,\"first, quoted\",1.5\n2,,3\n"))) {
+			SolrInputDocument doc = reader.next();
+			assertEquals("1", doc.getFieldValue("id"));
+			assertEquals("first, quoted", doc.getFieldValue("name"));
+			assertEquals("1.5", doc.getFieldValue("price"));
+
+			doc = reader.next();
+			assertEquals("2", doc.getFieldValue("id"));
+			assertFalse("empty values are ignored", doc.containsKey("name"));
+
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testNext_empty() throws Exception {
+		try (CsvReader reader = new CsvReader(new StringReader(""))) {
+			assertNull(reader.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNext_tooManyValues() throws Exception {
+		try (CsvReader reader = new CsvReader(new StringReader("id\n1,2\n"))) {
+			reader.next();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public class DataFormatTest {
+
+	@Test
+	public void testOf() {
+		assertEquals(DataFormat.JSONL, DataFormat.of(Paths.get("docs.jsonl")));
+		assertEquals(DataFormat.JSONL, DataFormat.of(Paths.get("dir/docs.ndjson.gz")));
+		assertEquals(DataFormat.CSV, DataFormat.of(Paths.get("docs.CSV")));
+		assertEquals(DataFormat.XML, DataFormat.of(Paths.get("docs.xml.gz")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOf_json() {
+		//a .json file is usually a single array or object, not JSON Lines
+		DataFormat.of(Paths.get("docs.json"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOf_noExtension() {
+		DataFormat.of(Paths.get("docs"));
+	}
+}
@@ -0,0 +1,70 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+public class JsonLinesReaderTest {
+
+	@Test
+	public void testNext() throws Exception {
+		try (JsonLinesReader reader = new JsonLinesReader(new StringReader(
+				"{\"id\":\"1\",\"name\":\"first\",\"price\":1.5}\n\n{\"id\":\"2\",\"tags\":[\"a\",\"b\"]}\n"))) {
+			SolrInputDocument doc = reader.next();
+			assertEquals("1", doc.getFieldValue("id"));
+			assertEquals("first", doc.getFieldValue("name"));
+			assertEquals(1.5, doc.getFieldValue("price"));
+
+			doc = reader.next();
+			assertEquals("2", doc.getFieldValue("id"));
+			assertEquals(Arrays.asList("a", "b"), doc.getFieldValues("tags"));
+
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	public void testNext_nestedObject() throws Exception {
+		try (JsonLinesReader reader = new JsonLinesReader(new StringReader("{\"id\":\"1\"}\n{\"id\":\"2\",\"name\":{\"set\":\"x\"}}\n"))) {
+			reader.next();
+			reader.next();
+			fail("nested object accepted");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("name") && e.getMessage().contains("line 2"));
+		}
+	}
+
+	@Test
+	public void testNext_nestedObjectInArray() throws Exception {
+		try (JsonLinesReader reader = new JsonLinesReader(new StringReader("{\"id\":\"1\",\"tags\":[\"a\",{\"b\":1}]}"))) {
+			reader.next();
+			fail("nested object accepted");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("tags"));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNext_notAnObject() throws Exception {
+		try (JsonLinesReader reader = new JsonLinesReader(new StringReader("[{\"id\":\"1\"}]"))) {
+			reader.next();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNext_invalidJson() throws Exception {
+		try (JsonLinesReader reader = new JsonLinesReader(new StringReader("{\"id\":"))) {
+			reader.next();
+		}
+	}
+}
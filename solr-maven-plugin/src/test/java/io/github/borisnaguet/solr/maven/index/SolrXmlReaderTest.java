@@ -0,0 +1,42 @@
+package io.github.borisnaguet.solr.maven.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+
+public class SolrXmlReaderTest {
+
+	@Test
+	public void testNext() throws Exception {
+		String xml = "<update><add>"
+				+ "<doc><field name=\"id\">1</field><field name=\"tags\">a</field><field name=\"tags\">b</field>"
+				+ "<field name=\"name\" null=\"true\"/>"
+				+ "<doc><field name=\"id\">1-1</field></doc></doc>"
+				+ "</add><add><doc><field name=\"id\">2</field></doc></add></update>";
+		try (SolrXmlReader reader = new SolrXmlReader(new StringReader(xml))) {
+			SolrInputDocument doc = reader.next();
+			assertEquals("1", doc.getFieldValue("id"));
+			assertEquals(Arrays.asList("a", "b"), doc.getFieldValues("tags"));
+			assertFalse(doc.containsKey("name"));
+			assertEquals(1, doc.getChildDocumentCount());
+			assertEquals("1-1", doc.getChildDocuments().get(0).getFieldValue("id"));
+
+			assertEquals("2", reader.next().getFieldValue("id"));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNext_fieldWithoutName() throws Exception {
+		try (SolrXmlReader reader = new SolrXmlReader(new StringReader("<add><doc><field>1</field></doc></add>"))) {
+			reader.next();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package io.github.borisnaguet.solr.maven.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUtilTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testDelete() throws Exception {
+		Path dir = tmp.newFolder("data").toPath();
+		// a flat index dir, with more files than a batch
+		Path index = Files.createDirectories(dir.resolve("node1/core1/data/index"));
+		for (int i = 0; i < 100; i++) {
+			Files.write(index.resolve("_" + i + ".cfs"), new byte[] { 1 });
+		}
+		Files.write(dir.resolve("solr.xml"), new byte[] { 1 });
+		Files.createDirectories(dir.resolve("node2/empty"));
+
+		FileUtil.delete(new SystemStreamLog(), dir);
+		assertFalse(Files.exists(dir));
+	}
+
+	@Test
+	public void testDelete_file() throws Exception {
+		Path file = tmp.newFile("file.txt").toPath();
+		FileUtil.delete(new SystemStreamLog(), file);
+		assertFalse(Files.exists(file));
+		assertTrue(Files.exists(tmp.getRoot().toPath()));
+	}
+}
@@ -0,0 +1,36 @@
+package io.github.borisnaguet.solr.maven.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TrashTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testDelete() throws Exception {
+		Path dir = tmp.newFolder("project", "solr-data").toPath();
+		Files.write(dir.resolve("solr.xml"), new byte[] { 1 });
+		Path trashDir = tmp.getRoot().toPath().resolve("target").resolve(Trash.TRASH_DIR);
+
+		Trash.delete(new SystemStreamLog(), dir, trashDir);
+		// gone right away, and nothing left next to it
+		assertFalse(Files.exists(dir));
+		assertFalse(Files.exists(dir.resolveSibling(Trash.TRASH_DIR)));
+
+		long timeout = System.currentTimeMillis() + 10_000;
+		while (!FileUtil.isEmptyDir(trashDir) && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertTrue(FileUtil.isEmptyDir(trashDir));
+	}
+}